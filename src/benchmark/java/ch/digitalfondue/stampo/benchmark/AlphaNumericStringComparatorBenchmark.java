@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo.benchmark;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.digitalfondue.stampo.KeyedComparator;
+import ch.digitalfondue.stampo.processor.AlphaNumericStringComparator;
+import ch.digitalfondue.stampo.processor.LegacyAlphaNumericStringComparator;
+
+/**
+ * Sort a shuffled list of static file names/paths, as done for the static directory, the static
+ * pagination and the directory listing of the embedded server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlphaNumericStringComparatorBenchmark {
+
+  @Param({"50000"})
+  int size;
+
+  private List<String> names;
+  private List<Path> paths;
+
+  private final Comparator<String> legacy = new LegacyAlphaNumericStringComparator(Locale.ENGLISH);
+  private final Comparator<String> current = new AlphaNumericStringComparator(Locale.ENGLISH);
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    String[] prefixes = {"img", "IMG_", "photo-", "post", "chapter-", "v", "release-1."};
+    String[] exts = {".jpg", ".png", ".md", ".html", ".tar.gz"};
+    names = new ArrayList<>(size);
+    paths = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      String name = prefixes[random.nextInt(prefixes.length)] + random.nextInt(size) + (random.nextBoolean() ? "-" + random.nextInt(100) : "") + exts[random.nextInt(exts.length)];
+      names.add(name);
+      paths.add(Paths.get("static", "gallery" + random.nextInt(20), name));
+    }
+    Collections.shuffle(names, random);
+    Collections.shuffle(paths, random);
+  }
+
+  @Benchmark
+  public List<String> sortNamesLegacy() {
+    List<String> toSort = new ArrayList<>(names);
+    toSort.sort(legacy);
+    return toSort;
+  }
+
+  @Benchmark
+  public List<String> sortNames() {
+    List<String> toSort = new ArrayList<>(names);
+    toSort.sort(current);
+    return toSort;
+  }
+
+  @Benchmark
+  public List<Path> sortPathsLegacy() {
+    List<Path> toSort = new ArrayList<>(paths);
+    toSort.sort(Comparator.comparing(Path::toString, legacy));
+    return toSort;
+  }
+
+  @Benchmark
+  public List<Path> sortPathsWithPrecomputedKeys() {
+    List<Path> toSort = new ArrayList<>(paths);
+    KeyedComparator.sort(toSort, KeyedComparator.comparing(Path::toString, current));
+    return toSort;
+  }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo.benchmark;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import ch.digitalfondue.stampo.StampoGlobalConfiguration;
+import ch.digitalfondue.stampo.processor.FileResourceParameters;
+import ch.digitalfondue.stampo.processor.FileResourceProcessorOutput;
+import ch.digitalfondue.stampo.resource.FileMetadata;
+import ch.digitalfondue.stampo.resource.FileResource;
+import ch.digitalfondue.stampo.resource.Resource;
+import ch.digitalfondue.stampo.resource.StructuredFileExtension;
+
+/**
+ * The original per file classification of the extensions and application of the processors, kept
+ * as a baseline for the benchmarks.
+ */
+public class LegacyProcessorChain {
+
+  public static StructuredFileExtension classify(List<String> exts, StampoGlobalConfiguration configuration) {
+    Collections.reverse(exts);
+
+    List<String> processorRelated = takeWhile(exts, configuration.getProcessorResourceExtensions()::contains);
+    Optional<String> processorFileExtensionOverride = processorRelated.stream().findFirst().map(configuration.getProcessorExtensionTransformMapping()::get);
+    List<String> afterProcessorRelated = exts.subList(processorRelated.size(), exts.size());
+    Optional<String> maybeFileExtension = afterProcessorRelated.stream().findFirst().filter(ext -> !configuration.getLocalesAsString().contains(ext));
+    List<String> afterMaybeFileExtension = afterProcessorRelated.subList(maybeFileExtension.isPresent() ? 1 : 0, afterProcessorRelated.size());
+    List<String> locales = takeWhile(afterMaybeFileExtension, (ext -> configuration.getLocalesAsString().contains(ext)));
+    List<String> afterLocales = new ArrayList<>(afterMaybeFileExtension.subList(locales.size(), afterMaybeFileExtension.size()));
+    Collections.reverse(afterLocales);
+
+    return new StructuredFileExtension(processorRelated, processorFileExtensionOverride, maybeFileExtension, new HashSet<>(locales), afterLocales);
+  }
+
+  private static <T> List<T> takeWhile(List<T> l, Predicate<T> pred) {
+    List<T> r = new ArrayList<>(l.size());
+    for (T i : l) {
+      if (pred.test(i)) {
+        r.add(i);
+      } else {
+        return r;
+      }
+    }
+    return r;
+  }
+
+  public static FileResourceProcessorOutput apply(FileResource fileResource, Locale locale, Map<String, Object> model,
+      Map<String, Function<FileResourceParameters, FileResourceProcessorOutput>> processors) {
+    StructuredFileExtension ext = fileResource.getStructuredFileExtension();
+
+    List<String> processorsExt = new ArrayList<>(ext.getProcessorRelatedExts());
+    Collections.reverse(processorsExt);
+
+    List<Function<FileResourceParameters, FileResourceProcessorOutput>> processorsToApply = processorsExt.stream().map(processors::get).collect(Collectors.toList());
+    if (processorsToApply.isEmpty()) {
+      processorsToApply = Collections.singletonList(x -> {
+        return new FileResourceProcessorOutput(fileResource.getContent().orElseThrow(IllegalArgumentException::new), fileResource.getPath(), "none", locale);
+      });
+    }
+
+    FileResourceParameters param = new FileResourceParameters(fileResource, locale, model);
+    FileResourceProcessorOutput output = null;
+    for (Function<FileResourceParameters, FileResourceProcessorOutput> toApply : processorsToApply) {
+      output = toApply.apply(param);
+      param = new FileResourceParameters(new ProcessedFileResource(fileResource, Optional.ofNullable(output.getContent())), locale, model);
+    }
+    return output;
+  }
+
+  private static class ProcessedFileResource implements FileResource {
+
+    private final FileResource fileResource;
+    private final Optional<String> content;
+
+    ProcessedFileResource(FileResource fileResource, Optional<String> content) {
+      this.fileResource = fileResource;
+      this.content = content;
+    }
+
+    @Override
+    public Resource getParent() {
+      return fileResource.getParent();
+    }
+
+    @Override
+    public Path getPath() {
+      return fileResource.getPath();
+    }
+
+    @Override
+    public StampoGlobalConfiguration getConfiguration() {
+      return fileResource.getConfiguration();
+    }
+
+    @Override
+    public FileMetadata getMetadata() {
+      return fileResource.getMetadata();
+    }
+
+    @Override
+    public Optional<String> getContent() {
+      return content;
+    }
+
+    @Override
+    public StructuredFileExtension getStructuredFileExtension() {
+      return fileResource.getStructuredFileExtension();
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo.benchmark;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.digitalfondue.stampo.StampoGlobalConfiguration;
+import ch.digitalfondue.stampo.processor.FileResourceParameters;
+import ch.digitalfondue.stampo.processor.FileResourceProcessorOutput;
+import ch.digitalfondue.stampo.processor.ProcessorChain;
+import ch.digitalfondue.stampo.renderer.freemarker.FreemarkerRenderer;
+import ch.digitalfondue.stampo.renderer.markdown.MarkdownRenderer;
+import ch.digitalfondue.stampo.renderer.pebble.PebbleRenderer;
+import ch.digitalfondue.stampo.resource.FileMetadata;
+import ch.digitalfondue.stampo.resource.FileResource;
+import ch.digitalfondue.stampo.resource.Resource;
+import ch.digitalfondue.stampo.resource.StructuredFileExtension;
+
+/**
+ * Classify the extensions of the content files and apply their processors, as done for each page
+ * of a build. The processors are no-op, thus only the overhead around them is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessorChainBenchmark {
+
+  @Param({"50000"})
+  int size;
+
+  private StampoGlobalConfiguration configuration;
+  private final Map<String, Function<FileResourceParameters, FileResourceProcessorOutput>> processors = new HashMap<>();
+  private List<PageResource> pages;
+
+  private final Map<String, Object> model = Collections.emptyMap();
+
+  @Setup
+  public void setup() {
+    Map<String, Object> conf = new HashMap<>();
+    conf.put("locales", Arrays.asList("en", "de", "fr", "it"));
+    Path baseDir = Paths.get("target", "benchmark-site");
+    configuration = new StampoGlobalConfiguration(conf, baseDir, baseDir.resolve("output"),
+        Arrays.asList(new PebbleRenderer(), new MarkdownRenderer(), new FreemarkerRenderer()));
+
+    for (String ext : configuration.getProcessorResourceExtensions()) {
+      processors.put(ext, params -> new FileResourceProcessorOutput(params.fileResource.getContent().orElse(""),
+          params.fileResource.getPath(), ext, params.locale));
+    }
+
+    Random random = new Random(42);
+    String[] exts = {".md", ".en.md", ".de.md", ".html.peb", ".en.html.peb", ".md.peb", ".html.ftl", ".fr.md.ftl", ".html", ".txt"};
+    pages = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      pages.add(new PageResource(configuration, Paths.get("content", "post", "page-" + i + exts[random.nextInt(exts.length)])));
+    }
+  }
+
+  @Benchmark
+  public void perPageLegacy(Blackhole bh) {
+    for (PageResource page : pages) {
+      page.structuredFileExtension = LegacyProcessorChain.classify(page.getFileExtensions(), configuration);
+      bh.consume(LegacyProcessorChain.apply(page, Locale.ENGLISH, model, processors));
+    }
+  }
+
+  @Benchmark
+  public void perPageWithCompiledChains(Blackhole bh) {
+    Map<List<String>, ProcessorChain> chains = new ConcurrentHashMap<>();
+    for (PageResource page : pages) {
+      String fileName = page.getName();
+      page.structuredFileExtension = configuration.getStructuredFileExtension(fileName.substring(page.getFileNameWithoutExtensions().length()));
+      List<String> processorsExt = page.structuredFileExtension.getProcessorRelatedExts();
+      bh.consume(chains.computeIfAbsent(processorsExt, exts -> ProcessorChain.compile(exts, processors)).apply(page, Locale.ENGLISH, model));
+    }
+  }
+
+  private static class PageResource implements FileResource {
+
+    private final StampoGlobalConfiguration configuration;
+    private final Path path;
+    private final Optional<String> content = Optional.of("# title\n\nsome text");
+    private StructuredFileExtension structuredFileExtension;
+
+    PageResource(StampoGlobalConfiguration configuration, Path path) {
+      this.configuration = configuration;
+      this.path = path;
+    }
+
+    @Override
+    public Resource getParent() {
+      return null;
+    }
+
+    @Override
+    public Path getPath() {
+      return path;
+    }
+
+    @Override
+    public StampoGlobalConfiguration getConfiguration() {
+      return configuration;
+    }
+
+    @Override
+    public FileMetadata getMetadata() {
+      return new FileMetadata(Collections.emptyMap());
+    }
+
+    @Override
+    public Optional<String> getContent() {
+      return content;
+    }
+
+    @Override
+    public StructuredFileExtension getStructuredFileExtension() {
+      return structuredFileExtension;
+    }
+  }
+}
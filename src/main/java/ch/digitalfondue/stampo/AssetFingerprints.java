@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * The fingerprinted names of the files of the static directory matched by "fingerprint-match":
+ * "css/site.css" is copied as "css/site.[hash].css" too, where the hash is derived from the content,
+ * so the file can be cached forever. The templates obtain the url with the asset function, the
+ * mapping is written in "asset-manifest.json".
+ *
+ * The variants of the images matched by "fingerprint-match" (e.g. "gallery/beach-480w.jpg") are
+ * fingerprinted too: their hash is derived from the hash of the image and the size of the variant,
+ * so it's known before the variant is written.
+ *
+ * The files are hashed in parallel when the first name is requested. The hashes are kept in
+ * ".stampo-cache/fingerprints" with the modification time and the size of each file, thus a file
+ * is hashed again only when it changes.
+ */
+class AssetFingerprints {
+
+  static final String MANIFEST = "asset-manifest.json";
+
+  private static final int HASH_LENGTH = 10;
+
+  private final Path staticDir;
+  private final Path cacheFile;
+  private final List<String> matchPatterns;
+  private final boolean enabled;
+  private final ImageDirectory images;
+  // relative path -> fingerprinted relative path
+  private volatile Map<String, String> index;
+
+  AssetFingerprints(Path staticDir, Path cacheFile, List<String> matchPatterns, boolean enabled, ImageDirectory images) {
+    this.staticDir = staticDir;
+    this.cacheFile = cacheFile;
+    this.matchPatterns = matchPatterns;
+    this.enabled = enabled;
+    this.images = images;
+  }
+
+  private Map<String, String> index() {
+    Map<String, String> i = index;
+    if (i == null) {
+      synchronized (this) {
+        if (index == null) {
+          index = buildIndex();
+        }
+        i = index;
+      }
+    }
+    return i;
+  }
+
+  private Map<String, String> buildIndex() {
+    if (!enabled || !Files.isDirectory(staticDir)) {
+      return Collections.emptyMap();
+    }
+
+    FileSystem fs = staticDir.getFileSystem();
+    List<PathMatcher> matchers = matchPatterns.stream().map(fs::getPathMatcher).collect(toList());
+    Predicate<String> matches = path -> matchers.stream().anyMatch(m -> m.matches(fs.getPath(path)));
+    List<String> files;
+    try (Stream<Path> s = Files.walk(staticDir)) {
+      files = s.filter(Files::isRegularFile).map(p -> PathUtils.relativePath(p, staticDir)).filter(matches).collect(toList());
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+
+    // image -> matched variants
+    Map<String, List<ImageVariant>> variants = new TreeMap<>();
+    images.forEach((image, set) -> {
+      List<ImageVariant> matched = new ArrayList<>(set.getVariants());
+      if (set.getThumbnail() != null) {
+        matched.add(set.getThumbnail());
+      }
+      matched.removeIf(v -> !matches.test(v.getPath()));
+      if (!matched.isEmpty()) {
+        variants.put(image, matched);
+      }
+    });
+
+    Set<String> toHash = new HashSet<>(files);
+    toHash.addAll(variants.keySet());
+    Map<String, CachedHash> cache = readCache();
+    Map<String, CachedHash> hashes = new ConcurrentHashMap<>();
+    toHash.parallelStream().forEach(key -> {
+      Path p = staticDir.resolve(key);
+      try {
+        BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+        CachedHash cached = cache.get(key);
+        if (cached == null || !cached.isValidFor(attrs)) {
+          cached = new CachedHash(attrs.lastModifiedTime().toMillis(), attrs.size(), PathUtils.sha256(p).substring(0, HASH_LENGTH));
+        }
+        hashes.put(key, cached);
+      } catch (IOException ioe) {
+        throw new IllegalStateException(ioe);
+      }
+    });
+
+    if (!hashes.equals(cache)) {
+      writeCache(new TreeMap<>(hashes));
+    }
+
+    Map<String, String> res = new TreeMap<>();
+    files.forEach(key -> res.put(key, fingerprintedPath(key, hashes.get(key).hash)));
+    variants.forEach((image, matched) -> {
+      for (ImageVariant v : matched) {
+        String hash = PathUtils.sha256((hashes.get(image).hash + ":" + v.getWidth() + "x" + v.getHeight()).getBytes(StandardCharsets.UTF_8));
+        res.put(v.getPath(), fingerprintedPath(v.getPath(), hash.substring(0, HASH_LENGTH)));
+      }
+    });
+    return Collections.unmodifiableMap(res);
+  }
+
+  static String fingerprintedPath(String path, String hash) {
+    int dot = path.lastIndexOf('.');
+    return dot > path.lastIndexOf('/') + 1 ? path.substring(0, dot) + "." + hash + path.substring(dot) : path + "." + hash;
+  }
+
+  /**
+   * @param path relative to the static directory, e.g. "css/site.css".
+   * @return the path of the copy to use, relative to the output directory.
+   */
+  String assetPath(String path) {
+    String fingerprinted = index().get(path);
+    if (fingerprinted != null) {
+      return fingerprinted;
+    }
+    if (!Files.isRegularFile(staticDir.resolve(path)) && !images.isVariant(path)) {
+      throw new IllegalArgumentException("The asset " + path + " does not exist in the static directory " + staticDir);
+    }
+    return path;
+  }
+
+  /**
+   * @return the fingerprinted path, if the file must be copied with his fingerprinted name too.
+   */
+  Optional<String> fingerprinted(String path) {
+    return Optional.ofNullable(index().get(path));
+  }
+
+  void writeManifest(Path outputDir) {
+    if (!enabled) {
+      return;
+    }
+
+    StringBuilder sb = new StringBuilder("{");
+    index().forEach((path, fingerprinted) -> {
+      Json.appendString(sb.append(sb.length() == 1 ? "\n" : ",\n"), path).append(':');
+      Json.appendString(sb, fingerprinted);
+    });
+    sb.append("\n}\n");
+    try {
+      Files.createDirectories(outputDir);
+      Files.write(outputDir.resolve(MANIFEST), sb.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW);
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  // format: a line for each file, "[path]\t[modification time]\t[size]\t[hash]"
+  private Map<String, CachedHash> readCache() {
+    Map<String, CachedHash> cache = new HashMap<>();
+    if (!Files.exists(cacheFile)) {
+      return cache;
+    }
+    try (BufferedReader r = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+      for (String line = r.readLine(); line != null; line = r.readLine()) {
+        String[] fields = line.split("\t");
+        if (fields.length == 4) {
+          cache.put(fields[0], new CachedHash(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      // an unreadable cache is ignored, all the files are hashed again
+      cache.clear();
+    }
+    return cache;
+  }
+
+  private void writeCache(Map<String, CachedHash> hashes) {
+    try {
+      BuildCache.writeAtomically(cacheFile, os -> {
+        Writer w = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+        for (Map.Entry<String, CachedHash> e : hashes.entrySet()) {
+          CachedHash h = e.getValue();
+          w.write(e.getKey() + "\t" + h.lastModified + "\t" + h.size + "\t" + h.hash + "\n");
+        }
+        w.flush();
+      });
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  private static class CachedHash {
+    private final long lastModified;
+    private final long size;
+    private final String hash;
+
+    CachedHash(long lastModified, long size, String hash) {
+      this.lastModified = lastModified;
+      this.size = size;
+      this.hash = hash;
+    }
+
+    boolean isValidFor(BasicFileAttributes attrs) {
+      return lastModified == attrs.lastModifiedTime().toMillis() && size == attrs.size();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof CachedHash)) {
+        return false;
+      }
+      CachedHash other = (CachedHash) obj;
+      return lastModified == other.lastModified && size == other.size && hash.equals(other.hash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(lastModified, size, hash);
+    }
+  }
+}
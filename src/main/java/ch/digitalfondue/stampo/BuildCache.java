@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Helpers shared by the writers of the derived outputs (gzip sidecars, image variants, asset
+ * fingerprints and search index): they work in background and keep their cache in
+ * ".stampo-cache".
+ */
+final class BuildCache {
+
+  private BuildCache() {
+  }
+
+  @FunctionalInterface
+  interface ContentWriter {
+    void write(OutputStream os) throws IOException;
+  }
+
+  /**
+   * Write in a temporary file of the same directory, then move it: an interrupted build does not
+   * leave a truncated file.
+   */
+  static void writeAtomically(Path file, ContentWriter writer) throws IOException {
+    Path dir = file.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream os = Files.newOutputStream(tmp)) {
+        writer.write(os);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Remove the files of the cache directory that are not in used.
+   *
+   * @param used the file names.
+   */
+  static void removeUnusedEntries(Path cacheDir, Set<String> used) {
+    if (!Files.isDirectory(cacheDir)) {
+      return;
+    }
+    try (Stream<Path> s = Files.list(cacheDir)) {
+      for (Path p : s.filter(p -> !used.contains(p.getFileName().toString())).collect(toList())) {
+        Files.deleteIfExists(p);
+      }
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  /**
+   * A pool of daemon threads, that are stopped when idle.
+   */
+  static ThreadPoolExecutor newDaemonExecutor(String name, int threads) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+      Thread t = new Thread(r, name);
+      t.setDaemon(true);
+      return t;
+    });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
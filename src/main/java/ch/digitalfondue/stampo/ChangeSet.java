@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent.Kind;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The paths of the source directory that changed since the last build, as collected by the
+ * watcher during the debounce window.
+ *
+ * The events of a path are merged: a created then modified file is reported as created, a created
+ * then deleted one is not reported at all. When the watcher lost some events, {@link #isFullRescan()}
+ * is true and the reported paths are incomplete.
+ */
+public class ChangeSet {
+
+  private final Map<Path, Kind<?>> changes;
+  private final boolean fullRescan;
+
+  private ChangeSet(Map<Path, Kind<?>> changes, boolean fullRescan) {
+    this.changes = Collections.unmodifiableMap(changes);
+    this.fullRescan = fullRescan;
+  }
+
+  /**
+   * Used for the first build, when nothing is known.
+   */
+  public static ChangeSet fullRescan() {
+    return new ChangeSet(Collections.emptyMap(), true);
+  }
+
+  /**
+   * @return path -&gt; {@link java.nio.file.StandardWatchEventKinds} ENTRY_CREATE, ENTRY_MODIFY or
+   *         ENTRY_DELETE.
+   */
+  public Map<Path, Kind<?>> getChanges() {
+    return changes;
+  }
+
+  public Set<Path> getPaths() {
+    return changes.keySet();
+  }
+
+  public boolean isFullRescan() {
+    return fullRescan;
+  }
+
+  @Override
+  public String toString() {
+    return fullRescan ? "full rescan" : changes.toString();
+  }
+
+  /**
+   * Accumulate the events until {@link #drain()} is called.
+   */
+  static class Builder {
+
+    private final Map<Path, Kind<?>> changes = new LinkedHashMap<>();
+    private boolean fullRescan;
+
+    synchronized void add(Path path, Kind<?> kind) {
+      if (kind == OVERFLOW) {
+        fullRescan = true;
+        return;
+      }
+
+      Kind<?> previous = changes.get(path);
+      if (previous == ENTRY_CREATE && kind == ENTRY_DELETE) {
+        changes.remove(path);
+      } else if (previous == ENTRY_CREATE) {
+        // still a new file
+      } else if (previous == ENTRY_DELETE && kind == ENTRY_CREATE) {
+        changes.put(path, ENTRY_MODIFY);
+      } else {
+        changes.put(path, kind);
+      }
+    }
+
+    synchronized ChangeSet drain() {
+      ChangeSet changeSet = new ChangeSet(new LinkedHashMap<>(changes), fullRescan);
+      changes.clear();
+      fullRescan = false;
+      return changeSet;
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The result of {@link Stampo#check()}: for each phase, the number of checked files and the time
+ * spent, and the problems found.
+ */
+public class CheckReport {
+
+  private final List<Phase> phases = new ArrayList<>();
+  private final List<Problem> problems = new ArrayList<>();
+
+  synchronized void addPhase(String name, int checked, long millis) {
+    phases.add(new Phase(name, checked, millis));
+  }
+
+  synchronized void addProblem(String phase, Path path, Throwable error) {
+    addProblem(phase, path, 0, error.getMessage() == null ? error.toString() : error.getMessage());
+  }
+
+  synchronized void addProblem(String phase, Path path, int line, String message) {
+    problems.add(new Problem(phase, path, line, message));
+  }
+
+  public synchronized List<Phase> getPhases() {
+    return Collections.unmodifiableList(new ArrayList<>(phases));
+  }
+
+  /**
+   * @return the problems, sorted by phase and path.
+   */
+  public synchronized List<Problem> getProblems() {
+    List<String> order = new ArrayList<>();
+    phases.forEach(p -> order.add(p.name));
+    List<Problem> sorted = new ArrayList<>(problems);
+    sorted.sort(Comparator.<Problem>comparingInt(p -> order.indexOf(p.phase)).thenComparing(p -> p.path.toString()).thenComparingInt(p -> p.line));
+    return Collections.unmodifiableList(sorted);
+  }
+
+  public synchronized boolean isOk() {
+    return problems.isEmpty();
+  }
+
+  public synchronized long getTotalMillis() {
+    return phases.stream().mapToLong(p -> p.millis).sum();
+  }
+
+  public String toText() {
+    StringBuilder sb = new StringBuilder();
+    for (Phase phase : getPhases()) {
+      sb.append(String.format("%-12s %6d files %7dms%n", phase.name, phase.checked, phase.millis));
+    }
+    for (Problem problem : getProblems()) {
+      sb.append(String.format("ERROR [%s] %s%s: %s%n", problem.phase, problem.path, problem.line > 0 ? ":" + problem.line : "", problem.message));
+    }
+    int count = getProblems().size();
+    sb.append(count == 0 ? "Everything seems ok!" : count + (count == 1 ? " problem" : " problems") + " found")
+        .append(String.format(" (%dms)%n", getTotalMillis()));
+    return sb.toString();
+  }
+
+  public String toJson() {
+    StringBuilder sb = new StringBuilder("{\"ok\":").append(isOk()).append(",\"millis\":").append(getTotalMillis());
+    sb.append(",\"phases\":[");
+    String sep = "";
+    for (Phase phase : getPhases()) {
+      Json.appendString(sb.append(sep).append("{\"name\":"), phase.name)
+          .append(",\"checked\":").append(phase.checked).append(",\"millis\":").append(phase.millis).append('}');
+      sep = ",";
+    }
+    sb.append("],\"problems\":[");
+    sep = "";
+    for (Problem problem : getProblems()) {
+      Json.appendString(sb.append(sep).append("{\"phase\":"), problem.phase);
+      Json.appendString(sb.append(",\"path\":"), problem.path.toString());
+      if (problem.line > 0) {
+        sb.append(",\"line\":").append(problem.line);
+      }
+      Json.appendString(sb.append(",\"message\":"), problem.message).append('}');
+      sep = ",";
+    }
+    return sb.append("]}").toString();
+  }
+
+  public static class Phase {
+    private final String name;
+    private final int checked;
+    private final long millis;
+
+    Phase(String name, int checked, long millis) {
+      this.name = name;
+      this.checked = checked;
+      this.millis = millis;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getChecked() {
+      return checked;
+    }
+
+    public long getMillis() {
+      return millis;
+    }
+  }
+
+  public static class Problem {
+    private final String phase;
+    private final Path path;
+    private final int line;
+    private final String message;
+
+    Problem(String phase, Path path, int line, String message) {
+      this.phase = phase;
+      this.path = path;
+      this.line = line;
+      this.message = message;
+    }
+
+    public String getPhase() {
+      return phase;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    /**
+     * @return the line in the file, starting from 1, or 0 if not relevant.
+     */
+    public int getLine() {
+      return line;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+  }
+}
@@ -0,0 +1,478 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * The content of the data directory, exposed as a map.
+ *
+ * The key of a file is his relative path, with "/" replaced by "." and without extension (e.g.
+ * "data/products/shoes.yaml" is "products.shoes"). The files are parsed only when the key is
+ * accessed, or all in parallel when the "data-prefetch" configuration is true.
+ *
+ * Yaml and json files are kept in a {@link Cache} owned by the configuration, and handed over to the
+ * next build while serving: a rebuild parse only the modified files. A csv file is a collection of
+ * rows (a map header -&gt; value), read from the file each time it's iterated.
+ */
+class DataDirectory extends AbstractMap<String, Object> {
+
+  private static final Pattern EXTENSION = Pattern.compile("\\.(ya?ml|json|csv)$");
+
+  private final Path dataDir;
+  private final Cache cache;
+  private volatile Map<String, DataFile> index;
+
+  DataDirectory(Path dataDir, Cache cache, boolean prefetch) {
+    this.dataDir = dataDir;
+    this.cache = cache;
+    if (prefetch) {
+      index().values().parallelStream().forEach(DataFile::getValue);
+    }
+  }
+
+  private Map<String, DataFile> index() {
+    Map<String, DataFile> i = index;
+    if (i == null) {
+      synchronized (this) {
+        if (index == null) {
+          index = buildIndex();
+        }
+        i = index;
+      }
+    }
+    return i;
+  }
+
+  private Map<String, DataFile> buildIndex() {
+    if (!Files.exists(dataDir)) {
+      return Collections.emptyMap();
+    }
+    Map<String, DataFile> res = new TreeMap<>();
+    try (Stream<Path> files = Files.walk(dataDir)) {
+      files.filter(p -> Files.isRegularFile(p) && EXTENSION.matcher(p.getFileName().toString()).find())
+          .forEach(p -> {
+            String keyName = EXTENSION.matcher(PathUtils.relativePathFromDirectory(p, dataDir).replace('/', '.')).replaceFirst("");
+            if (res.put(keyName, new DataFile(keyName, p, cache)) != null) {
+              throw new IllegalStateException("Duplicate key " + keyName + " in the data directory: " + p);
+            }
+          });
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+    // the removed files
+    cache.retain(res.values().stream().map(f -> f.uri).collect(toSet()));
+    return Collections.unmodifiableMap(res);
+  }
+
+  /**
+   * Parse all the files in parallel, as done by the "data-prefetch" configuration, a csv file is
+   * read until the end.
+   *
+   * @return path -&gt; error, for the files that cannot be read.
+   */
+  Map<Path, RuntimeException> check() {
+    Map<Path, RuntimeException> errors = new ConcurrentHashMap<>();
+    index().values().parallelStream().forEach(file -> {
+      try {
+        Object value = file.getValue();
+        if (value instanceof CsvRows) {
+          ((CsvRows) value).size();
+        }
+      } catch (RuntimeException e) {
+        errors.put(file.path, e);
+      }
+    });
+    return new TreeMap<>(errors);
+  }
+
+  @Override
+  public Object get(Object key) {
+    DataFile file = index().get(key);
+    return file == null ? null : file.getValue();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return index().containsKey(key);
+  }
+
+  @Override
+  public int size() {
+    return index().size();
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return index().keySet();
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        Iterator<DataFile> it = index().values().iterator();
+        return new Iterator<Entry<String, Object>>() {
+          @Override
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          @Override
+          public Entry<String, Object> next() {
+            DataFile file = it.next();
+            return new SimpleImmutableEntry<>(file.key, file.getValue());
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return index().size();
+      }
+    };
+  }
+
+  private static class DataFile {
+    private final String key;
+    private final Path path;
+    private final String uri;
+    private final Cache cache;
+    private boolean loaded;
+    private Object value;
+
+    DataFile(String key, Path path, Cache cache) {
+      this.key = key;
+      this.path = path;
+      this.uri = path.toUri().toString();
+      this.cache = cache;
+    }
+
+    synchronized Object getValue() {
+      if (!loaded) {
+        value = path.getFileName().toString().endsWith(".csv") ? new CsvRows(path) : loadCached();
+        loaded = true;
+      }
+      return value;
+    }
+
+    private Object loadCached() {
+      try {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        CachedContent cached = cache.contents.get(uri);
+        Optional<Object> content = cached != null && cached.isValidFor(attrs) ? cached.content.get() : null;
+        if (content == null) {
+          content = Optional.ofNullable(parse(path));
+          cache.contents.put(uri, new CachedContent(attrs.lastModifiedTime(), attrs.size(), content));
+        }
+        return content.orElse(null);
+      } catch (IOException ioe) {
+        throw new IllegalStateException(ioe);
+      }
+    }
+  }
+
+  /**
+   * The parsed yaml and json files, by uri. The entries of the files no longer in the data
+   * directory are removed when the index is built.
+   */
+  static class Cache {
+
+    private final Map<String, CachedContent> contents = new ConcurrentHashMap<>();
+
+    private void retain(Set<String> uris) {
+      contents.keySet().retainAll(uris);
+    }
+
+    int size() {
+      return contents.size();
+    }
+  }
+
+  // json is a subset of yaml
+  private static Object parse(Path path) throws IOException {
+    try (InputStream is = Files.newInputStream(path)) {
+      List<Object> o = StreamSupport.stream(new Yaml().loadAll(is).spliterator(), false).filter(Objects::nonNull).collect(toList());
+      return o.size() == 0 ? null : o.size() == 1 ? o.get(0) : o;
+    }
+  }
+
+  private static class CachedContent {
+    private final FileTime lastModified;
+    private final long size;
+    private final SoftReference<Optional<Object>> content;
+
+    CachedContent(FileTime lastModified, long size, Optional<Object> content) {
+      this.lastModified = lastModified;
+      this.size = size;
+      this.content = new SoftReference<>(content);
+    }
+
+    boolean isValidFor(BasicFileAttributes attrs) {
+      return lastModified.equals(attrs.lastModifiedTime()) && size == attrs.size();
+    }
+  }
+
+  /**
+   * The rows of a csv file (RFC 4180), the first row is the header. The rows are streamed, never
+   * all kept in memory: {@link #forEach(Consumer)} reads the file at once, while an iterator (used
+   * by the template loops) reads {@value #BATCH_SIZE} rows at a time and keeps the file open only
+   * while reading them, so a loop stopped early does not leave the file open. Each loop reads the
+   * file again. The size is counted once.
+   */
+  static class CsvRows extends AbstractCollection<Map<String, String>> {
+
+    static final int BATCH_SIZE = 512;
+
+    private final Path path;
+    private volatile int size = -1;
+
+    CsvRows(Path path) {
+      this.path = path;
+    }
+
+    @Override
+    public Iterator<Map<String, String>> iterator() {
+      return new BatchIterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Map<String, String>> action) {
+      try (RecordReader reader = new RecordReader(path, 0)) {
+        List<String> header = reader.readNonEmptyRecord();
+        if (header == null) {
+          return;
+        }
+        for (List<String> record = reader.readNonEmptyRecord(); record != null; record = reader.readNonEmptyRecord()) {
+          action.accept(toRow(header, record));
+        }
+      } catch (IOException ioe) {
+        throw new IllegalStateException(ioe);
+      }
+    }
+
+    @Override
+    public int size() {
+      if (size == -1) {
+        int[] count = {0};
+        forEach(row -> count[0]++);
+        size = count[0];
+      }
+      return size;
+    }
+
+    private static Map<String, String> toRow(List<String> header, List<String> record) {
+      Map<String, String> row = new LinkedHashMap<>();
+      for (int i = 0; i < header.size(); i++) {
+        row.put(header.get(i), i < record.size() ? record.get(i) : "");
+      }
+      return row;
+    }
+
+    private class BatchIterator implements Iterator<Map<String, String>> {
+
+      private final Deque<List<String>> batch = new ArrayDeque<>();
+      private List<String> header;
+      // where the next batch begins, in bytes
+      private long position;
+      private boolean endOfFile;
+
+      @Override
+      public boolean hasNext() {
+        if (batch.isEmpty() && !endOfFile) {
+          readBatch();
+        }
+        return !batch.isEmpty();
+      }
+
+      @Override
+      public Map<String, String> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return toRow(header, batch.poll());
+      }
+
+      private void readBatch() {
+        try (RecordReader reader = new RecordReader(path, position)) {
+          if (header == null) {
+            header = reader.readNonEmptyRecord();
+          }
+          while (header != null && batch.size() < BATCH_SIZE) {
+            List<String> record = reader.readNonEmptyRecord();
+            if (record == null) {
+              break;
+            }
+            batch.add(record);
+          }
+          endOfFile = batch.size() < BATCH_SIZE;
+          position = reader.position;
+        } catch (IOException ioe) {
+          throw new UncheckedIOException(ioe);
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the csv records from a given byte position. The separators are all ascii, so the bytes
+   * are parsed directly and each field is decoded as UTF-8.
+   */
+  static class RecordReader implements Closeable {
+
+    private static final int NONE = -2;
+
+    private final SeekableByteChannel channel;
+    private final InputStream in;
+    private long position;
+    private int pushedBack = NONE;
+
+    RecordReader(Path path, long position) throws IOException {
+      this.channel = Files.newByteChannel(path);
+      try {
+        channel.position(position);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+      this.in = new BufferedInputStream(Channels.newInputStream(channel));
+      this.position = position;
+    }
+
+    private int read() throws IOException {
+      int c = pushedBack != NONE ? pushedBack : in.read();
+      pushedBack = NONE;
+      if (c != -1) {
+        position++;
+      }
+      return c;
+    }
+
+    private void unread(int c) {
+      if (c != -1) {
+        pushedBack = c;
+        position--;
+      }
+    }
+
+    List<String> readNonEmptyRecord() throws IOException {
+      List<String> record;
+      do {
+        record = readRecord();
+      } while (record != null && record.size() == 1 && record.get(0).isEmpty());
+      return record;
+    }
+
+    List<String> readRecord() throws IOException {
+      int c = read();
+      if (c == -1) {
+        return null;
+      }
+      List<String> fields = new ArrayList<>();
+      ByteArrayOutputStream field = new ByteArrayOutputStream();
+      boolean quoted = false;
+      boolean wasQuoted = false;
+      while (true) {
+        if (quoted) {
+          if (c == -1) {
+            fields.add(decode(field));
+            return fields;
+          } else if (c == '"') {
+            c = read();
+            if (c == '"') {
+              field.write('"');
+            } else {
+              quoted = false;
+              continue;
+            }
+          } else {
+            field.write(c);
+          }
+        } else if (c == '"' && field.size() == 0 && !wasQuoted) {
+          quoted = true;
+          wasQuoted = true;
+        } else if (c == ',') {
+          fields.add(decode(field));
+          field.reset();
+          wasQuoted = false;
+        } else if (c == '\n' || c == -1) {
+          fields.add(decode(field));
+          return fields;
+        } else if (c == '\r') {
+          int next = read();
+          if (next != '\n') {
+            unread(next);
+          }
+          fields.add(decode(field));
+          return fields;
+        } else {
+          field.write(c);
+        }
+        c = read();
+      }
+    }
+
+    private static String decode(ByteArrayOutputStream field) {
+      return new String(field.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Write a precompressed "[file].gz" next to each compressible file of the output directory (html,
+ * css, js, svg, xml and json), at the maximum compression level. The sidecar is not written when
+ * it's not smaller than the file.
+ *
+ * The rendered pages are compressed in background while the next ones are rendered, the other
+ * files (static, sitemaps, feeds, ...) when {@link #write()} is called.
+ *
+ * The compressed files are cached in ".stampo-cache/gzip/" by the hash of their content: an
+ * unchanged file is not compressed again. The entries not used by the build are removed.
+ */
+class GzipSidecars {
+
+  static final Set<String> COMPRESSIBLE_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("html", "css", "js", "svg", "xml", "json")));
+
+  private final StampoGlobalConfiguration configuration;
+  private final Path cacheDir;
+  private final List<CompletableFuture<String>> compressed = new ArrayList<>();
+  // the files already compressed or being compressed
+  private final Set<Path> added = ConcurrentHashMap.newKeySet();
+  // compression is cpu bound, the rendering use a thread
+  private final ThreadPoolExecutor executor;
+
+  GzipSidecars(StampoGlobalConfiguration configuration) {
+    this.configuration = configuration;
+    this.cacheDir = configuration.getBaseDirectory().resolve(".stampo-cache").resolve("gzip").normalize();
+    this.executor = BuildCache.newDaemonExecutor("stampo-gzip", Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+  }
+
+  boolean isEnabled() {
+    return configuration.generateGzip();
+  }
+
+  static boolean isCompressible(Path path) {
+    String name = path.getFileName().toString();
+    return COMPRESSIBLE_EXTENSIONS.contains(name.substring(name.lastIndexOf('.') + 1).toLowerCase());
+  }
+
+  /**
+   * Compress the rendered content in background.
+   */
+  void add(Path outputPath, String content) {
+    if (added.add(outputPath.normalize())) {
+      submit(() -> compress(outputPath, content.getBytes(StandardCharsets.UTF_8)));
+    }
+  }
+
+  /**
+   * Compress the files of the output directory not already added, then wait for all the sidecars.
+   */
+  void write() {
+    if (!isEnabled()) {
+      return;
+    }
+
+    Path outputDir = configuration.getBaseOutputDir();
+    if (Files.isDirectory(outputDir)) {
+      List<Path> files;
+      try (Stream<Path> s = Files.walk(outputDir)) {
+        files = s.filter(p -> isCompressible(p) && Files.isRegularFile(p)).collect(toList());
+      } catch (IOException ioe) {
+        throw new IllegalStateException(ioe);
+      }
+      for (Path file : files) {
+        if (added.add(file.normalize())) {
+          submit(() -> compress(file, Files.readAllBytes(file)));
+        }
+      }
+    }
+
+    Set<String> used = new HashSet<>();
+    List<CompletableFuture<String>> all;
+    synchronized (compressed) {
+      all = new ArrayList<>(compressed);
+    }
+    for (CompletableFuture<String> c : all) {
+      used.add(c.join());
+    }
+    BuildCache.removeUnusedEntries(cacheDir, used);
+  }
+
+  @FunctionalInterface
+  private interface Compression {
+    String compress() throws IOException;
+  }
+
+  private void submit(Compression compression) {
+    CompletableFuture<String> c = CompletableFuture.supplyAsync(() -> {
+      try {
+        return compression.compress();
+      } catch (IOException ioe) {
+        throw new IllegalStateException(ioe);
+      }
+    }, executor);
+    synchronized (compressed) {
+      compressed.add(c);
+    }
+  }
+
+  /**
+   * @return the name of the cache entry.
+   */
+  private String compress(Path file, byte[] content) throws IOException {
+    String name = PathUtils.sha256(content) + ".gz";
+    Path cached = cacheDir.resolve(name);
+    if (!Files.exists(cached)) {
+      byte[] gzipped = gzip(content);
+      BuildCache.writeAtomically(cached, os -> os.write(gzipped));
+    }
+    if (Files.size(cached) < content.length) {
+      Path sidecar = file.resolveSibling(file.getFileName().toString() + ".gz");
+      Files.createDirectories(sidecar.getParent());
+      Files.copy(cached, sidecar);
+    }
+    return name;
+  }
+
+  static byte[] gzip(byte[] content) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream(content.length / 3 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(os) {
+      {
+        def.setLevel(Deflater.BEST_COMPRESSION);
+      }
+    }) {
+      gzip.write(content);
+    }
+    return os.toByteArray();
+  }
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import ch.digitalfondue.stampo.exception.ConfigurationException;
+
+/**
+ * The images of the static directory matched by "image-match", exposed as a map: path relative to
+ * the static directory -&gt; {@link ImageSet}.
+ *
+ * For each image, {@link #generate(Path)} writes a variant for each of the "image-widths" smaller
+ * than the image (e.g. "beach-480w.jpg") and, if "image-thumbnail" is set, a square thumbnail
+ * ("beach-thumb.jpg") next to the copy of the image. The images are resized in parallel, while the
+ * content is rendered.
+ *
+ * The generated files are cached in ".stampo-cache/images/" by the hash of the image and the
+ * parameters of the variant: an image is decoded and encoded again only when it changes. The
+ * entries not used by the build are removed.
+ *
+ * A file of the static directory with the name of a possible variant (e.g. "beach-480w.jpg" next
+ * to "beach.jpg") is a configuration error.
+ */
+class ImageDirectory extends AbstractMap<String, ImageSet> {
+
+  private final Path staticDir;
+  private final Path cacheDir;
+  private final List<String> matchPatterns;
+  private final List<Integer> widths;
+  private final Optional<Integer> thumbnailSize;
+  private volatile Map<String, ImageFile> index;
+
+  ImageDirectory(Path staticDir, Path cacheDir, List<String> matchPatterns, List<Integer> widths, Optional<Integer> thumbnailSize) {
+    this.staticDir = staticDir;
+    this.cacheDir = cacheDir;
+    this.matchPatterns = matchPatterns;
+    this.widths = widths.stream().sorted().distinct().collect(toList());
+    this.thumbnailSize = thumbnailSize;
+  }
+
+  boolean isEnabled() {
+    return !widths.isEmpty() || thumbnailSize.isPresent();
+  }
+
+  private Map<String, ImageFile> index() {
+    Map<String, ImageFile> i = index;
+    if (i == null) {
+      synchronized (this) {
+        if (index == null) {
+          index = buildIndex();
+        }
+        i = index;
+      }
+    }
+    return i;
+  }
+
+  private Map<String, ImageFile> buildIndex() {
+    if (!isEnabled() || !Files.isDirectory(staticDir)) {
+      return Collections.emptyMap();
+    }
+    FileSystem fs = staticDir.getFileSystem();
+    List<PathMatcher> matchers = matchPatterns.stream().map(fs::getPathMatcher).collect(toList());
+    Map<String, ImageFile> res = new TreeMap<>();
+    try (Stream<Path> files = Files.walk(staticDir)) {
+      files.filter(Files::isRegularFile).forEach(p -> {
+        Path relative = staticDir.relativize(p);
+        if (matchers.stream().anyMatch(m -> m.matches(relative))) {
+          String key = PathUtils.relativePathFromDirectory(p, staticDir);
+          res.put(key, new ImageFile(key, p));
+        }
+      });
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+    // the variants are written in the output directory next to the image
+    for (String key : res.keySet()) {
+      List<String> suffixes = widths.stream().map(w -> w + "w").collect(toList());
+      thumbnailSize.ifPresent(s -> suffixes.add("thumb"));
+      for (String suffix : suffixes) {
+        Path conflict = staticDir.resolve(variantPath(key, suffix));
+        if (Files.exists(conflict)) {
+          throw new ConfigurationException(conflict, "the file has the name of a variant of the image " + key
+              + ", rename it or change " + StampoGlobalConfiguration.CONF_IMAGE_MATCH);
+        }
+      }
+    }
+    return Collections.unmodifiableMap(res);
+  }
+
+  // e.g. "gallery/beach.jpg", "480w" -> "gallery/beach-480w.jpg"
+  private static String variantPath(String key, String suffix) {
+    int dot = key.lastIndexOf('.');
+    return dot > key.lastIndexOf('/') ? key.substring(0, dot) + "-" + suffix + key.substring(dot) : key + "-" + suffix;
+  }
+
+  /**
+   * Write the variants of all the images in background.
+   *
+   * @param outputDir the directory where the static directory is copied.
+   * @param fingerprinted path of a variant -&gt; path of his fingerprinted copy, if any.
+   * @return completed when all the variants are written.
+   */
+  CompletableFuture<Void> generate(Path outputDir, Function<String, Optional<String>> fingerprinted) {
+    Map<String, ImageFile> images = index();
+    if (images.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    ThreadPoolExecutor executor = BuildCache.newDaemonExecutor("stampo-images", Runtime.getRuntime().availableProcessors());
+
+    List<CompletableFuture<List<String>>> tasks = images.values().stream()
+        .map(image -> CompletableFuture.supplyAsync(() -> image.generate(outputDir, fingerprinted), executor))
+        .collect(toList());
+    return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[tasks.size()]))
+        .thenRun(() -> BuildCache.removeUnusedEntries(cacheDir, tasks.stream().flatMap(t -> t.join().stream()).collect(toSet())))
+        .whenComplete((r, e) -> executor.shutdown());
+  }
+
+  /**
+   * @param path relative to the static directory, e.g. "gallery/beach-480w.jpg".
+   * @return true if the file is a variant or a thumbnail written by {@link #generate(Path, Function)}.
+   */
+  boolean isVariant(String path) {
+    return values().stream().anyMatch(set -> set.getVariants().stream().anyMatch(v -> v.getPath().equals(path))
+        || (set.getThumbnail() != null && set.getThumbnail().getPath().equals(path)));
+  }
+
+  @Override
+  public ImageSet get(Object key) {
+    ImageFile image = index().get(key);
+    return image == null ? null : image.getImageSet();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return index().containsKey(key);
+  }
+
+  @Override
+  public int size() {
+    return index().size();
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return index().keySet();
+  }
+
+  @Override
+  public Set<Entry<String, ImageSet>> entrySet() {
+    return new AbstractSet<Entry<String, ImageSet>>() {
+
+      @Override
+      public Iterator<Entry<String, ImageSet>> iterator() {
+        Iterator<ImageFile> it = index().values().iterator();
+        return new Iterator<Entry<String, ImageSet>>() {
+          @Override
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          @Override
+          public Entry<String, ImageSet> next() {
+            ImageFile image = it.next();
+            return new SimpleImmutableEntry<>(image.key, image.getImageSet());
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return index().size();
+      }
+    };
+  }
+
+  private class ImageFile {
+    private final String key;
+    private final Path path;
+    private String formatName;
+    private ImageSet imageSet;
+
+    ImageFile(String key, Path path) {
+      this.key = key;
+      this.path = path;
+    }
+
+    // only the header of the image is read
+    synchronized ImageSet getImageSet() {
+      if (imageSet == null) {
+        try (InputStream is = Files.newInputStream(path); ImageInputStream iis = ImageIO.createImageInputStream(is)) {
+          Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+          if (!readers.hasNext()) {
+            throw new IllegalStateException("Unsupported image format: " + path);
+          }
+          ImageReader reader = readers.next();
+          try {
+            reader.setInput(iis, true, true);
+            formatName = reader.getFormatName().toLowerCase();
+            imageSet = imageSet(reader.getWidth(0), reader.getHeight(0));
+          } finally {
+            reader.dispose();
+          }
+        } catch (IOException ioe) {
+          throw new IllegalStateException(ioe);
+        }
+      }
+      return imageSet;
+    }
+
+    private ImageSet imageSet(int width, int height) {
+      List<ImageVariant> variants = new ArrayList<>();
+      for (int w : widths) {
+        if (w < width) {
+          variants.add(new ImageVariant(variantPath(key, w + "w"), w, Math.max(1, Math.round((float) height * w / width))));
+        }
+      }
+      ImageVariant thumbnail = thumbnailSize.map(size -> {
+        int side = Math.min(size, Math.min(width, height));
+        return new ImageVariant(variantPath(key, "thumb"), side, side);
+      }).orElse(null);
+      return new ImageSet(new ImageVariant(key, width, height), variants, thumbnail);
+    }
+
+    /**
+     * @return the names of the cache entries.
+     */
+    List<String> generate(Path outputDir, Function<String, Optional<String>> fingerprinted) {
+      ImageSet set = getImageSet();
+      List<String> used = new ArrayList<>();
+      try {
+        String hash = PathUtils.sha256(path);
+        String extension = key.substring(key.lastIndexOf('.') + 1);
+        // decoded at most once, only if a variant is not cached
+        BufferedImage[] source = new BufferedImage[1];
+
+        // from the largest, each variant is resized from the previous one
+        BufferedImage previous = null;
+        List<ImageVariant> variants = new ArrayList<>(set.getVariants());
+        Collections.reverse(variants);
+        for (ImageVariant variant : variants) {
+          Path cached = cacheDir.resolve(hash + "-" + variant.getWidth() + "w." + extension);
+          used.add(cached.getFileName().toString());
+          if (!Files.exists(cached)) {
+            BufferedImage from = previous != null ? previous : decode(source);
+            previous = resize(from, variant.getWidth(), variant.getHeight());
+            writeCached(previous, cached);
+          }
+          copy(cached, outputDir, variant, fingerprinted);
+        }
+
+        ImageVariant thumbnail = set.getThumbnail();
+        if (thumbnail != null) {
+          Path cached = cacheDir.resolve(hash + "-thumb" + thumbnail.getWidth() + "." + extension);
+          used.add(cached.getFileName().toString());
+          if (!Files.exists(cached)) {
+            BufferedImage image = decode(source);
+            int side = Math.min(image.getWidth(), image.getHeight());
+            BufferedImage square = image.getSubimage((image.getWidth() - side) / 2, (image.getHeight() - side) / 2, side, side);
+            writeCached(resize(square, thumbnail.getWidth(), thumbnail.getHeight()), cached);
+          }
+          copy(cached, outputDir, thumbnail, fingerprinted);
+        }
+      } catch (IOException ioe) {
+        throw new IllegalStateException(ioe);
+      }
+      return used;
+    }
+
+    private BufferedImage decode(BufferedImage[] source) throws IOException {
+      if (source[0] == null) {
+        try (InputStream is = Files.newInputStream(path)) {
+          source[0] = ImageIO.read(is);
+        }
+        if (source[0] == null) {
+          throw new IllegalStateException("Unsupported image format: " + path);
+        }
+      }
+      return source[0];
+    }
+
+    private BufferedImage resize(BufferedImage image, int width, int height) {
+      // jpeg has no alpha channel
+      int type = "jpeg".equals(formatName) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+      return ImageDirectory.resize(image, width, height, type);
+    }
+
+    private void writeCached(BufferedImage image, Path cached) throws IOException {
+      BuildCache.writeAtomically(cached, os -> {
+        if (!ImageIO.write(image, formatName, os)) {
+          throw new IllegalStateException("No writer for the image format " + formatName + ": " + path);
+        }
+      });
+    }
+
+    private void copy(Path cached, Path outputDir, ImageVariant variant, Function<String, Optional<String>> fingerprinted) throws IOException {
+      copy(cached, outputDir.resolve(variant.getPath()));
+      Optional<String> fingerprintedPath = fingerprinted.apply(variant.getPath());
+      if (fingerprintedPath.isPresent()) {
+        copy(cached, outputDir.resolve(fingerprintedPath.get()));
+      }
+    }
+
+    private void copy(Path cached, Path output) throws IOException {
+      Files.createDirectories(output.getParent());
+      Files.copy(cached, output);
+    }
+  }
+
+  /**
+   * Downscale by halving the size until the target size is reached: a single bilinear step would
+   * skip most of the pixels.
+   */
+  static BufferedImage resize(BufferedImage image, int width, int height, int type) {
+    BufferedImage current = image;
+    int w = image.getWidth();
+    int h = image.getHeight();
+    do {
+      w = w / 2 < width ? width : w / 2;
+      h = h / 2 < height ? height : h / 2;
+      BufferedImage next = new BufferedImage(w, h, type);
+      Graphics2D g = next.createGraphics();
+      try {
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(current, 0, 0, w, h, null);
+      } finally {
+        g.dispose();
+      }
+      current = next;
+    } while (w != width || h != height);
+    return current;
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.util.stream.Collectors.joining;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An image of the static directory with his variants, as exposed to the templates by the "images"
+ * model entry.
+ *
+ * For a responsive image:
+ *
+ * <pre>
+ * {% set image = images["gallery/beach.jpg"] %}
+ * &lt;img src="{{relativeRootPath}}/{{image.path}}" srcset="{{image.srcset(relativeRootPath)}}"&gt;
+ * </pre>
+ */
+public class ImageSet {
+
+  private final ImageVariant original;
+  private final List<ImageVariant> variants;
+  private final ImageVariant thumbnail;
+
+  ImageSet(ImageVariant original, List<ImageVariant> variants, ImageVariant thumbnail) {
+    this.original = original;
+    this.variants = Collections.unmodifiableList(variants);
+    this.thumbnail = thumbnail;
+  }
+
+  public String getPath() {
+    return original.getPath();
+  }
+
+  public int getWidth() {
+    return original.getWidth();
+  }
+
+  public int getHeight() {
+    return original.getHeight();
+  }
+
+  /**
+   * @return the resized images, from the smallest, the widths larger than the original are skipped.
+   */
+  public List<ImageVariant> getVariants() {
+    return variants;
+  }
+
+  /**
+   * @return the square thumbnail, or null if "image-thumbnail" is not configured.
+   */
+  public ImageVariant getThumbnail() {
+    return thumbnail;
+  }
+
+  /**
+   * @param base the url of the output directory, e.g. relativeRootPath.
+   * @return the value of the srcset attribute: the variants and the original image.
+   */
+  public String srcset(String base) {
+    List<ImageVariant> all = new ArrayList<>(variants);
+    all.add(original);
+    String prefix = base == null || base.isEmpty() ? "" : base.endsWith("/") ? base : base + "/";
+    return all.stream().map(v -> prefix + v.getPath() + " " + v.getWidth() + "w").collect(joining(", "));
+  }
+}
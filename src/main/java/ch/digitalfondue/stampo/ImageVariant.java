@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+/**
+ * A file generated from an image of the static directory, or the image itself.
+ */
+public class ImageVariant {
+
+  private final String path;
+  private final int width;
+  private final int height;
+
+  ImageVariant(String path, int width, int height) {
+    this.path = path;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * @return the path relative to the output directory, e.g. "gallery/beach-480w.jpg".
+   */
+  public String getPath() {
+    return path;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+}
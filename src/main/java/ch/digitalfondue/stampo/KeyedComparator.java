@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.function.Function;
+
+/**
+ * A comparator that compare the elements by a key. When used with {@link #sort(List, Comparator)},
+ * the key of each element is extracted only once before sorting, instead of twice for each
+ * comparison.
+ */
+public class KeyedComparator<T, K> implements Comparator<T> {
+
+  private final Function<? super T, ? extends K> keyExtractor;
+  private final Comparator<? super K> keyComparator;
+
+  private KeyedComparator(Function<? super T, ? extends K> keyExtractor, Comparator<? super K> keyComparator) {
+    this.keyExtractor = keyExtractor;
+    this.keyComparator = keyComparator;
+  }
+
+  public static <T, K> KeyedComparator<T, K> comparing(Function<? super T, ? extends K> keyExtractor, Comparator<? super K> keyComparator) {
+    return new KeyedComparator<>(keyExtractor, keyComparator);
+  }
+
+  @Override
+  public int compare(T o1, T o2) {
+    return keyComparator.compare(keyExtractor.apply(o1), keyExtractor.apply(o2));
+  }
+
+  @Override
+  public KeyedComparator<T, K> reversed() {
+    return new KeyedComparator<>(keyExtractor, keyComparator.reversed());
+  }
+
+  /**
+   * Stable sort of the list. If the comparator is a {@link KeyedComparator}, the keys are
+   * precomputed.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> void sort(List<T> list, Comparator<? super T> comparator) {
+    if (comparator instanceof KeyedComparator && list.size() > 1) {
+      ((KeyedComparator<? super T, ?>) comparator).sortByKey(list);
+    } else {
+      list.sort(comparator);
+    }
+  }
+
+  private <E extends T> void sortByKey(List<E> list) {
+    List<KeyAndElement<K, E>> decorated = new ArrayList<>(list.size());
+    for (E e : list) {
+      decorated.add(new KeyAndElement<>(keyExtractor.apply(e), e));
+    }
+    decorated.sort((a, b) -> keyComparator.compare(a.key, b.key));
+    ListIterator<E> it = list.listIterator();
+    for (KeyAndElement<K, E> ke : decorated) {
+      it.next();
+      it.set(ke.element);
+    }
+  }
+
+  private static class KeyAndElement<K, E> {
+    final K key;
+    final E element;
+
+    KeyAndElement(K key, E element) {
+      this.key = key;
+      this.element = element;
+    }
+  }
+}
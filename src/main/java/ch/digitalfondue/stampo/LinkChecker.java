@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Check the internal links (href and src attributes) of the generated html files: the target must
+ * be an output file (or a directory with an index.html file) and the fragment, if present, must be
+ * the id of an element of the target page (e.g. the ids of the headings generated by the
+ * include-all directive).
+ *
+ * The html files are scanned tag by tag in parallel, without being parsed: an attribute can span
+ * several lines and its value can be quoted or not. The content of the comments and of the script
+ * and style elements is skipped.
+ */
+class LinkChecker {
+
+  static final String PHASE = "links";
+
+  private static final Pattern TAG = Pattern.compile(
+      "<!--.*?-->|<([a-zA-Z][^\\s/>]*)((?:\"[^\"]*\"|'[^']*'|[^'\">])*+)>", Pattern.DOTALL);
+  private static final Pattern ATTRIBUTE = Pattern.compile(
+      "([^\\s\"'>/=]+)(?:\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'=<>`]+)))?");
+  // end of the elements whose content is not html
+  private static final Map<String, Pattern> RAW_TEXT_END = new HashMap<>();
+  static {
+    RAW_TEXT_END.put("script", Pattern.compile("</script", Pattern.CASE_INSENSITIVE));
+    RAW_TEXT_END.put("style", Pattern.compile("</style", Pattern.CASE_INSENSITIVE));
+  }
+  // links with a scheme (http:, mailto:, data:, ...) or protocol relative are external
+  private static final Pattern EXTERNAL = Pattern.compile("^([a-zA-Z][a-zA-Z0-9+.-]*:|//)");
+
+  private final Path outputDir;
+
+  LinkChecker(Path outputDir) {
+    this.outputDir = outputDir.normalize();
+  }
+
+  void check(CheckReport report) {
+    long start = System.currentTimeMillis();
+
+    Set<Path> files;
+    try (Stream<Path> s = Files.walk(outputDir)) {
+      files = s.filter(Files::isRegularFile).map(Path::normalize).collect(Collectors.toSet());
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+
+    Map<Path, ScannedPage> pages = new ConcurrentHashMap<>();
+    files.parallelStream().filter(PathUtils::isHtml).forEach(p -> pages.put(p, scan(p)));
+
+    pages.entrySet().parallelStream().forEach(e -> {
+      for (Link link : e.getValue().links) {
+        String error = resolve(e.getKey(), link.url, files, pages);
+        if (error != null) {
+          report.addProblem(PHASE, e.getKey(), link.line, error);
+        }
+      }
+    });
+
+    report.addPhase(PHASE, pages.size(), System.currentTimeMillis() - start);
+  }
+
+  /**
+   * @return null if the link is valid, else the error message.
+   */
+  private String resolve(Path page, String url, Set<Path> files, Map<Path, ScannedPage> pages) {
+    String link = url.trim();
+    if (link.isEmpty() || EXTERNAL.matcher(link).find()) {
+      return null;
+    }
+
+    int fragmentIdx = link.indexOf('#');
+    String fragment = fragmentIdx >= 0 ? link.substring(fragmentIdx + 1) : "";
+    String path = fragmentIdx >= 0 ? link.substring(0, fragmentIdx) : link;
+    int queryIdx = path.indexOf('?');
+    path = queryIdx >= 0 ? path.substring(0, queryIdx) : path;
+
+    try {
+      path = decode(path);
+      fragment = decode(fragment);
+    } catch (IllegalArgumentException e) {
+      return "malformed link '" + url + "'";
+    }
+
+    Path target;
+    if (path.isEmpty()) {
+      target = page;
+    } else {
+      Path resolved = (path.startsWith("/") ? outputDir.resolve(path.substring(1)) : page.getParent().resolve(path)).normalize();
+      Path index = resolved.resolve("index.html");
+      if (!resolved.startsWith(outputDir)) {
+        target = null;
+      } else if (!path.endsWith("/") && files.contains(resolved)) {
+        target = resolved;
+      } else {
+        target = files.contains(index) ? index : null;
+      }
+    }
+
+    if (target == null) {
+      return "broken link '" + url + "'";
+    } else if (!fragment.isEmpty() && pages.containsKey(target) && !pages.get(target).anchors.contains(fragment)) {
+      return "missing anchor '" + url + "'";
+    }
+    return null;
+  }
+
+  private static String decode(String s) {
+    try {
+      return URLDecoder.decode(s.replace("+", "%2B"), "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static ScannedPage scan(Path page) {
+    String html;
+    try {
+      html = new String(Files.readAllBytes(page), StandardCharsets.UTF_8);
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+    return scan(html);
+  }
+
+  static ScannedPage scan(String html) {
+    List<Link> links = new ArrayList<>();
+    Set<String> anchors = new HashSet<>();
+    int lineNumber = 1;
+    int counted = 0;
+    Matcher tag = TAG.matcher(html);
+    int position = 0;
+    while (tag.find(position)) {
+      position = tag.end();
+      if (tag.group(1) == null) {
+        continue;
+      }
+
+      Matcher attribute = ATTRIBUTE.matcher(html).region(tag.start(2), tag.end(2));
+      while (attribute.find()) {
+        String name = attribute.group(1).toLowerCase(Locale.ENGLISH);
+        if (!"href".equals(name) && !"src".equals(name) && !"id".equals(name) && !"name".equals(name)) {
+          continue;
+        }
+        String value = attribute.group(2) != null ? attribute.group(2) : attribute.group(3) != null ? attribute.group(3) : attribute.group(4);
+        if (value == null) {
+          continue;
+        }
+        value = value.replace("&amp;", "&");
+        if ("href".equals(name) || "src".equals(name)) {
+          lineNumber += countLines(html, counted, attribute.start());
+          counted = attribute.start();
+          links.add(new Link(lineNumber, value));
+        } else {
+          anchors.add(value);
+        }
+      }
+
+      Pattern rawTextEnd = RAW_TEXT_END.get(tag.group(1).toLowerCase(Locale.ENGLISH));
+      if (rawTextEnd != null) {
+        Matcher end = rawTextEnd.matcher(html);
+        position = end.find(position) ? end.start() : html.length();
+      }
+    }
+    return new ScannedPage(links, anchors);
+  }
+
+  private static int countLines(String s, int from, int to) {
+    int lines = 0;
+    for (int i = from; i < to; i++) {
+      if (s.charAt(i) == '\n') {
+        lines++;
+      }
+    }
+    return lines;
+  }
+
+  static class ScannedPage {
+    final List<Link> links;
+    final Set<String> anchors;
+
+    ScannedPage(List<Link> links, Set<String> anchors) {
+      this.links = links;
+      this.anchors = Collections.unmodifiableSet(anchors);
+    }
+  }
+
+  static class Link {
+    final int line;
+    final String url;
+
+    Link(int line, String url) {
+      this.line = line;
+      this.url = url;
+    }
+  }
+}
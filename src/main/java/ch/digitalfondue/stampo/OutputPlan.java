@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ch.digitalfondue.stampo.processor.PlannedOutput;
+
+/**
+ * All the files that a build will generate, as returned by {@link Stampo#plan()}. Each file is
+ * rendered in the output directory only when it's requested.
+ */
+public class OutputPlan {
+
+  private final Path outputDir;
+  private final Map<Path, PlannedOutput> outputs;
+  private final Runnable onAllRendered;
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+  private final AtomicBoolean allRendered = new AtomicBoolean(false);
+
+  /**
+   * @param onAllRendered called once, by {@link #renderAll()}, when all the files are rendered.
+   */
+  OutputPlan(Path outputDir, Map<Path, PlannedOutput> outputs, Runnable onAllRendered) {
+    this.outputDir = outputDir;
+    this.outputs = Collections.unmodifiableMap(outputs);
+    this.onAllRendered = onAllRendered;
+  }
+
+  public Path getOutputDir() {
+    return outputDir;
+  }
+
+  public Map<Path, PlannedOutput> getOutputs() {
+    return outputs;
+  }
+
+  /**
+   * Render the file for the given path, relative to the output directory. As done by the web
+   * server, if the path is a directory, his index.html file is rendered.
+   *
+   * @return true if the path is part of the plan.
+   */
+  public boolean render(String relativePath) {
+    Path path = outputDir.resolve(relativePath).normalize();
+    boolean found = false;
+    for (Path p : new Path[] {path, path.resolve("index.html")}) {
+      PlannedOutput output = outputs.get(p);
+      if (output != null) {
+        output.write();
+        found = true;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Render all the files not already rendered. Stop if the plan has been cancelled.
+   */
+  public void renderAll() {
+    for (PlannedOutput output : outputs.values()) {
+      if (cancelled.get()) {
+        return;
+      }
+      output.write();
+    }
+    if (!cancelled.get() && allRendered.compareAndSet(false, true)) {
+      onAllRendered.run();
+    }
+  }
+
+  /**
+   * Used when the plan has been replaced by a new one.
+   */
+  public void cancel() {
+    cancelled.set(true);
+  }
+}
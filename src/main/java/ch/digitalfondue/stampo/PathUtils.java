@@ -15,9 +15,14 @@
  */
 package ch.digitalfondue.stampo;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
 
 import com.google.common.io.Files;
 
@@ -27,21 +32,26 @@ public class PathUtils {
     return "html".equalsIgnoreCase(Files.getFileExtension(path.toString()));
   }
 
-  public static String relativePathTo(Path path, Path basePath) {
+  public static String relativePathFromDirectory(Path path, Path baseDirectory) {
     if ("index.html".equalsIgnoreCase(path.getFileName().toString())) {
       path = path.getParent();
     }
-
-    if (!java.nio.file.Files.isDirectory(basePath)) {
-      basePath = Optional.ofNullable(basePath.getParent()).orElse(basePath);
-    }
-    String relUrl = basePath.relativize(path).toString();
+    String relUrl = relativePath(path, baseDirectory);
     return "".equals(relUrl) ? "." : relUrl;
   }
+
+  /**
+   * @return the relative path, with "/" as separator on all the platforms.
+   */
+  public static String relativePath(Path path, Path baseDirectory) {
+    List<String> names = new ArrayList<>();
+    baseDirectory.relativize(path).forEach(p -> names.add(p.toString()));
+    return String.join("/", names);
+  }
   
   public static String switchToLocale(Locale localeToSwitch, Locale currentLocale, Path outputPath, StampoGlobalConfiguration conf) {
     if (conf.getLocales().size() < 2 || localeToSwitch.equals(currentLocale)) {
-      return relativePathTo(outputPath, outputPath);
+      return conf.getUrlResolver().relativeUrl(outputPath, outputPath);
     }
     
     boolean currentLocaleIsDefault = conf.getDefaultLocale().map(currentLocale::equals).orElse(false);
@@ -52,6 +62,48 @@ public class PathUtils {
     Path localeToSwitchBaseDir = conf.getBaseOutputDir().resolve(localeToSwitchIsDefault ? "" : localeToSwitch.toLanguageTag());
     Path switchedLocalePath = localeToSwitchBaseDir.resolve(currentLocaleBaseDir.relativize(outputPath));
     
-    return relativePathTo(switchedLocalePath, outputPath);
+    return conf.getUrlResolver().relativeUrl(switchedLocalePath, outputPath);
+  }
+
+  /**
+   * @param path relative to the static directory, e.g. "css/site.css".
+   * @return the url of the asset, fingerprinted if enabled, relative to the page.
+   */
+  public static String asset(String path, Path outputPath, StampoGlobalConfiguration conf) {
+    return conf.getUrlResolver().relativeUrl(conf.getBaseOutputDir().resolve(conf.getAssetPath(path)), outputPath);
+  }
+
+  /**
+   * @return the hex encoded SHA-256 of the content of the file.
+   */
+  static String sha256(Path path) throws IOException {
+    MessageDigest digest = sha256();
+    byte[] buffer = new byte[8192];
+    try (InputStream is = java.nio.file.Files.newInputStream(path)) {
+      for (int read = is.read(buffer); read != -1; read = is.read(buffer)) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return hex(digest.digest());
+  }
+
+  static String sha256(byte[] content) {
+    return hex(sha256().digest(content));
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
   }
 }
@@ -15,6 +15,7 @@
  */
 package ch.digitalfondue.stampo;
 
+import java.nio.file.Path;
 import java.util.function.BiFunction;
 
 import ch.digitalfondue.stampo.processor.FileResourceProcessorOutput;
@@ -22,4 +23,11 @@ import ch.digitalfondue.stampo.processor.LayoutProcessorOutput;
 
 public interface ProcessedInputHandler extends
     BiFunction<FileResourceProcessorOutput, LayoutProcessorOutput, String> {
+
+  /**
+   * Like {@link #apply(Object, Object)}, with the path of the output file.
+   */
+  default String apply(Path outputPath, FileResourceProcessorOutput processedFile, LayoutProcessorOutput processedLayout) {
+    return apply(processedFile, processedLayout);
+  }
 }
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A build requested by {@link ServeAndWatch}. The pages open in the browsers should be rendered
+ * first: once they are written, calling {@link #openPagesWritten()} will update the browsers
+ * without waiting for the end of the build.
+ */
+public class Rebuild {
+
+  private final ChangeSet changes;
+  private final Set<String> openPages;
+  private final Runnable onOpenPagesWritten;
+  private final AtomicBoolean openPagesNotified = new AtomicBoolean(false);
+
+  public Rebuild(ChangeSet changes, Set<String> openPages, Runnable onOpenPagesWritten) {
+    this.changes = changes;
+    this.openPages = Collections.unmodifiableSet(openPages);
+    this.onOpenPagesWritten = onOpenPagesWritten;
+  }
+
+  /**
+   * Used for the first build, before serving.
+   */
+  public static Rebuild full() {
+    return new Rebuild(ChangeSet.fullRescan(), Collections.emptySet(), () -> {});
+  }
+
+  public ChangeSet getChanges() {
+    return changes;
+  }
+
+  /**
+   * @return the paths, relative to the output directory, of the pages open in the browsers (e.g.
+   *         "", "post/", "about.html").
+   */
+  public Set<String> getOpenPages() {
+    return openPages;
+  }
+
+  /**
+   * Only the first call has an effect.
+   */
+  public void openPagesWritten() {
+    if (openPagesNotified.compareAndSet(false, true)) {
+      onOpenPagesWritten.run();
+    }
+  }
+}
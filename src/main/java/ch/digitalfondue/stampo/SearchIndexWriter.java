@@ -0,0 +1,418 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.newBufferedWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.regex.Pattern;
+
+import org.jsoup.parser.Parser;
+
+/**
+ * Build a full text search index for each locale from the rendered html files, written in
+ * "[locale output directory]/search/":
+ *
+ * <pre>
+ * - index.json: {"documents": count, "prefixLength": 2, "shards": {"ja": "ja.json", ...}}
+ * - docs.json: [["post/first/", "title"], ...], the urls are relative to the output directory
+ * - [shard].json: {"java": [document id, score, document id delta, score, ...], ...}
+ * </pre>
+ *
+ * The terms are sharded by their first two characters, so a client fetch only the shards of the
+ * searched terms. A term is a lower case sequence of letters and digits, without diacritics, of at
+ * least two characters. The score is the number of occurrences, weighted by the position of the
+ * term: title, heading or text. When the page has a main element, only his content is indexed.
+ *
+ * The pages are scanned in parallel, while the next ones are rendered.
+ */
+class SearchIndexWriter {
+
+  static final int PREFIX_LENGTH = 2;
+
+  private static final int TITLE_WEIGHT = 10;
+  private static final int HEADING_WEIGHT = 3;
+  private static final int TEXT_WEIGHT = 1;
+  private static final int MIN_TERM_LENGTH = 2;
+  private static final int MAX_TERM_LENGTH = 40;
+
+  private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+  private static final Pattern SAFE_SHARD_NAME = Pattern.compile("[a-z0-9]+");
+
+  private final StampoGlobalConfiguration configuration;
+  private final List<CompletableFuture<Document>> documents = new ArrayList<>();
+  // a single instance of each term is kept in memory
+  private final Map<String, Term> dictionary = new ConcurrentHashMap<>();
+  // the rendering use a thread, the idle threads are stopped
+  private final ThreadPoolExecutor executor;
+
+  SearchIndexWriter(StampoGlobalConfiguration configuration) {
+    this.configuration = configuration;
+    this.executor = BuildCache.newDaemonExecutor("stampo-search-index", Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+  }
+
+  boolean isEnabled() {
+    return configuration.generateSearchIndex();
+  }
+
+  /**
+   * Scan the rendered page in background.
+   *
+   * @param localeOutputDir the output directory of the locale (e.g. "output/de/").
+   */
+  void add(Path localeOutputDir, Path outputPath, String html) {
+    String url = url(outputPath.normalize());
+    CompletableFuture<Document> document = CompletableFuture.supplyAsync(() -> scan(localeOutputDir.normalize(), url, html, dictionary), executor);
+    synchronized (documents) {
+      documents.add(document);
+    }
+  }
+
+  void write() {
+    if (!isEnabled()) {
+      return;
+    }
+
+    List<CompletableFuture<Document>> scanned;
+    synchronized (documents) {
+      scanned = new ArrayList<>(documents);
+    }
+
+    // locale output directory -> documents
+    Map<Path, List<Document>> locales = new TreeMap<>();
+    for (CompletableFuture<Document> document : scanned) {
+      Document d = document.join();
+      locales.computeIfAbsent(d.localeOutputDir, k -> new ArrayList<>()).add(d);
+    }
+
+    try {
+      for (Map.Entry<Path, List<Document>> locale : locales.entrySet()) {
+        List<Document> docs = locale.getValue();
+        // the ids do not depend on the rendering order
+        docs.sort(Comparator.comparing(d -> d.url));
+        writeIndex(locale.getKey().resolve("search"), docs);
+      }
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  private static void writeIndex(Path dir, List<Document> docs) throws IOException {
+
+    List<Term> terms = new ArrayList<>();
+    for (int id = 0; id < docs.size(); id++) {
+      Document doc = docs.get(id);
+      for (int i = 0; i < doc.terms.length; i++) {
+        if (doc.terms[i].size == 0) {
+          terms.add(doc.terms[i]);
+        }
+        doc.terms[i].add(id, doc.scores[i]);
+      }
+    }
+
+    // shard -> terms, the terms are sorted only once
+    terms.sort(Comparator.comparing(t -> t.term));
+    Map<String, List<Term>> shards = new LinkedHashMap<>();
+    for (Term term : terms) {
+      shards.computeIfAbsent(prefix(term.term), k -> new ArrayList<>()).add(term);
+    }
+
+    createDirectories(dir);
+
+    try (Writer w = newWriter(dir.resolve("docs.json"))) {
+      w.write('[');
+      for (int id = 0; id < docs.size(); id++) {
+        StringBuilder sb = new StringBuilder(id == 0 ? "[" : ",\n[");
+        Json.appendString(sb, docs.get(id).url).append(',');
+        Json.appendString(sb, docs.get(id).title).append(']');
+        w.write(sb.toString());
+      }
+      w.write("]\n");
+    }
+
+    StringBuilder manifest = new StringBuilder();
+    manifest.append("{\"documents\":").append(docs.size()).append(",\"prefixLength\":").append(PREFIX_LENGTH).append(",\"shards\":{");
+    boolean first = true;
+    for (Map.Entry<String, List<Term>> shard : shards.entrySet()) {
+      String fileName = shardFileName(shard.getKey());
+      try (Writer w = newWriter(dir.resolve(fileName))) {
+        w.write('{');
+        boolean firstTerm = true;
+        for (Term term : shard.getValue()) {
+          StringBuilder sb = new StringBuilder(firstTerm ? "" : ",\n");
+          Json.appendString(sb, term.term).append(":[");
+          for (int i = 0; i < term.size; i += 2) {
+            // the ids are increasing: the difference with the previous one is written
+            int id = term.postings[i] - (i == 0 ? 0 : term.postings[i - 2]);
+            sb.append(i == 0 ? "" : ",").append(id).append(',').append(term.postings[i + 1]);
+          }
+          w.append(sb).write(']');
+          firstTerm = false;
+          // the next locale start with empty postings
+          term.clear();
+        }
+        w.write("}\n");
+      }
+      Json.appendString(manifest.append(first ? "" : ","), shard.getKey()).append(':');
+      Json.appendString(manifest, fileName);
+      first = false;
+    }
+    manifest.append("}}\n");
+
+    // written last: it references only complete shards
+    try (Writer w = newWriter(dir.resolve("index.json"))) {
+      w.write(manifest.toString());
+    }
+  }
+
+  private static Writer newWriter(Path file) throws IOException {
+    return newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+  }
+
+  private static String prefix(String term) {
+    return term.substring(0, term.offsetByCodePoints(0, Math.min(PREFIX_LENGTH, term.codePointCount(0, term.length()))));
+  }
+
+  // e.g. "ja" -> "ja.json", "日本" -> "_65e5_672c.json"
+  static String shardFileName(String prefix) {
+    if (SAFE_SHARD_NAME.matcher(prefix).matches()) {
+      return prefix + ".json";
+    }
+    StringBuilder sb = new StringBuilder();
+    prefix.codePoints().forEach(cp -> sb.append('_').append(Integer.toHexString(cp)));
+    return sb.append(".json").toString();
+  }
+
+  // relative to the output directory, the index.html files are referenced by their directory
+  private String url(Path outputPath) {
+    List<String> names = new ArrayList<>();
+    configuration.getBaseOutputDir().normalize().relativize(outputPath).forEach(p -> names.add(p.toString()));
+    if (!names.isEmpty() && "index.html".equals(names.get(names.size() - 1))) {
+      names.set(names.size() - 1, "");
+    }
+    return String.join("/", names);
+  }
+
+  /**
+   * Single pass over the html, without building a DOM: the text between the tags is tokenized with
+   * the weight of the enclosing element.
+   */
+  static Document scan(Path localeOutputDir, String url, String s, Map<String, Term> dictionary) {
+
+    Map<String, Integer> terms = new HashMap<>();
+
+    int len = s.length();
+    int mainStart = indexOfIgnoreCase(s, "<main", 0);
+    int mainEnd = mainStart == -1 ? len : indexOfIgnoreCase(s, "</main", mainStart);
+    mainStart = Math.max(0, mainStart);
+    mainEnd = mainEnd == -1 ? len : mainEnd;
+
+    StringBuilder title = new StringBuilder();
+    StringBuilder firstHeading = new StringBuilder();
+    boolean inTitle = false;
+    boolean inHeading = false;
+    boolean firstHeadingDone = false;
+
+    int i = 0;
+    while (i < len) {
+      int tagStart = s.indexOf('<', i);
+      int textEnd = tagStart == -1 ? len : tagStart;
+
+      if (textEnd > i) {
+        boolean inMain = i >= mainStart && i < mainEnd;
+        if (inTitle || inMain) {
+          String text = s.substring(i, textEnd);
+          text = text.indexOf('&') == -1 ? text : Parser.unescapeEntities(text, false);
+          if (inTitle) {
+            title.append(text);
+          } else {
+            tokenize(text, inHeading ? HEADING_WEIGHT : TEXT_WEIGHT, terms);
+            if (inHeading && !firstHeadingDone) {
+              firstHeading.append(text);
+            }
+          }
+        }
+      }
+
+      if (tagStart == -1) {
+        break;
+      }
+
+      if (s.startsWith("<!--", tagStart)) {
+        int end = s.indexOf("-->", tagStart + 4);
+        i = end == -1 ? len : end + 3;
+        continue;
+      }
+
+      boolean closing = tagStart + 1 < len && s.charAt(tagStart + 1) == '/';
+      int nameStart = closing ? tagStart + 2 : tagStart + 1;
+      int nameEnd = nameStart;
+      while (nameEnd < len && Character.isLetterOrDigit(s.charAt(nameEnd))) {
+        nameEnd++;
+      }
+
+      if (nameEnd == nameStart) {
+        // not a tag, e.g. a "<" in the text
+        i = tagStart + 1;
+        continue;
+      }
+
+      int tagEnd = endOfTag(s, nameEnd);
+      String name = s.substring(nameStart, nameEnd);
+
+      if ("title".equalsIgnoreCase(name)) {
+        inTitle = !closing;
+      } else if (isHeading(name)) {
+        inHeading = !closing;
+        firstHeadingDone = firstHeadingDone || (closing && firstHeading.length() > 0);
+      } else if (!closing && isRawText(name)) {
+        int end = indexOfIgnoreCase(s, "</" + name, tagEnd);
+        i = end == -1 ? len : end;
+        continue;
+      }
+      i = tagEnd;
+    }
+
+    String finalTitle = normalizeWhitespaces(title.length() > 0 ? title : firstHeading);
+    tokenize(finalTitle, TITLE_WEIGHT, terms);
+    return new Document(localeOutputDir, url, finalTitle.isEmpty() ? url : finalTitle, terms, dictionary);
+  }
+
+  static void tokenize(String text, int weight, Map<String, Integer> terms) {
+    StringBuilder token = new StringBuilder();
+    boolean ascii = true;
+    for (int i = 0; i <= text.length(); i++) {
+      char c = i < text.length() ? text.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(c) || Character.getType(c) == Character.NON_SPACING_MARK) {
+        token.append(Character.toLowerCase(c));
+        ascii = ascii && c < 128;
+      } else if (token.length() > 0) {
+        String term = ascii ? token.toString() : COMBINING_MARKS.matcher(Normalizer.normalize(token, Normalizer.Form.NFD)).replaceAll("");
+        if (term.length() >= MIN_TERM_LENGTH && term.length() <= MAX_TERM_LENGTH) {
+          terms.merge(term, weight, Integer::sum);
+        }
+        token.setLength(0);
+        ascii = true;
+      }
+    }
+  }
+
+  private static String normalizeWhitespaces(CharSequence s) {
+    return s.toString().replaceAll("\\s+", " ").trim();
+  }
+
+  private static boolean isHeading(String name) {
+    return name.length() == 2 && (name.charAt(0) == 'h' || name.charAt(0) == 'H') && name.charAt(1) >= '1' && name.charAt(1) <= '6';
+  }
+
+  private static boolean isRawText(String name) {
+    return "script".equalsIgnoreCase(name) || "style".equalsIgnoreCase(name)
+        || "textarea".equalsIgnoreCase(name);
+  }
+
+  // position after the closing ">" of the tag, quoted attribute values are skipped
+  private static int endOfTag(String s, int from) {
+    char quote = 0;
+    for (int i = from; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        return i + 1;
+      }
+    }
+    return s.length();
+  }
+
+  // toFind must begin with "<"
+  private static int indexOfIgnoreCase(String s, String toFind, int from) {
+    for (int i = s.indexOf('<', from); i != -1; i = s.indexOf('<', i + 1)) {
+      if (s.regionMatches(true, i, toFind, 0, toFind.length())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  static class Document {
+    final Path localeOutputDir;
+    final String url;
+    final String title;
+    final Term[] terms;
+    final int[] scores;
+
+    Document(Path localeOutputDir, String url, String title, Map<String, Integer> terms, Map<String, Term> dictionary) {
+      this.localeOutputDir = localeOutputDir;
+      this.url = url;
+      this.title = title;
+      this.terms = new Term[terms.size()];
+      this.scores = new int[terms.size()];
+      int i = 0;
+      for (Map.Entry<String, Integer> term : terms.entrySet()) {
+        Term t = dictionary.get(term.getKey());
+        this.terms[i] = t != null ? t : dictionary.computeIfAbsent(term.getKey(), Term::new);
+        this.scores[i++] = term.getValue();
+      }
+    }
+  }
+
+  /**
+   * A term and his postings: document id, score, document id, score, ...
+   */
+  static class Term {
+    final String term;
+    int[] postings = new int[4];
+    int size;
+
+    Term(String term) {
+      this.term = term;
+    }
+
+    void add(int id, int score) {
+      if (size + 2 > postings.length) {
+        postings = Arrays.copyOf(postings, postings.length * 2);
+      }
+      postings[size++] = id;
+      postings[size++] = score;
+    }
+
+    void clear() {
+      postings = new int[4];
+      size = 0;
+    }
+  }
+}
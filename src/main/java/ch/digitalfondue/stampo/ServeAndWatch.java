@@ -21,56 +21,89 @@ import static java.nio.file.Files.isDirectory;
 import static java.nio.file.Files.newDirectoryStream;
 import io.undertow.Handlers;
 import io.undertow.Undertow;
-import io.undertow.io.DefaultIoCallback;
 import io.undertow.io.Sender;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.ByteRange;
+import io.undertow.util.ETag;
+import io.undertow.util.ETagUtils;
 import io.undertow.util.Headers;
 import io.undertow.websockets.core.AbstractReceiveListener;
+import io.undertow.websockets.core.BufferedTextMessage;
 import io.undertow.websockets.core.StreamSourceFrameChannel;
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSockets;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.apache.tika.Tika;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.xnio.ChannelListener;
 import org.xnio.IoUtils;
+import org.xnio.channels.StreamSinkChannel;
 
+import ch.digitalfondue.stampo.WatchDir.WatchDirDelay;
 import ch.digitalfondue.stampo.processor.AlphaNumericStringComparator;
 
 import com.google.common.io.CharStreams;
 
 public class ServeAndWatch {
 
+  // big files (e.g. videos) are not read for computing the ETag
+  private static final long MAX_HASHED_FILE_SIZE = 1024 * 1024;
+
   private final StampoGlobalConfiguration configuration;
+  private final Supplier<Path> outputDir;
+  private final Consumer<String> beforeServe;
   private final String hostname;
   private final int port;
   private final boolean rebuildOnChange;
   private final boolean autoReload;
   private final String reloadScript = getReloadScript();
-  private final Runnable triggerBuild;
+  private final Consumer<Rebuild> triggerBuild;
   private final Tika fileMetadataParser = new Tika();
+  // requested path -> response, refreshed after each rebuild
+  private final Map<String, CachedResponse> responseCache = new ConcurrentHashMap<>();
+  // incremented when a build starts and after each refresh of the response cache: a response read
+  // from the output directory before is not cached, as it may be outdated
+  private final AtomicLong generation = new AtomicLong();
+  // websocket -> path of the page open in the browser
+  private final Map<WebSocketChannel, String> openPages = new ConcurrentHashMap<>();
+  // requested paths answered with a 404 or a directory listing
+  private final Set<String> notCached = Collections.newSetFromMap(new ConcurrentHashMap<>());
   
   private final AtomicBoolean run = new AtomicBoolean(false);
   private final CountDownLatch blockOnStart;
@@ -78,12 +111,28 @@ public class ServeAndWatch {
   private Optional<Thread> dirWatcherThread;
   private Optional<Thread> changeNotifierThread;
   
-  private final Comparator<Path> pathComparator = Comparator.comparing(Path::toString, new AlphaNumericStringComparator(Locale.ENGLISH));
+  private final Comparator<Path> pathComparator = KeyedComparator.comparing(Path::toString, new AlphaNumericStringComparator(Locale.ENGLISH));
 
 
   public ServeAndWatch(String hostname, int port, boolean rebuildOnChange, boolean autoReload,
       StampoGlobalConfiguration configuration, Runnable triggerBuild, boolean blockingOnStart) {
+    this(hostname, port, rebuildOnChange, autoReload, configuration, configuration::getBaseOutputDir, req -> {}, rebuild -> triggerBuild.run(), blockingOnStart);
+  }
+
+  /**
+   * @param outputDir the directory to serve, it may change after each build (e.g. when building in
+   *        memory).
+   * @param beforeServe called with the requested path, relative to the output directory, before
+   *        reading it: used for rendering the pages on demand.
+   * @param triggerBuild called with the paths of the source directory that changed, and the pages
+   *        open in the browsers.
+   */
+  public ServeAndWatch(String hostname, int port, boolean rebuildOnChange, boolean autoReload,
+      StampoGlobalConfiguration configuration, Supplier<Path> outputDir, Consumer<String> beforeServe,
+      Consumer<Rebuild> triggerBuild, boolean blockingOnStart) {
     this.configuration = configuration;
+    this.outputDir = outputDir;
+    this.beforeServe = beforeServe;
     this.hostname = hostname;
     this.rebuildOnChange = rebuildOnChange;
     this.autoReload = autoReload;
@@ -96,7 +145,7 @@ public class ServeAndWatch {
 
     Set<WebSocketChannel> activeChannels = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
-    DelayQueue<Delayed> delayQueue = new DelayQueue<Delayed>();
+    DelayQueue<WatchDirDelay> delayQueue = new DelayQueue<>();
 
     run.set(true);
     
@@ -120,14 +169,24 @@ public class ServeAndWatch {
 
       changeNotifierThread =
           Optional.of(new Thread(() -> {
+            ChangeSet.Builder changes = new ChangeSet.Builder();
             try {
               while (run.get()) {
-                Delayed d = delayQueue.poll(500, TimeUnit.MILLISECONDS);
+                WatchDirDelay d = delayQueue.poll(500, TimeUnit.MILLISECONDS);
+                if (d != null) {
+                  changes.add(d.getPath(), d.getKind());
+                }
                 if (d != null && delayQueue.isEmpty()) {
                   try {
-                    triggerBuild.run();
-                    activeChannels.stream().filter(WebSocketChannel::isOpen)
-                        .forEach(wsc -> WebSockets.sendText("change", wsc, null));
+                    Set<String> pages = openPages.values().stream().map(ServeAndWatch::toRequestedPath).collect(Collectors.toSet());
+                    Rebuild rebuild = new Rebuild(changes.drain(), pages, () -> notifyChanges(activeChannels, pages, true));
+                    nextGeneration();
+                    triggerBuild.accept(rebuild);
+                    // if the build didn't notify the open pages, they are notified now with the rest
+                    rebuild.openPagesWritten();
+                    Set<String> all = new HashSet<>(responseCache.keySet());
+                    all.addAll(notCached);
+                    notifyChanges(activeChannels, all, false);
                   } catch (Throwable e) {
                     e.printStackTrace();
                   }
@@ -177,7 +236,7 @@ public class ServeAndWatch {
 
     HttpHandler handler =
         autoReload ? Handlers.path()
-            .addExactPath("/stampo-reload", websocketHandler(activeChannels))
+            .addExactPath("/stampo-reload", websocketHandler(activeChannels, openPages))
             .addPrefixPath("/", staticResourcesHandler()) : staticResourcesHandler();
 
     Undertow server =
@@ -189,29 +248,39 @@ public class ServeAndWatch {
   private static class WebsocketReceiveListener extends AbstractReceiveListener {
 
     private final Set<WebSocketChannel> activeChannels;
+    private final Map<WebSocketChannel, String> openPages;
 
-    public WebsocketReceiveListener(Set<WebSocketChannel> activeChannels) {
+    public WebsocketReceiveListener(Set<WebSocketChannel> activeChannels, Map<WebSocketChannel, String> openPages) {
       this.activeChannels = activeChannels;
+      this.openPages = openPages;
+    }
+
+    // the client send the path of his page
+    @Override
+    protected void onFullTextMessage(WebSocketChannel channel, BufferedTextMessage message) {
+      openPages.put(channel, message.getData());
     }
 
     @Override
     protected void onClose(WebSocketChannel webSocketChannel, StreamSourceFrameChannel channel)
         throws IOException {
       activeChannels.remove(webSocketChannel);
+      openPages.remove(webSocketChannel);
       super.onClose(webSocketChannel, channel);
     }
 
     @Override
     protected void onError(WebSocketChannel channel, Throwable error) {
       activeChannels.remove(channel);
+      openPages.remove(channel);
       super.onError(channel, error);
     }
   }
 
-  private static HttpHandler websocketHandler(Set<WebSocketChannel> activeChannels) {
+  private static HttpHandler websocketHandler(Set<WebSocketChannel> activeChannels, Map<WebSocketChannel, String> openPages) {
     return Handlers.websocket((exchange, channel) -> {
       activeChannels.add(channel);
-      channel.getReceiveSetter().set(new WebsocketReceiveListener(activeChannels));
+      channel.getReceiveSetter().set(new WebsocketReceiveListener(activeChannels, openPages));
       channel.resumeReceives();
     });
   }
@@ -226,101 +295,430 @@ public class ServeAndWatch {
   }
 
   private String injectWebsocketScript(String s) {
-    return autoReload ? s.replaceFirst("<head>",
-        "<head><script>/* websocket script for auto reload */ " + reloadScript + "</script>") : s;
+    int idx = s.indexOf("<head>");
+    if (!autoReload || idx == -1) {
+      return s;
+    }
+    int insertAt = idx + "<head>".length();
+    return new StringBuilder(s.length() + reloadScript.length() + 64).append(s, 0, insertAt)
+        .append("<script>/* websocket script for auto reload */ ").append(reloadScript)
+        .append("</script>").append(s, insertAt, s.length()).toString();
   }
 
   private HttpHandler staticResourcesHandler() {
+    HttpHandler handler = this::handleStaticResource;
+    // all the file system access are done in a worker thread, not in the io thread
     return ex -> {
-      System.out.println("requested url: " + ex.getRequestURI());
-      String req = ex.getRequestURI().toString().substring(1);
-      Path p = configuration.getBaseOutputDir().resolve(req);
-      boolean isPathDirectory = isDirectory(p);
-      if (isPathDirectory && req.length() > 0 && !req.endsWith("/")) {
-        // redirect to req+"/"
-        ex.getResponseHeaders().put(Headers.LOCATION, "/" + req + "/");
-        ex.setStatusCode(302);
-        return;
+      if (ex.isInIoThread()) {
+        ex.dispatch(handler);
+      } else {
+        handler.handleRequest(ex);
+      }
+    };
+  }
+
+  private void handleStaticResource(HttpServerExchange ex) throws IOException {
+    System.out.println("requested url: " + ex.getRequestURI());
+    String req = ex.getRequestURI().toString().substring(1);
+
+    CachedResponse cached = responseCache.get(req);
+    if (cached != null) {
+      cached.send(ex);
+      return;
+    }
+    long requestGeneration = generation.get();
+
+    beforeServe.accept(req);
+    Path p = outputDir.get().resolve(req);
+    boolean isPathDirectory = isDirectory(p);
+    if (isPathDirectory && req.length() > 0 && !req.endsWith("/")) {
+      // redirect to req+"/"
+      ex.getResponseHeaders().put(Headers.LOCATION, "/" + req + "/");
+      ex.setStatusCode(302);
+      return;
+    }
+
+    if (isPathDirectory && exists(p.resolve("index.html"))) {
+      p = p.resolve("index.html");
+    }
+
+    if (isDirectory(p)) {
+      notCached.add(req);
+      setContentTypeAndNoCache(ex, "text/html;charset=utf-8");
+      ex.setStatusCode(200);
+
+      try (DirectoryStream<Path> ds = newDirectoryStream(p)) {
+        Sender sender = ex.getResponseSender();
+
+        StringBuilder sb =
+            new StringBuilder(
+                "<!DOCTYPE html><html><head></head><body><li><a href=\"..\">go up</a>");
+        
+        List<Path> paths = new ArrayList<>();
+        ds.iterator().forEachRemaining(paths::add);
+        KeyedComparator.sort(paths, pathComparator);
+        
+        for (Path path : paths) {
+
+          String fileName = p.relativize(path).toString();
+          sb.append(String.format("<li><a href=\"%s\">%s</a>", fileName, fileName));
+        }
+
+        sb.append("</body></html>");
+
+        sender.send(injectWebsocketScript(sb.toString()), UTF_8);
       }
+    } else if (exists(p)) {
+      CachedResponse response = newCachedResponse(p);
+      cacheResponse(req, response, requestGeneration);
+      response.send(ex);
+    } else {
+      notCached.add(req);
+      setContentTypeAndNoCache(ex, "text/html;charset=utf-8");
+      ex.setStatusCode(404);
+      ex.getResponseSender().send(
+          injectWebsocketScript("<!DOCTYPE html><html><head></head><body>404 not found "
+              + ex.getRequestURI().toString() + "</body></html>"), UTF_8);
+    }
+  }
 
-      if (isPathDirectory && exists(p.resolve("index.html"))) {
-        p = p.resolve("index.html");
+  private void cacheResponse(String req, CachedResponse response, long requestGeneration) {
+    synchronized (generation) {
+      if (generation.get() == requestGeneration) {
+        responseCache.put(req, response);
       }
+    }
+  }
 
-      if (isDirectory(p)) {
-        setContentTypeAndNoCache(ex, "text/html;charset=utf-8");
-        ex.setStatusCode(200);
+  private void nextGeneration() {
+    synchronized (generation) {
+      generation.incrementAndGet();
+    }
+  }
 
-        try (DirectoryStream<Path> ds = newDirectoryStream(p)) {
-          Sender sender = ex.getResponseSender();
-
-          StringBuilder sb =
-              new StringBuilder(
-                  "<!DOCTYPE html><html><head></head><body><li><a href=\"..\">go up</a>");
-          
-          List<Path> paths = new ArrayList<>();
-          ds.iterator().forEachRemaining(paths::add);
-          paths.sort(pathComparator);
-          
-          for (Path path : paths) {
-
-            String fileName = p.relativize(path).toString();
-            sb.append(String.format("<li><a href=\"%s\">%s</a>", fileName, fileName));
-          }
+  private CachedResponse newCachedResponse(Path p) throws IOException {
+    String contentType = fileMetadataParser.detect(p.toString());
+    Path sidecar = p.resolveSibling(p.getFileName().toString() + ".gz");
+    Path gzipped = exists(sidecar) ? sidecar : null;
+    if ("text/html".equals(contentType)) {
+      String html = new String(Files.readAllBytes(p), UTF_8);
+      String injected = injectWebsocketScript(html);
+      byte[] content = injected.getBytes(UTF_8);
+      // the sidecar does not contain the reload script
+      return new CachedResponse("text/html;charset=utf-8", etag(content), p, content, injected.equals(html) ? gzipped : null);
+    } else {
+      return new CachedResponse(contentType, etag(p), p, null, gzipped);
+    }
+  }
+
+  /**
+   * Send the changed paths to the browsers.
+   *
+   * @param onlyToAffected if true, only the browsers having one of the paths open are notified.
+   */
+  private void notifyChanges(Set<WebSocketChannel> activeChannels, Set<String> paths, boolean onlyToAffected) {
+    Map<String, Optional<CachedResponse>> changed = refreshResponseCache(paths);
+    if (changed.isEmpty()) {
+      return;
+    }
+    activeChannels.stream().filter(WebSocketChannel::isOpen)
+        .filter(wsc -> !onlyToAffected || changed.containsKey(toRequestedPath(openPages.getOrDefault(wsc, ""))))
+        .forEach(wsc -> WebSockets.sendText(changedMessage(changed.keySet(), changedBody(wsc, changed)), wsc, null));
+  }
 
-          sb.append("</body></html>");
+  // "/post/" -> "post/", as the keys of the response cache
+  private static String toRequestedPath(String path) {
+    return path.startsWith("/") ? path.substring(1) : path;
+  }
 
-          sender.send(injectWebsocketScript(sb.toString()), UTF_8);
+  /**
+   * Called after a rebuild: the cached responses are recomputed, and compared with the previous
+   * ones. As only the requested paths are cached, the browser is notified only about the files
+   * that it may have loaded.
+   *
+   * @return the given paths whose content changed (or that were not cached, as the 404 and
+   *         directory listing pages) -&gt; the previous response, if it was cached.
+   */
+  private Map<String, Optional<CachedResponse>> refreshResponseCache(Set<String> paths) {
+    Map<String, Optional<CachedResponse>> changed = new TreeMap<>();
+    for (String req : paths) {
+      CachedResponse old = responseCache.remove(req);
+      if (notCached.remove(req) || old == null) {
+        changed.put(req, Optional.empty());
+        continue;
+      }
+      try {
+        beforeServe.accept(req);
+        Path p = outputDir.get().resolve(req);
+        if (isDirectory(p)) {
+          p = p.resolve("index.html");
+        }
+        if (exists(p) && !isDirectory(p)) {
+          CachedResponse response = newCachedResponse(p);
+          responseCache.put(req, response);
+          if (response.etag.equals(old.etag)) {
+            continue;
+          }
         }
-      } else if (exists(p)) {
+      } catch (IOException e) {
+        // handled as changed
+      }
+      changed.put(req, Optional.of(old));
+    }
+    nextGeneration();
+    return changed;
+  }
 
-        String contentType = fileMetadataParser.detect(p.toString());
+  /**
+   * The new body of the page open in the browser, if it's the only part that changed: the browser
+   * can then update it without reloading. The pages that are not open are never sent.
+   */
+  private String changedBody(WebSocketChannel channel, Map<String, Optional<CachedResponse>> changed) {
+    String req = toRequestedPath(openPages.getOrDefault(channel, ""));
+    CachedResponse old = changed.getOrDefault(req, Optional.empty()).orElse(null);
+    CachedResponse current = responseCache.get(req);
+    if (old == null || old.content == null || current == null || current.content == null) {
+      return null;
+    }
+
+    Document oldDoc = Jsoup.parse(new String(old.content, UTF_8));
+    Document newDoc = Jsoup.parse(new String(current.content, UTF_8));
+    oldDoc.outputSettings().prettyPrint(false);
+    newDoc.outputSettings().prettyPrint(false);
+    // the scripts are not executed when updating the body
+    boolean onlyBodyChanged = oldDoc.head().outerHtml().equals(newDoc.head().outerHtml())
+        && oldDoc.body().attributes().equals(newDoc.body().attributes())
+        && oldDoc.body().select("script").outerHtml().equals(newDoc.body().select("script").outerHtml());
+    return onlyBodyChanged ? newDoc.body().html() : null;
+  }
+
+  // {"changed": ["/", "/css/style.css"], "body": "..."}
+  private static String changedMessage(Set<String> changed, String body) {
+    StringBuilder sb = new StringBuilder("{\"changed\":[");
+    boolean first = true;
+    for (String req : changed) {
+      Json.appendString(sb.append(first ? "" : ","), "/" + req);
+      first = false;
+    }
+    sb.append("]");
+    if (body != null) {
+      Json.appendString(sb.append(",\"body\":"), body);
+    }
+    return sb.append("}").toString();
+  }
+
+  /**
+   * A file of the output directory, with the precomputed ETag. The content of the html files
+   * (with the reload script already injected) is kept in memory.
+   *
+   * When the build wrote a gzip sidecar ("[file].gz"), it's sent to the clients accepting gzip,
+   * except for the range requests.
+   */
+  private static class CachedResponse {
+    private final String contentType;
+    private final ETag etag;
+    private final Path file;
+    private final byte[] content;
+    private final long length;
+    private final Path gzipped;
+    private final ETag gzippedETag;
+    private final long gzippedLength;
+
+    CachedResponse(String contentType, ETag etag, Path file, byte[] content, Path gzipped) throws IOException {
+      this.contentType = contentType;
+      this.etag = etag;
+      this.file = file;
+      this.content = content;
+      this.length = content != null ? content.length : Files.size(file);
+      this.gzipped = gzipped;
+      // another representation of the same resource, thus another ETag
+      this.gzippedETag = gzipped != null ? new ETag(etag.isWeak(), etag.getTag() + "-gzip") : null;
+      this.gzippedLength = gzipped != null ? Files.size(gzipped) : 0;
+    }
+
+    void send(HttpServerExchange ex) throws IOException {
+      boolean sendGzipped = gzipped != null && !ex.getRequestHeaders().contains(Headers.RANGE)
+          && acceptsGzip(ex.getRequestHeaders().getFirst(Headers.ACCEPT_ENCODING));
+      ETag responseETag = sendGzipped ? gzippedETag : etag;
+      ex.getResponseHeaders().put(Headers.CONTENT_TYPE, contentType)
+          .put(Headers.CACHE_CONTROL, "no-cache").put(Headers.ETAG, responseETag.toString());
+      if (gzipped != null) {
+        ex.getResponseHeaders().put(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+      }
+      if (!ETagUtils.handleIfNoneMatch(ex, responseETag, true)) {
+        ex.setStatusCode(304);
+        ex.endExchange();
+        return;
+      }
 
-        boolean isHtmlFile = "text/html".equals(contentType);
-        setContentTypeAndNoCache(ex, isHtmlFile ? "text/html;charset=utf-8" : contentType);
+      if (sendGzipped) {
+        ex.getResponseHeaders().put(Headers.CONTENT_ENCODING, "gzip");
         ex.setStatusCode(200);
+        ex.setResponseContentLength(gzippedLength);
+        new FileTransfer(ex, FileChannel.open(gzipped, StandardOpenOption.READ), 0, gzippedLength)
+            .handleEvent(ex.getResponseChannel());
+        return;
+      }
 
-        Sender sender = ex.getResponseSender();
+      if (content != null) {
+        ex.setStatusCode(200);
+        ex.getResponseSender().send(ByteBuffer.wrap(content));
+        return;
+      }
 
-        if (!isHtmlFile) {
-          FileChannel fc = FileChannel.open(p, StandardOpenOption.READ);
-          sender.transferFrom(fc, new CloseFileChannelIoCallback(fc));
+      ex.getResponseHeaders().put(Headers.ACCEPT_RANGES, "bytes");
+      long start = 0;
+      long end = length - 1;
+      ByteRange range = ByteRange.parse(ex.getRequestHeaders().getFirst(Headers.RANGE));
+      // multiple ranges are ignored: the whole file is sent
+      if (range != null && range.getRanges() == 1) {
+        if (range.getStart(0) == -1) {
+          // suffix: the last n bytes
+          start = Math.max(0, length - range.getEnd(0));
         } else {
-          sender.send(injectWebsocketScript(new String(Files.readAllBytes(p), UTF_8)), UTF_8);
+          start = range.getStart(0);
+          end = range.getEnd(0) == -1 ? length - 1 : Math.min(range.getEnd(0), length - 1);
         }
-
+        if (start >= length || start > end) {
+          ex.getResponseHeaders().put(Headers.CONTENT_RANGE, "bytes */" + length);
+          ex.setStatusCode(416);
+          ex.endExchange();
+          return;
+        }
+        ex.getResponseHeaders().put(Headers.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        ex.setStatusCode(206);
       } else {
-        setContentTypeAndNoCache(ex, "text/html;charset=utf-8");
-        ex.setStatusCode(404);
-        ex.getResponseSender().send(
-            injectWebsocketScript("<!DOCTYPE html><html><head></head><body>404 not found "
-                + ex.getRequestURI().toString() + "</body></html>"), UTF_8);
+        ex.setStatusCode(200);
       }
-    };
+
+      long count = end - start + 1;
+      ex.setResponseContentLength(count);
+      new FileTransfer(ex, FileChannel.open(file, StandardOpenOption.READ), start, count)
+          .handleEvent(ex.getResponseChannel());
+    }
   }
 
-  static class CloseFileChannelIoCallback extends DefaultIoCallback {
+  /**
+   * Non blocking, zero copy transfer of a region of a file. When the socket is full the write
+   * listener is resumed, so a slow client does not keep a worker thread busy.
+   */
+  private static class FileTransfer implements ChannelListener<StreamSinkChannel> {
 
+    private final HttpServerExchange ex;
     private final FileChannel fc;
+    private long position;
+    private long remaining;
+    private boolean headersFlushed;
 
-    public CloseFileChannelIoCallback(FileChannel fc) {
+    FileTransfer(HttpServerExchange ex, FileChannel fc, long position, long count) {
+      this.ex = ex;
       this.fc = fc;
+      this.position = position;
+      this.remaining = count;
     }
 
     @Override
-    public void onComplete(HttpServerExchange exchange, Sender sender) {
-      IoUtils.safeClose(fc);
-      super.onComplete(exchange, sender);
+    public void handleEvent(StreamSinkChannel out) {
+      try {
+        // the headers are flushed first: undertow would otherwise copy the file through a buffer
+        // to merge it with them, ignoring the requested count
+        if (!headersFlushed && !out.flush()) {
+          resumeWrites(out);
+          return;
+        }
+        headersFlushed = true;
+        while (remaining > 0) {
+          long transferred = out.transferFrom(fc, position, remaining);
+          if (transferred == 0) {
+            if (position >= fc.size()) {
+              throw new EOFException("file truncated while sending");
+            }
+            resumeWrites(out);
+            return;
+          }
+          position += transferred;
+          remaining -= transferred;
+        }
+        out.getWriteSetter().set(null);
+        out.suspendWrites();
+        IoUtils.safeClose(fc);
+        ex.endExchange();
+      } catch (IOException e) {
+        IoUtils.safeClose(fc);
+        IoUtils.safeClose(ex.getConnection());
+      }
     }
 
-    @Override
-    public void onException(HttpServerExchange exchange, Sender sender, IOException exception) {
-      IoUtils.safeClose(fc);
-      super.onException(exchange, sender, exception);
+    private void resumeWrites(StreamSinkChannel out) {
+      out.getWriteSetter().set(this);
+      out.resumeWrites();
+    }
+  }
+
+  /**
+   * @param acceptEncoding the value of the Accept-Encoding header, e.g. "gzip, deflate, br;q=0.8".
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    double gzip = -1;
+    double any = -1;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] params = coding.split(";");
+      String name = params[0].trim();
+      double q = 1;
+      for (int i = 1; i < params.length; i++) {
+        String param = params[i].trim();
+        if (param.startsWith("q=")) {
+          try {
+            q = Double.parseDouble(param.substring(2));
+          } catch (NumberFormatException e) {
+            q = 0;
+          }
+        }
+      }
+      if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+        gzip = q;
+      } else if ("*".equals(name)) {
+        any = q;
+      }
     }
+    return gzip != -1 ? gzip > 0 : any > 0;
   }
 
+  private static ETag etag(byte[] content) {
+    MessageDigest digest = sha1();
+    digest.update(content);
+    return new ETag(false, Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()));
+  }
+
+  // the output directory is rewritten by each build, thus the content is hashed instead of using
+  // the last modified time. The big files are copied from the static directory with their last
+  // modified time, so their weak ETag does not change when they are copied again
+  private static ETag etag(Path file) throws IOException {
+    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+    if (attrs.size() > MAX_HASHED_FILE_SIZE) {
+      return new ETag(true, attrs.size() + "-" + attrs.lastModifiedTime().toMillis());
+    }
+    MessageDigest digest = sha1();
+    byte[] buffer = new byte[8192];
+    try (InputStream is = Files.newInputStream(file)) {
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return new ETag(false, Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()));
+  }
 
+  private static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
 
   private static void setContentTypeAndNoCache(HttpServerExchange ex, String contentType) {
     ex.getResponseHeaders().put(Headers.CONTENT_TYPE, contentType)
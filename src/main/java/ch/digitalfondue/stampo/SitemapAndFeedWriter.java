@@ -0,0 +1,367 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.newBufferedWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+import ch.digitalfondue.stampo.exception.ConfigurationException;
+import ch.digitalfondue.stampo.resource.FileResource;
+
+/**
+ * Write the sitemaps and the Atom feeds from the output paths of a build: the content is not
+ * rendered or parsed again, each file is streamed to the output directory once all the output
+ * paths are known.
+ *
+ * With more than one locale, there is a sitemap for each locale, and each url lists his alternates
+ * in the other locales (hreflang). When there is more than one sitemap, or more than 50000 urls,
+ * "sitemap.xml" is a sitemap index.
+ *
+ * There is a feed for each configured content directory (e.g. "post" -&gt; "post/feed.xml") and for
+ * each value of the configured taxonomies (e.g. "tags" -&gt; "tags/java/feed.xml"), with the newest
+ * pages first. A taxonomy value must be usable as a directory name.
+ */
+class SitemapAndFeedWriter {
+
+  static final int MAX_URLS_PER_SITEMAP = 50000;
+
+  private final StampoGlobalConfiguration configuration;
+  private final int maxUrlsPerSitemap;
+  private final List<Output> outputs = new ArrayList<>();
+  // path of the content file -> date
+  private final Map<Path, String> dates = new HashMap<>();
+
+  SitemapAndFeedWriter(StampoGlobalConfiguration configuration) {
+    this(configuration, MAX_URLS_PER_SITEMAP);
+  }
+
+  SitemapAndFeedWriter(StampoGlobalConfiguration configuration, int maxUrlsPerSitemap) {
+    this.configuration = configuration;
+    this.maxUrlsPerSitemap = maxUrlsPerSitemap;
+  }
+
+  boolean isEnabled() {
+    return configuration.generateSitemap() || !configuration.getFeeds().isEmpty();
+  }
+
+  /**
+   * Called for each output path of the build, in the order of the plan.
+   *
+   * @param localeOutputDir the output directory of the locale (e.g. "output/de/").
+   */
+  void add(FileResource resource, Locale locale, Path localeOutputDir, Path outputPath) {
+    if (isEnabled()) {
+      Locale finalLocale = resource.getMetadata().getOverrideLocale().orElse(locale);
+      outputs.add(new Output(resource, finalLocale, localeOutputDir.normalize(), outputPath.normalize()));
+    }
+  }
+
+  void write() {
+    if (!isEnabled()) {
+      return;
+    }
+
+    String baseUrl = configuration.getBaseUrl().map(u -> u.endsWith("/") ? u.substring(0, u.length() - 1) : u)
+        .orElseThrow(() -> new ConfigurationException(configuration.getBaseDirectory().resolve("configuration.yaml"),
+            StampoGlobalConfiguration.CONF_BASE_URL + " is required for generating the sitemap and the feeds"));
+
+    Set<Path> outputPaths = new HashSet<>();
+    outputs.forEach(o -> outputPaths.add(o.outputPath));
+
+    try {
+      if (configuration.generateSitemap()) {
+        writeSitemaps(baseUrl, outputPaths);
+      }
+      if (!configuration.getFeeds().isEmpty()) {
+        writeFeeds(baseUrl, outputPaths);
+      }
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  private void writeSitemaps(String baseUrl, Set<Path> outputPaths) throws IOException {
+
+    boolean multiLocales = configuration.getLocales().size() > 1;
+
+    // sitemap name -> pages
+    Map<String, List<Output>> sitemaps = new TreeMap<>();
+    // path relative to the locale directory -> the same page in each locale, as in
+    // PathUtils.switchToLocale: a page translated in separate files (post/first.en.md,
+    // post/first.de.md) is the same page
+    Map<Path, List<Output>> alternates = new HashMap<>();
+    for (Output o : outputs) {
+      if (PathUtils.isHtml(o.outputPath)) {
+        String name = multiLocales ? "sitemap-" + o.locale.toLanguageTag() : "sitemap";
+        sitemaps.computeIfAbsent(name, k -> new ArrayList<>()).add(o);
+        if (multiLocales) {
+          o.alternates = alternates.computeIfAbsent(o.localeOutputDir.relativize(o.outputPath), k -> new ArrayList<>(2));
+          if (o.alternates.stream().noneMatch(a -> a.locale.equals(o.locale))) {
+            o.alternates.add(o);
+          }
+        }
+      }
+    }
+
+    Path outputDir = configuration.getBaseOutputDir().normalize();
+
+    if (sitemaps.isEmpty()) {
+      writeSitemap(outputDir.resolve("sitemap.xml"), Collections.emptyList(), baseUrl, outputPaths);
+      return;
+    }
+
+    // sitemap file -> pages
+    Map<Path, List<Output>> files = new LinkedHashMap<>();
+    sitemaps.forEach((name, pages) -> {
+      int count = (pages.size() + maxUrlsPerSitemap - 1) / maxUrlsPerSitemap;
+      for (int i = 0; i < count; i++) {
+        String fileName = name + (count > 1 ? "-" + (i + 1) : "") + ".xml";
+        files.put(outputDir.resolve(fileName), pages.subList(i * maxUrlsPerSitemap, Math.min(pages.size(), (i + 1) * maxUrlsPerSitemap)));
+      }
+    });
+
+    if (files.size() == 1 && !multiLocales) {
+      writeSitemap(outputDir.resolve("sitemap.xml"), files.values().iterator().next(), baseUrl, outputPaths);
+      return;
+    }
+
+    for (Map.Entry<Path, List<Output>> file : files.entrySet()) {
+      writeSitemap(file.getKey(), file.getValue(), baseUrl, outputPaths);
+    }
+
+    try (Writer w = newWriter(outputDir.resolve("sitemap.xml"), outputPaths)) {
+      w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      w.write("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+      for (Path file : files.keySet()) {
+        w.write("  <sitemap><loc>" + escape(url(baseUrl, file)) + "</loc></sitemap>\n");
+      }
+      w.write("</sitemapindex>\n");
+    }
+  }
+
+  private void writeSitemap(Path file, List<Output> pages, String baseUrl, Set<Path> outputPaths) throws IOException {
+    try (Writer w = newWriter(file, outputPaths)) {
+      w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      w.write("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" xmlns:xhtml=\"http://www.w3.org/1999/xhtml\">\n");
+      for (Output page : pages) {
+        w.write("  <url>\n");
+        w.write("    <loc>" + escape(url(baseUrl, page.outputPath)) + "</loc>\n");
+        w.write("    <lastmod>" + date(page.resource) + "</lastmod>\n");
+        if (page.alternates != null && page.alternates.size() > 1) {
+          for (Output alternate : page.alternates) {
+            w.write("    <xhtml:link rel=\"alternate\" hreflang=\"" + escape(alternate.locale.toLanguageTag())
+                + "\" href=\"" + escape(url(baseUrl, alternate.outputPath)) + "\"/>\n");
+          }
+        }
+        w.write("  </url>\n");
+      }
+      w.write("</urlset>\n");
+    }
+  }
+
+  private void writeFeeds(String baseUrl, Set<Path> outputPaths) throws IOException {
+
+    Set<String> taxonomies = configuration.getTaxonomyGroups();
+    Path contentDir = configuration.getContentDir();
+
+    // feed file -> feed, the pages are the first output of the content files with the default directive
+    Map<Path, Feed> feeds = new LinkedHashMap<>();
+    Set<String> added = new HashSet<>();
+    for (Output o : outputs) {
+      FileResource resource = o.resource;
+      if (!"default".equals(resource.getMetadata().getDirective()) || "index".equals(resource.getFileNameWithoutExtensions())
+          || !PathUtils.isHtml(o.outputPath) || !added.add(resource.getPath() + "\u0000" + o.localeOutputDir)) {
+        continue;
+      }
+
+      for (String name : configuration.getFeeds()) {
+        if (taxonomies.contains(name)) {
+          for (Object value : values(resource, name)) {
+            Path dir = taxonomyDir(o, name, value.toString());
+            feeds.computeIfAbsent(dir.resolve("feed.xml"), k -> new Feed(value.toString(), dir, o.locale)).pages.add(o);
+          }
+        } else if (resource.getPath().startsWith(contentDir.resolve(name).normalize())) {
+          Path dir = o.localeOutputDir.resolve(name).normalize();
+          feeds.computeIfAbsent(dir.resolve("feed.xml"), k -> new Feed(name, dir, o.locale)).pages.add(o);
+        }
+      }
+    }
+
+    Comparator<Output> newestFirst = KeyedComparator.comparing(o -> o.resource.getCreationTime(), Comparator.<Long>reverseOrder());
+    for (Map.Entry<Path, Feed> e : feeds.entrySet()) {
+      Feed feed = e.getValue();
+      List<Output> pages = new ArrayList<>(feed.pages);
+      KeyedComparator.sort(pages, newestFirst);
+      writeFeed(e.getKey(), feed, pages.subList(0, Math.min(pages.size(), configuration.getFeedSize())), baseUrl, outputPaths);
+    }
+  }
+
+  // e.g. "tags/java", the value is used as it is by the taxonomy pagination
+  private static Path taxonomyDir(Output o, String taxonomy, String value) {
+    Path dir = o.localeOutputDir.resolve(taxonomy).resolve(value).normalize();
+    if (value.isEmpty() || value.contains("/") || value.contains("\\") || ".".equals(value) || "..".equals(value)
+        || !dir.startsWith(o.localeOutputDir.resolve(taxonomy))) {
+      throw new ConfigurationException(o.resource.getPath(), "the " + taxonomy + " value '" + value
+          + "' cannot be used as a directory name for his feed");
+    }
+    return dir;
+  }
+
+  private void writeFeed(Path file, Feed feed, List<Output> pages, String baseUrl, Set<Path> outputPaths) throws IOException {
+    String feedUrl = escape(url(baseUrl, file));
+    Path index = feed.dir.resolve("index.html");
+    try (Writer w = newWriter(file, outputPaths)) {
+      w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      w.write("<feed xmlns=\"http://www.w3.org/2005/Atom\" xml:lang=\"" + escape(feed.locale.toLanguageTag()) + "\">\n");
+      w.write("  <title>" + escape(feed.title) + "</title>\n");
+      w.write("  <id>" + feedUrl + "</id>\n");
+      w.write("  <link rel=\"self\" href=\"" + feedUrl + "\"/>\n");
+      // only if the directory has a page
+      if (outputPaths.contains(index)) {
+        w.write("  <link href=\"" + escape(url(baseUrl, index)) + "\"/>\n");
+      }
+      Optional<String> author = configuration.getFeedAuthor();
+      if (author.isPresent()) {
+        w.write("  <author><name>" + escape(author.get()) + "</name></author>\n");
+      }
+      w.write("  <updated>" + date(pages.get(0).resource) + "</updated>\n");
+      for (Output page : pages) {
+        Map<String, Object> metadata = page.resource.getMetadata().getRawMap();
+        Object title = metadata.getOrDefault("title", page.resource.getFileNameWithoutExtensions());
+        Object summary = metadata.containsKey("summary") ? metadata.get("summary") : metadata.get("description");
+        String pageUrl = escape(url(baseUrl, page.outputPath));
+        w.write("  <entry>\n");
+        w.write("    <title>" + escape(String.valueOf(title)) + "</title>\n");
+        w.write("    <id>" + pageUrl + "</id>\n");
+        w.write("    <link href=\"" + pageUrl + "\"/>\n");
+        w.write("    <updated>" + date(page.resource) + "</updated>\n");
+        if (summary != null) {
+          w.write("    <summary>" + escape(summary.toString()) + "</summary>\n");
+        }
+        w.write("  </entry>\n");
+      }
+      w.write("</feed>\n");
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Collection<Object> values(FileResource file, String taxonomy) {
+    Object val = file.getMetadata().getRawMap().get(taxonomy);
+    if (val == null) {
+      return Collections.emptyList();
+    } else if (val instanceof Collection) {
+      return (Collection<Object>) val;
+    } else {
+      return Collections.singleton(val);
+    }
+  }
+
+  // the generated files must not replace an output of the build
+  private static Writer newWriter(Path file, Set<Path> outputPaths) throws IOException {
+    if (outputPaths.contains(file)) {
+      throw new FileAlreadyExistsException(file.toString());
+    }
+    createDirectories(file.getParent());
+    return newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+  }
+
+  // absolute url, the index.html files are referenced by their directory
+  private String url(String baseUrl, Path file) {
+    List<String> names = new ArrayList<>();
+    configuration.getBaseOutputDir().normalize().relativize(file).forEach(p -> names.add(p.toString()));
+    if (!names.isEmpty() && "index.html".equals(names.get(names.size() - 1))) {
+      names.set(names.size() - 1, "");
+    }
+    try {
+      return baseUrl + new URI(null, null, "/" + String.join("/", names), null).toASCIIString();
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private String date(FileResource resource) {
+    return dates.computeIfAbsent(resource.getPath(),
+        p -> Instant.ofEpochMilli(resource.getCreationTime()).truncatedTo(ChronoUnit.SECONDS).toString());
+  }
+
+  private static String escape(String s) {
+    StringBuilder sb = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '&': sb.append("&amp;"); break;
+        case '<': sb.append("&lt;"); break;
+        case '>': sb.append("&gt;"); break;
+        case '"': sb.append("&quot;"); break;
+        case '\'': sb.append("&apos;"); break;
+        default: sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static class Output {
+    private final FileResource resource;
+    private final Locale locale;
+    private final Path localeOutputDir;
+    private final Path outputPath;
+    private List<Output> alternates;
+
+    Output(FileResource resource, Locale locale, Path localeOutputDir, Path outputPath) {
+      this.resource = resource;
+      this.locale = locale;
+      this.localeOutputDir = localeOutputDir;
+      this.outputPath = outputPath;
+    }
+  }
+
+  private static class Feed {
+    private final String title;
+    private final Path dir;
+    private final Locale locale;
+    private final List<Output> pages = new ArrayList<>();
+
+    Feed(String title, Path dir, Locale locale) {
+      this.title = title;
+      this.dir = dir;
+      this.locale = locale;
+    }
+  }
+}
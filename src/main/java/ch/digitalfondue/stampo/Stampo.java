@@ -22,30 +22,41 @@ import static java.nio.file.Files.isDirectory;
 import static java.nio.file.Files.newInputStream;
 import static java.nio.file.Files.walkFileTree;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 import static java.util.Optional.ofNullable;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 
 import ch.digitalfondue.stampo.exception.YamlParserException;
+import ch.digitalfondue.stampo.processor.PlannedOutput;
 import ch.digitalfondue.stampo.processor.ResourceProcessor;
 import ch.digitalfondue.stampo.renderer.Renderer;
 import ch.digitalfondue.stampo.renderer.freemarker.FreemarkerRenderer;
@@ -59,6 +70,7 @@ import ch.digitalfondue.stampo.resource.LocaleAwareDirectory;
 import ch.digitalfondue.stampo.resource.PathOverrideAwareDirectory;
 import ch.digitalfondue.stampo.resource.PathOverrideAwareDirectory.Mode;
 import ch.digitalfondue.stampo.resource.ResourceFactory;
+import ch.digitalfondue.stampo.resource.ResourceFactory.FileResourceSupplier;
 import ch.digitalfondue.stampo.resource.RootResource;
 import ch.digitalfondue.stampo.taxonomy.Taxonomy;
 
@@ -67,11 +79,22 @@ import ch.digitalfondue.stampo.taxonomy.Taxonomy;
  */
 public class Stampo {
 
+  private static final ProcessedInputHandler DEFAULT_OUTPUT_HANDLER = (processedFile, processedLayout) -> processedLayout.getContent();
+
   private final StampoGlobalConfiguration configuration;
 
   
-  @SuppressWarnings("unchecked")
   public Stampo(Path baseInputDir, Path outputDir, List<Renderer> renderers, Map<String, Object> configurationOverride) {
+    this(baseInputDir, outputDir, renderers, configurationOverride, null);
+  }
+
+  /**
+   * @param previous a previous build of the same site, his caches (e.g. the parsed data files) are
+   *        reused. Can be null.
+   */
+  @SuppressWarnings("unchecked")
+  public Stampo(Path baseInputDir, Path outputDir, List<Renderer> renderers, Map<String, Object> configurationOverride, Stampo previous) {
+    StampoGlobalConfiguration previousConfiguration = previous == null ? null : previous.configuration;
     Path configFile = baseInputDir.resolve("configuration.yaml");
     
     Map<String, Object> finalConf = new HashMap<>();
@@ -84,7 +107,7 @@ public class Stampo {
         finalConf.putAll(c);
         finalConf.putAll(configurationOverride);
         
-        this.configuration = new StampoGlobalConfiguration(finalConf, baseInputDir, outputDir, renderers);
+        this.configuration = new StampoGlobalConfiguration(finalConf, baseInputDir, outputDir, renderers, previousConfiguration);
       } catch (IOException ioe) {
         throw new IllegalArgumentException(ioe);
       } catch (YAMLException pe) {
@@ -92,13 +115,17 @@ public class Stampo {
       }
     } else {
       finalConf.putAll(configurationOverride);
-      this.configuration = new StampoGlobalConfiguration(finalConf, baseInputDir, outputDir, renderers);
+      this.configuration = new StampoGlobalConfiguration(finalConf, baseInputDir, outputDir, renderers, previousConfiguration);
     }
   }
 
   
   public Stampo(Path baseInputDir, Path outputDir, Map<String, Object> configurationOverride) {
-    this(baseInputDir, outputDir, Arrays.asList(new PebbleRenderer(), new MarkdownRenderer(), new FreemarkerRenderer()), configurationOverride);
+    this(baseInputDir, outputDir, configurationOverride, null);
+  }
+
+  public Stampo(Path baseInputDir, Path outputDir, Map<String, Object> configurationOverride, Stampo previous) {
+    this(baseInputDir, outputDir, Arrays.asList(new PebbleRenderer(), new MarkdownRenderer(), new FreemarkerRenderer()), configurationOverride, previous);
   }
 
   public StampoGlobalConfiguration getConfiguration() {
@@ -106,34 +133,269 @@ public class Stampo {
   }
 
   public void build() {
-    build((processedFile, processedLayout) -> processedLayout.getContent(), (in, out) -> {
-      try {
-        Files.copy(in, out);
-      } catch (IOException ioe) {
-        throw new IllegalStateException(ioe);
-      }
-    });
+    build(DEFAULT_OUTPUT_HANDLER, Stampo::copyStaticFile);
   }
 
   public void build(ProcessedInputHandler outputHandler, BiConsumer<Path, Path> staticDirectoryAction) {
     
     cleanupBuildDirectory();
 
+    SitemapAndFeedWriter sitemapAndFeeds = new SitemapAndFeedWriter(configuration);
+    SearchIndexWriter searchIndex = new SearchIndexWriter(configuration);
+    GzipSidecars gzip = new GzipSidecars(configuration);
+    CompletableFuture<Void> images = configuration.getImageDirectory().generate(configuration.getBaseOutputDir(), configuration.getAssetFingerprints()::fingerprinted);
     if (exists(configuration.getContentDir())) {
-      buildContentDirectory(outputHandler);
+      buildContentDirectory(outputHandler, PlannedOutput::write, sitemapAndFeeds, searchIndex, gzip);
     }
 
     copyStaticDirectory(staticDirectoryAction);
+
+    sitemapAndFeeds.write();
+    searchIndex.write();
+    images.join();
+    gzip.write();
+  }
+
+  /**
+   * Like {@link #build()}, but the content is not rendered: the static directory is copied, the
+   * image variants, the sitemaps and the feeds are written and the returned plan will render each output file when
+   * requested. The search index and the gzip sidecars of the files not yet rendered are written when
+   * {@link OutputPlan#renderAll()} completes.
+   */
+  public OutputPlan plan() {
+    return plan(false);
+  }
+
+  /**
+   * Like {@link #plan()}, but the files copied from the static directory by the previous build are
+   * kept when the changes cannot affect them: the watcher did not lose any event, nothing changed in
+   * the static directory or in the configuration file and the static files have no derived outputs
+   * (gzip sidecars, fingerprinted copies or image variants).
+   *
+   * @param staticDirectoryCopied true if the previous build in the same output directory copied
+   *        the whole static directory.
+   */
+  public OutputPlan plan(ChangeSet changes, boolean staticDirectoryCopied) {
+    return plan(staticDirectoryCopied && isStaticDirectoryUnaffected(changes));
+  }
+
+  private boolean isStaticDirectoryUnaffected(ChangeSet changes) {
+    if (changes.isFullRescan() || configuration.generateGzip() || configuration.fingerprintAssets()
+        || configuration.getImageDirectory().isEnabled()) {
+      return false;
+    }
+    Path configFile = configuration.getBaseDirectory().resolve("configuration.yaml").normalize();
+    return changes.getPaths().stream().map(Path::normalize)
+        .noneMatch(p -> p.startsWith(configuration.getStaticDir()) || p.equals(configFile));
+  }
+
+  private OutputPlan plan(boolean keepStaticFiles) {
+
+    if (keepStaticFiles) {
+      cleanupBuildDirectoryExceptStaticFiles();
+    } else {
+      cleanupBuildDirectory();
+    }
+
+    Map<Path, PlannedOutput> outputs = new LinkedHashMap<>();
+    SitemapAndFeedWriter sitemapAndFeeds = new SitemapAndFeedWriter(configuration);
+    SearchIndexWriter searchIndex = new SearchIndexWriter(configuration);
+    GzipSidecars gzip = new GzipSidecars(configuration);
+    CompletableFuture<Void> images = configuration.getImageDirectory().generate(configuration.getBaseOutputDir(), configuration.getAssetFingerprints()::fingerprinted);
+    if (exists(configuration.getContentDir())) {
+      buildContentDirectory(DEFAULT_OUTPUT_HANDLER, plannedOutput -> {
+        if (outputs.put(plannedOutput.getOutputPath().normalize(), plannedOutput) != null) {
+          throw new IllegalStateException(new FileAlreadyExistsException(plannedOutput.getOutputPath().toString()));
+        }
+      }, sitemapAndFeeds, searchIndex, gzip);
+    }
+
+    if (!keepStaticFiles) {
+      copyStaticDirectory(Stampo::copyStaticFile);
+    }
+
+    sitemapAndFeeds.write();
+    images.join();
+
+    return new OutputPlan(configuration.getBaseOutputDir(), outputs, () -> {
+      searchIndex.write();
+      gzip.write();
+    });
+  }
+
+  /**
+   * Validate the site without rendering it, in parallel: the data files and the front matter of the
+   * content files are parsed, the templates and the layouts are compiled and the output paths of
+   * each content file are generated (thus validating the metadata of the directives, like
+   * "paginate-over-directory" or "include-all"). Nothing is written in the output directory.
+   *
+   * The templates of the content files and the directives are checked only if all the front matters
+   * are valid.
+   */
+  public CheckReport check() {
+    return check(false);
+  }
+
+  /**
+   * Like {@link #check()}, if there are no problems and checkLinks is true, the site is then built
+   * (in the output directory) for checking the links, see {@link #checkLinks()}.
+   */
+  public CheckReport check(boolean checkLinks) {
+    CheckReport report = new CheckReport();
+
+    long start = System.currentTimeMillis();
+    int dataFiles = 0;
+    try {
+      DataDirectory data = configuration.getDataDirectory();
+      dataFiles = data.size();
+      data.check().forEach((path, error) -> report.addProblem("data", path, error));
+    } catch (RuntimeException e) {
+      report.addProblem("data", configuration.getDataDir(), e);
+    }
+    report.addPhase("data", dataFiles, System.currentTimeMillis() - start);
+
+    start = System.currentTimeMillis();
+    List<Path> contentFiles = listFiles(configuration.getContentDir());
+    Map<Path, FileResource> parsed = new ConcurrentHashMap<>();
+    contentFiles.parallelStream().forEach(path -> {
+      try {
+        parsed.put(path, new FileResourceWithMetadataSection(configuration, path, null));
+      } catch (RuntimeException e) {
+        report.addProblem("front-matter", path, e instanceof YAMLException ? new YamlParserException(path, e) : e);
+      }
+    });
+    report.addPhase("front-matter", contentFiles.size(), System.currentTimeMillis() - start);
+
+    boolean validFrontMatters = parsed.size() == contentFiles.size();
+    
+    // the front matter has already been parsed
+    FileResourceSupplier parsedFileResource = (conf, path, parent, attributes) -> parsed.containsKey(path) ? //
+        new FileResourceWithMetadataSection(parsed.get(path), parent) : new FileResourceWithMetadataSection(conf, path, parent, attributes);
+
+    start = System.currentTimeMillis();
+    Map<String, Consumer<Path>> validators = new HashMap<>();
+    Directory root = new RootResource(new ResourceFactory(DirectoryResource::new, parsedFileResource, Comparator.comparing(FileResource::getPath), configuration), configuration.getContentDir(), configuration);
+    configuration.getRenderers().forEach(renderer -> renderer.registerTemplateValidator(root, configuration, validators));
+    List<Path> templates = new ArrayList<>(listFiles(configuration.getLayoutDir()));
+    if (validFrontMatters) {
+      templates.addAll(contentFiles);
+    }
+    templates.removeIf(path -> !validators.containsKey(lastExtension(path)));
+    templates.parallelStream().forEach(path -> {
+      try {
+        validators.get(lastExtension(path)).accept(path);
+      } catch (RuntimeException e) {
+        report.addProblem("templates", path, e);
+      }
+    });
+    report.addPhase("templates", templates.size(), System.currentTimeMillis() - start);
+
+    if (validFrontMatters && exists(configuration.getContentDir())) {
+      start = System.currentTimeMillis();
+      List<Runnable> plans = new ArrayList<>();
+      Map<Path, Path> outputs = new ConcurrentHashMap<>();
+      forEachRoot(parsedFileResource, (dir, processor, locale) -> collectPlans(dir, processor, locale, plans, outputs, report));
+      plans.parallelStream().forEach(Runnable::run);
+      report.addPhase("directives", plans.size(), System.currentTimeMillis() - start);
+    }
+
+    if (checkLinks && report.isOk()) {
+      start = System.currentTimeMillis();
+      build();
+      report.addPhase("build", contentFiles.size(), System.currentTimeMillis() - start);
+      new LinkChecker(configuration.getBaseOutputDir()).check(report);
+    }
+
+    return report;
   }
 
+  /**
+   * Check the internal links and anchors of the html files of the output directory, the site must
+   * have been already built.
+   */
+  public CheckReport checkLinks() {
+    CheckReport report = new CheckReport();
+    if (exists(configuration.getBaseOutputDir())) {
+      new LinkChecker(configuration.getBaseOutputDir()).check(report);
+    }
+    return report;
+  }
+
+  private static void collectPlans(Directory dir, ResourceProcessor processor, Locale locale, List<Runnable> plans, Map<Path, Path> outputs, CheckReport report) {
+    dir.getFiles().values().forEach(f -> plans.add(() -> {
+      try {
+        processor.plan(f, locale, DEFAULT_OUTPUT_HANDLER).forEach(plannedOutput -> {
+          Path previous = outputs.putIfAbsent(plannedOutput.getOutputPath().normalize(), f.getPath());
+          if (previous != null && !previous.equals(f.getPath())) {
+            report.addProblem("directives", f.getPath(), new FileAlreadyExistsException(plannedOutput.getOutputPath().toString(), previous.toString(), "already generated by"));
+          }
+        });
+      } catch (RuntimeException e) {
+        report.addProblem("directives", f.getPath(), e);
+      }
+    }));
+    dir.getDirectories().values().forEach(d -> collectPlans(d, processor, locale, plans, outputs, report));
+  }
 
-  private void buildContentDirectory(ProcessedInputHandler outputHandler) {
+  // the regular files that are not ignored, as done by RootResource
+  private List<Path> listFiles(Path dir) {
+    if (!exists(dir)) {
+      return new ArrayList<>();
+    }
+    try (Stream<Path> files = Files.walk(dir)) {
+      return files.filter(p -> Files.isRegularFile(p) && configuration.getIgnorePatterns().stream().noneMatch(m -> p.getFileSystem().getPathMatcher(m).matches(p.getFileName())))
+          .collect(Collectors.toList());
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  private static String lastExtension(Path path) {
+    String name = path.getFileName().toString();
+    return name.substring(name.lastIndexOf('.') + 1);
+  }
+
+  // with the last modified time, used by the ETag of the big files when serving
+  private static void copyStaticFile(Path in, Path out) {
+    try {
+      Files.copy(in, out);
+      Files.setLastModifiedTime(out, Files.getLastModifiedTime(in));
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+
+  private void buildContentDirectory(ProcessedInputHandler outputHandler, Consumer<PlannedOutput> output,
+      SitemapAndFeedWriter sitemapAndFeeds, SearchIndexWriter searchIndex, GzipSidecars gzip) {
+    forEachRoot(FileResourceWithMetadataSection::new, (root, processor, locale) -> render(root, processor, locale, outputHandler, (f, plannedOutput) -> {
+      Path outputPath = plannedOutput.getOutputPath();
+      sitemapAndFeeds.add(f, locale, processor.getOutputDir(), outputPath);
+      Consumer<String> contentListener = content -> {};
+      if (searchIndex.isEnabled() && PathUtils.isHtml(outputPath)) {
+        contentListener = contentListener.andThen(content -> searchIndex.add(processor.getOutputDir(), outputPath, content));
+      }
+      if (gzip.isEnabled() && GzipSidecars.isCompressible(outputPath)) {
+        contentListener = contentListener.andThen(content -> gzip.add(outputPath, content));
+      }
+      plannedOutput.setContentListener(contentListener);
+      output.accept(plannedOutput);
+    }));
+  }
+
+  @FunctionalInterface
+  private interface RootVisitor {
+    void visit(Directory root, ResourceProcessor processor, Locale locale);
+  }
+
+  private void forEachRoot(FileResourceSupplier fileResourceSupplier, RootVisitor visitor) {
     
     List<Locale> locales = configuration.getLocales();
     
-    Comparator<FileResource> newFileFirst = Comparator.comparingLong(FileResource::getCreationTime).reversed();
+    // the creation time is extracted only once for each file when sorting
+    Comparator<FileResource> newFileFirst = KeyedComparator.comparing(FileResource::getCreationTime, Comparator.<Long>reverseOrder());
     
-    ResourceFactory resourceFactory = new ResourceFactory(DirectoryResource::new, FileResourceWithMetadataSection::new, newFileFirst, configuration);
+    ResourceFactory resourceFactory = new ResourceFactory(DirectoryResource::new, fileResourceSupplier, newFileFirst, configuration);
     
     Directory root = new RootResource(resourceFactory, configuration.getContentDir(), configuration);
     Directory rootWithOverrideHidden = new PathOverrideAwareDirectory(Mode.HIDE, root, FileResourceWithMetadataSection::new);
@@ -148,42 +410,38 @@ public class Stampo {
         
         Directory localeAwareRoot = new LocaleAwareDirectory(locale, rootWithOverrideHidden, FileResourceWithMetadataSection::new);
         
-        Taxonomy taxonomy = new Taxonomy(configuration.getTaxonomyGroups(), newFileFirst);    
-        taxonomy.add(localeAwareRoot);
+        Taxonomy taxonomy = new Taxonomy(configuration.getTaxonomyGroups(), newFileFirst, singletonList(localeAwareRoot));
         
 
         Path finalOutputDir = defaultLocale.flatMap(l -> l.equals(locale) ? of(configuration.getBaseOutputDir()) : empty())//
                 .orElse(configuration.getBaseOutputDir().resolve(locale.toLanguageTag()));
 
 
-        render(localeAwareRoot, new ResourceProcessor(finalOutputDir, localeAwareRoot,
-            configuration, taxonomy), locale, outputHandler);
+        visitor.visit(localeAwareRoot, new ResourceProcessor(finalOutputDir, localeAwareRoot,
+            configuration, taxonomy), locale);
       }
       
-      Taxonomy taxonomy = new Taxonomy(configuration.getTaxonomyGroups(), newFileFirst);    
-      taxonomy.add(rootWithOnlyOverride);
+      Taxonomy taxonomy = new Taxonomy(configuration.getTaxonomyGroups(), newFileFirst, singletonList(rootWithOnlyOverride));
 
-      render(rootWithOnlyOverride, new ResourceProcessor(configuration.getBaseOutputDir(),
-          rootWithOnlyOverride, configuration, taxonomy), defaultLocale.orElse(Locale.ENGLISH), outputHandler);
+      visitor.visit(rootWithOnlyOverride, new ResourceProcessor(configuration.getBaseOutputDir(),
+          rootWithOnlyOverride, configuration, taxonomy), defaultLocale.orElse(Locale.ENGLISH));
     } else {
       
-      Taxonomy taxonomy = new Taxonomy(configuration.getTaxonomyGroups(), newFileFirst);
-      taxonomy.add(rootWithOnlyOverride);    
-      taxonomy.add(rootWithOverrideHidden);
+      Taxonomy taxonomy = new Taxonomy(configuration.getTaxonomyGroups(), newFileFirst, Arrays.asList(rootWithOnlyOverride, rootWithOverrideHidden));
       
-      render(rootWithOverrideHidden, new ResourceProcessor(configuration.getBaseOutputDir(),
-          rootWithOverrideHidden, configuration, taxonomy), locales.get(0), outputHandler);
+      visitor.visit(rootWithOverrideHidden, new ResourceProcessor(configuration.getBaseOutputDir(),
+          rootWithOverrideHidden, configuration, taxonomy), locales.get(0));
 
-      render(rootWithOnlyOverride, new ResourceProcessor(configuration.getBaseOutputDir(),
-          rootWithOnlyOverride, configuration, taxonomy), locales.get(0), outputHandler);
+      visitor.visit(rootWithOnlyOverride, new ResourceProcessor(configuration.getBaseOutputDir(),
+          rootWithOnlyOverride, configuration, taxonomy), locales.get(0));
     }
   }
 
   private void render(Directory root, ResourceProcessor renderer, Locale locale,
-      ProcessedInputHandler outputHandler) {
-    root.getFiles().values().forEach(f -> renderer.process(f, locale, outputHandler));
+      ProcessedInputHandler outputHandler, BiConsumer<FileResource, PlannedOutput> output) {
+    root.getFiles().values().forEach(f -> renderer.plan(f, locale, outputHandler).forEach(plannedOutput -> output.accept(f, plannedOutput)));
     root.getDirectories().values().forEach(d -> {
-      render(d, renderer, locale, outputHandler);
+      render(d, renderer, locale, outputHandler, output);
     });
   }
 
@@ -197,9 +455,48 @@ public class Stampo {
         walkFileTree(configuration.getStaticDir(), new SimpleFileVisitor<Path>() {
           @Override
           public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-            Path outputPath = baseOutputDir.resolve(staticDir.relativize(file).toString());
+            String relativePath = PathUtils.relativePath(file, staticDir);
+            Path outputPath = baseOutputDir.resolve(relativePath);
             createDirectories(outputPath.getParent());
             staticDirectoryAction.accept(file, outputPath);
+            // the original is kept, for the urls in the css files and the non fingerprinted links
+            Optional<String> fingerprinted = configuration.getAssetFingerprints().fingerprinted(relativePath);
+            if (fingerprinted.isPresent()) {
+              staticDirectoryAction.accept(file, baseOutputDir.resolve(fingerprinted.get()));
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    configuration.getAssetFingerprints().writeManifest(baseOutputDir);
+  }
+
+  // the files that have the same path in the static directory are kept, with their directories
+  private void cleanupBuildDirectoryExceptStaticFiles() {
+    Path baseOutputDir = configuration.getBaseOutputDir();
+    Path staticDir = configuration.getStaticDir();
+    if (exists(baseOutputDir) && isDirectory(baseOutputDir)) {
+      try {
+        walkFileTree(baseOutputDir, new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            if (!Files.isRegularFile(staticDir.resolve(baseOutputDir.relativize(file).toString()))) {
+              delete(file);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+              if (!ds.iterator().hasNext()) {
+                delete(dir);
+              }
+            }
             return FileVisitResult.CONTINUE;
           }
         });
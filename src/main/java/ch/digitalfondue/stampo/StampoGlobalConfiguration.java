@@ -15,9 +15,8 @@
  */
 package ch.digitalfondue.stampo;
 
-import static java.nio.file.Files.newInputStream;
 import static java.util.Arrays.asList;
-import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
@@ -28,9 +27,7 @@ import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.net.URI;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.HashMap;
@@ -39,17 +36,13 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.ResourceBundle.Control;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.yaml.snakeyaml.Yaml;
-
-import ch.digitalfondue.stampo.i18n.ResourceBundleControl;
+import ch.digitalfondue.stampo.i18n.MessageSource;
 import ch.digitalfondue.stampo.renderer.Renderer;
+import ch.digitalfondue.stampo.resource.StructuredFileExtension;
 
 public class StampoGlobalConfiguration {
   
@@ -58,6 +51,19 @@ public class StampoGlobalConfiguration {
   public static final String CONF_USE_UGLY_URL = "use-ugly-url";
   public static final String CONF_TAXONOMIES = "taxonomies";
   public static final String CONF_HIDE_DRAFT = "hide-draft";
+  public static final String CONF_DATA_PREFETCH = "data-prefetch";
+  public static final String CONF_BASE_URL = "base-url";
+  public static final String CONF_SITEMAP = "sitemap";
+  public static final String CONF_FEEDS = "feeds";
+  public static final String CONF_FEED_SIZE = "feed-size";
+  public static final String CONF_FEED_AUTHOR = "feed-author";
+  public static final String CONF_SEARCH_INDEX = "search-index";
+  public static final String CONF_IMAGE_MATCH = "image-match";
+  public static final String CONF_IMAGE_WIDTHS = "image-widths";
+  public static final String CONF_IMAGE_THUMBNAIL = "image-thumbnail";
+  public static final String CONF_FINGERPRINT_ASSETS = "fingerprint-assets";
+  public static final String CONF_FINGERPRINT_MATCH = "fingerprint-match";
+  public static final String CONF_GZIP = "gzip";
 
   private final Map<String, Object> configuration;
   private final List<Locale> locales;
@@ -74,8 +80,15 @@ public class StampoGlobalConfiguration {
   private final Path staticDir;
   private final Path localesDir;
   private final Path dataDir;
-
-  private final Map<String, Object> data;
+  private final MessageSource messageSource;
+  private final UrlResolver urlResolver = new UrlResolver();
+  // extensions of a file name -> classification
+  private final Map<String, StructuredFileExtension> structuredFileExtensions = new ConcurrentHashMap<>();
+
+  private final DataDirectory.Cache dataCache;
+  private final DataDirectory data;
+  private final ImageDirectory images;
+  private final AssetFingerprints assetFingerprints;
   
   //
   private final Set<String> processorResourceExtensions;
@@ -85,6 +98,15 @@ public class StampoGlobalConfiguration {
 
   public StampoGlobalConfiguration(Map<String, Object> configuration, Path baseDirectory,
       Path baseOutputDir, List<Renderer> renderers) {
+    this(configuration, baseDirectory, baseOutputDir, renderers, null);
+  }
+
+  /**
+   * @param previous the configuration of a previous build of the same site, his caches are reused.
+   *        Can be null.
+   */
+  public StampoGlobalConfiguration(Map<String, Object> configuration, Path baseDirectory,
+      Path baseOutputDir, List<Renderer> renderers, StampoGlobalConfiguration previous) {
     this.configuration = configuration;
     this.renderers = renderers;
     this.locales = extractLocales(configuration);
@@ -101,8 +123,14 @@ public class StampoGlobalConfiguration {
     this.staticDir = baseDirectory.resolve("static").normalize();
     this.localesDir = baseDirectory.resolve("locales").normalize();
     this.dataDir = baseDirectory.resolve("data").normalize();
+    this.messageSource = new MessageSource(localesDir);
     
-    this.data = extractData();
+    this.dataCache = previous == null ? new DataDirectory.Cache() : previous.dataCache;
+    this.data = new DataDirectory(dataDir, dataCache, ofNullable(configuration.get(CONF_DATA_PREFETCH)).map(Boolean.class::cast).orElse(false));
+    this.images = new ImageDirectory(staticDir, baseDirectory.resolve(".stampo-cache").resolve("images").normalize(),
+        getImageMatchPatterns(), getImageWidths(), getImageThumbnailSize());
+    this.assetFingerprints = new AssetFingerprints(staticDir, baseDirectory.resolve(".stampo-cache").resolve("fingerprints").normalize(),
+        getFingerprintMatchPatterns(), fingerprintAssets(), images);
     
     
     Set<String> resProcExt = new HashSet<>();
@@ -159,48 +187,6 @@ public class StampoGlobalConfiguration {
     }).orElse(emptySet());
   }
   
-  
-  private static class KeyValue {
-    private final String key;
-    private final Object value;
-    
-    KeyValue(String key, Object value) {
-      this.key = key;
-      this.value = value;
-    }
-
-    public String getKey() {
-      return key;
-    }
-
-    public Object getValue() {
-      return value;
-    }
-  }
-  
-  private Map<String, Object> extractData() {
-    Path dataDir = getDataDir();
-    if(Files.exists(dataDir)) {
-      try {
-        return Files.walk(dataDir).filter(p -> {
-          String fileName = p.getFileName().toString();
-          return Files.isRegularFile(p) && (fileName.endsWith(".yaml") || fileName.endsWith(".yml"));
-        }).map(p -> {
-          String keyName = PathUtils.relativePathTo(p, dataDir).replace('/', '.').replaceFirst("\\.ya{0,1}ml$", "");
-          try (InputStream is = newInputStream(p)) {
-            List<Object> o = StreamSupport.stream(new Yaml().loadAll(is).spliterator(), false).filter(Objects::nonNull).collect(toList());
-            return new KeyValue(keyName, o.size() == 0 ? null : o.size() == 1 ? o.get(0) : o);
-          } catch (IOException e) {
-            throw new IllegalStateException(e);
-          }
-        }).collect(Collectors.toMap(KeyValue::getKey, KeyValue::getValue));
-      } catch (IOException ioe) {
-        throw new IllegalStateException(ioe);
-      }
-    }
-    return emptyMap();
-  }
-  
   public Set<String> getTaxonomyGroups() {
     return taxonomies;
   }
@@ -210,8 +196,8 @@ public class StampoGlobalConfiguration {
         Locale::forLanguageTag);
   }
 
-  public Control getResourceBundleControl() {
-    return new ResourceBundleControl(localesDir);
+  public MessageSource getMessageSource() {
+    return messageSource;
   }
 
   public Map<String, Object> getConfiguration() {
@@ -234,6 +220,87 @@ public class StampoGlobalConfiguration {
     return ofNullable(configuration.get(CONF_HIDE_DRAFT)).map(Boolean.class::cast).orElse(false);
   }
 
+  /**
+   * The absolute url of the site, used by the sitemaps and the feeds.
+   */
+  public Optional<String> getBaseUrl() {
+    return ofNullable(configuration.get(CONF_BASE_URL)).map(Object::toString);
+  }
+
+  public boolean generateSitemap() {
+    return ofNullable(configuration.get(CONF_SITEMAP)).map(Boolean.class::cast).orElse(false);
+  }
+
+  /**
+   * @return the content directories (e.g. "post") and the taxonomies (e.g. "tags") that have a feed.
+   */
+  public List<String> getFeeds() {
+    return toStringList(CONF_FEEDS, emptyList());
+  }
+
+  public int getFeedSize() {
+    return ofNullable(configuration.get(CONF_FEED_SIZE)).map(Integer.class::cast).orElse(20);
+  }
+
+  /**
+   * The author of the feeds, by default the host of the base url.
+   */
+  public Optional<String> getFeedAuthor() {
+    Optional<String> author = ofNullable(configuration.get(CONF_FEED_AUTHOR)).map(Object::toString);
+    return author.isPresent() ? author : getBaseUrl().map(u -> URI.create(u).getHost());
+  }
+
+  public boolean generateSearchIndex() {
+    return ofNullable(configuration.get(CONF_SEARCH_INDEX)).map(Boolean.class::cast).orElse(false);
+  }
+
+  /**
+   * @return the patterns, relative to the static directory, of the images that have variants.
+   */
+  public List<String> getImageMatchPatterns() {
+    return toStringList(CONF_IMAGE_MATCH, singletonList("glob:**.{jpg,jpeg,png}"));
+  }
+
+  @SuppressWarnings("unchecked")
+  public List<Integer> getImageWidths() {
+    return ofNullable(configuration.get(CONF_IMAGE_WIDTHS)).map(w -> (List<Integer>) w).orElse(emptyList());
+  }
+
+  public Optional<Integer> getImageThumbnailSize() {
+    return ofNullable(configuration.get(CONF_IMAGE_THUMBNAIL)).map(Integer.class::cast);
+  }
+
+  public boolean generateGzip() {
+    return ofNullable(configuration.get(CONF_GZIP)).map(Boolean.class::cast).orElse(false);
+  }
+
+  public boolean fingerprintAssets() {
+    return ofNullable(configuration.get(CONF_FINGERPRINT_ASSETS)).map(Boolean.class::cast).orElse(false);
+  }
+
+  /**
+   * @return the patterns, relative to the static directory, of the files copied with a fingerprinted
+   *         name.
+   */
+  public List<String> getFingerprintMatchPatterns() {
+    return toStringList(CONF_FINGERPRINT_MATCH, singletonList("glob:**.{css,js,png,jpg,jpeg,gif,svg,webp,ico,woff,woff2,ttf,eot}"));
+  }
+
+  // a single value or a list
+  @SuppressWarnings("unchecked")
+  private List<String> toStringList(String key, List<String> defaultValue) {
+    Object value = configuration.get(key);
+    if (value == null) {
+      return defaultValue;
+    } else if (value instanceof String) {
+      return singletonList(value.toString());
+    } else if (value instanceof List) {
+      return ((List<Object>) value).stream().map(Object::toString).collect(toList());
+    } else {
+      throw new IllegalArgumentException("wrong type for " + key + ": " + value);
+    }
+  }
+
   public Path getBaseDirectory() {
     return baseDirectory;
   }
@@ -267,6 +334,17 @@ public class StampoGlobalConfiguration {
     return renderers;
   }
 
+  /**
+   * @param extensions the extensions of a file name, e.g. ".en.html.peb" for "index.en.html.peb".
+   */
+  public StructuredFileExtension getStructuredFileExtension(String extensions) {
+    return structuredFileExtensions.computeIfAbsent(extensions, ext -> StructuredFileExtension.classify(ext, this));
+  }
+
+  public UrlResolver getUrlResolver() {
+    return urlResolver;
+  }
+
   public Path getDataDir() {
     return dataDir;
   }
@@ -275,6 +353,39 @@ public class StampoGlobalConfiguration {
     return data;
   }
 
+  DataDirectory getDataDirectory() {
+    return data;
+  }
+
+  DataDirectory.Cache getDataCache() {
+    return dataCache;
+  }
+
+  /**
+   * @return path relative to the static directory -&gt; image and his variants.
+   */
+  public Map<String, ImageSet> getImages() {
+    return images;
+  }
+
+  ImageDirectory getImageDirectory() {
+    return images;
+  }
+
+  /**
+   * @param path relative to the static directory, e.g. "css/site.css".
+   * @return the path, relative to the output directory, of the fingerprinted copy when
+   *         "fingerprint-assets" is true and the file is matched by "fingerprint-match", else the
+   *         given path.
+   */
+  public String getAssetPath(String path) {
+    return assetFingerprints.assetPath(path);
+  }
+
+  AssetFingerprints getAssetFingerprints() {
+    return assetFingerprints;
+  }
+
   public Set<String> getLocalesAsString() {
     return localesAsString;
   }
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compute the relative urls between the paths of the output directory, without accessing the file
+ * system: the caller state if the base is a page (the url is relative to his directory) or a
+ * directory. The name elements of each base directory are cached.
+ *
+ * As the web server, an url to a index.html file point to his directory.
+ */
+public class UrlResolver {
+
+  private final Map<Path, Path[]> baseDirectories = new ConcurrentHashMap<>();
+
+  /**
+   * @param target the file or directory to link
+   * @param page the file containing the link
+   */
+  public String relativeUrl(Path target, Path page) {
+    return relativeUrlFromDirectory(target, baseDirectory(page));
+  }
+
+  /**
+   * @param target the file or directory to link
+   * @param baseDirectory the directory used as base for the url
+   */
+  public String relativeUrlFromDirectory(Path target, Path baseDirectory) {
+    Path dest = target.getFileName() != null && "index.html".equalsIgnoreCase(target.getFileName().toString()) ? target.getParent() : target;
+    dest = dest.normalize();
+
+    if (!Objects.equals(dest.getRoot(), baseDirectory.getRoot())) {
+      // let Path.relativize handle (and reject) the mixed paths
+      return baseDirectory.relativize(dest).toString();
+    }
+
+    Path[] base = baseDirectories.computeIfAbsent(baseDirectory, UrlResolver::names);
+    Path[] names = names(dest);
+
+    int common = 0;
+    while (common < base.length && common < names.length && base[common].equals(names[common])) {
+      common++;
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = common; i < base.length; i++) {
+      sb.append("../");
+    }
+    for (int i = common; i < names.length; i++) {
+      sb.append(names[i]).append('/');
+    }
+    if (sb.length() == 0) {
+      return ".";
+    }
+    sb.setLength(sb.length() - 1);
+    return sb.toString();
+  }
+
+  /**
+   * @return the directory used as base for the urls of the given page.
+   */
+  public Path baseDirectory(Path page) {
+    return Optional.ofNullable(page.getParent()).orElse(page);
+  }
+
+  private static Path[] names(Path path) {
+    Path normalized = path.normalize();
+    int count = normalized.getNameCount();
+    // the empty path has one empty name
+    if (count == 1 && normalized.getName(0).toString().isEmpty()) {
+      return new Path[0];
+    }
+    Path[] names = new Path[count];
+    for (int i = 0; i < count; i++) {
+      names[i] = normalized.getName(i);
+    }
+    return names;
+  }
+}
@@ -54,24 +54,27 @@ import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class WatchDir {
 
   private final WatchService watcher;
   private final Map<WatchKey, Path> keys;
   private final Set<Path> ignore;
-  private final Set<String> ignorePattern;
+  private final List<PathMatcher> ignorePatterns;
 
   /**
    * Creates a WatchService and registers the given directory
@@ -80,7 +83,8 @@ public class WatchDir {
     this.watcher = dir.getFileSystem().newWatchService();
     this.keys = new HashMap<>();
     this.ignore = ignore;
-    this.ignorePattern = ignorePattern;
+    this.ignorePatterns = ignorePattern.stream().map(dir.getFileSystem()::getPathMatcher)
+        .collect(Collectors.toList());
 
     registerAll(dir);
   }
@@ -117,11 +121,12 @@ public class WatchDir {
 
 
   /**
-   * Process a single key queued to the watcher
+   * Process a single key queued to the watcher: each change is added to the delay queue. An
+   * OVERFLOW event (some events have been lost) is added as it is, and require a full rescan.
    * 
    * @param delayQueue
    */
-  void processEvent(DelayQueue<Delayed> delayQueue) {
+  void processEvent(DelayQueue<WatchDirDelay> delayQueue) {
 
 
     // wait for key to be signaled
@@ -145,6 +150,12 @@ public class WatchDir {
       WatchEvent.Kind<?> kind = event.kind();
 
       if (kind == OVERFLOW) {
+        delayQueue.add(new WatchDirDelay(dir, OVERFLOW));
+        // the creation of some sub-directories may have been lost too
+        try {
+          registerAll(dir);
+        } catch (IOException x) {
+        }
         continue;
       }
 
@@ -155,16 +166,11 @@ public class WatchDir {
       Path child = dir.resolve(name);
 
       //
-      if (ignore.contains(child)) {
-        return;
-      }
-
-
-      if (!ignorePattern.stream().anyMatch(
-          m -> child.getFileSystem().getPathMatcher(m).matches(child.getFileName()))) {
-        delayQueue.add(new WatchDirDelay());
+      if (ignore.contains(child) || ignorePatterns.stream().anyMatch(m -> m.matches(name))) {
+        continue;
       }
 
+      delayQueue.add(new WatchDirDelay(child, kind));
 
       // if directory is created, and watching recursively, then
       // register it and its sub-directories
@@ -183,16 +189,26 @@ public class WatchDir {
     boolean valid = key.reset();
     if (!valid) {
       keys.remove(key);
-
-      // all directories are inaccessible
-      if (keys.isEmpty()) {
-        return;
-      }
     }
   }
 
-  private static class WatchDirDelay implements Delayed {
+  static class WatchDirDelay implements Delayed {
     private final long time = System.currentTimeMillis() + 500;
+    private final Path path;
+    private final WatchEvent.Kind<?> kind;
+
+    WatchDirDelay(Path path, WatchEvent.Kind<?> kind) {
+      this.path = path;
+      this.kind = kind;
+    }
+
+    Path getPath() {
+      return path;
+    }
+
+    WatchEvent.Kind<?> getKind() {
+      return kind;
+    }
 
     @Override
     public int compareTo(Delayed o) {
@@ -15,15 +15,45 @@
  */
 package ch.digitalfondue.stampo.command;
 
+import java.nio.file.Paths;
+
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import ch.digitalfondue.stampo.CheckReport;
+import ch.digitalfondue.stampo.Stampo;
 
 public class Build extends Command {
   
   public Build() {
     super();
+    checkLinksParam = optionParser.accepts("check-links").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
+  }
+  
+  private boolean checkLinks = false;
+  
+  //
+  private final OptionSpec<Boolean> checkLinksParam;
+  //
+  
+  @Override
+  public void assign(OptionSet optionSet) {
+    super.assign(optionSet);
+    checkLinks = optionSet.valueOf(checkLinksParam);
   }
 
   @Override
   void runWithPaths(String inputPath, String outputPath) {
     getBuildRunnable(inputPath, outputPath, getConfigurationOverride()).run();
+    if (checkLinks) {
+      CheckReport report = new Stampo(Paths.get(inputPath), Paths.get(outputPath), getConfigurationOverride()).checkLinks();
+      System.out.print(report.toText());
+      if (!report.isOk()) {
+        System.exit(1);
+      }
+    }
+  }
+  
+  public boolean isCheckLinks() {
+    return checkLinks;
   }
 }
\ No newline at end of file
@@ -21,9 +21,16 @@ import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import ch.digitalfondue.stampo.CheckReport;
+import ch.digitalfondue.stampo.ProcessedInputHandler;
 import ch.digitalfondue.stampo.Stampo;
+import ch.digitalfondue.stampo.processor.FileResourceProcessorOutput;
+import ch.digitalfondue.stampo.processor.LayoutProcessorOutput;
 
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
@@ -32,36 +39,87 @@ public class Check extends Command {
   
   public Check() {
     super();
+    fastParam = optionParser.accepts("fast").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
+    formatParam = optionParser.accepts("format").withRequiredArg().ofType(String.class).defaultsTo("text");
+    checkLinksParam = optionParser.accepts("check-links").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
+  }
+  
+  private boolean fast = false;
+  private String format = "text";
+  private boolean checkLinks = false;
+  
+  //
+  private final OptionSpec<Boolean> fastParam;
+  private final OptionSpec<String> formatParam;
+  private final OptionSpec<Boolean> checkLinksParam;
+  //
+  
+  @Override
+  public void assign(OptionSet optionSet) {
+    super.assign(optionSet);
+    fast = optionSet.valueOf(fastParam);
+    format = optionSet.valueOf(formatParam);
+    checkLinks = optionSet.valueOf(checkLinksParam);
   }
 
   @Override
   void runWithPaths(String inputPath, String outputhPath) {
     try (FileSystem fs = Jimfs.newFileSystem(Configuration.unix())) {
-      buildAndPrintResult(inputPath, fs);
+      if (fast) {
+        // the build needed for checking the links is done in memory
+        Path output = checkLinks ? fs.getPath("output") : Paths.get(outputhPath);
+        printReport(new Stampo(Paths.get(inputPath), output, getConfigurationOverride()).check(checkLinks));
+      } else {
+        Stampo stampo = new Stampo(Paths.get(inputPath), fs.getPath("output"), getConfigurationOverride());
+        buildAndPrintResult(stampo, checkLinks);
+        if (checkLinks) {
+          System.out.println();
+          printReport(stampo.checkLinks());
+        }
+      }
     } catch (IOException ioe) {
       throw new IllegalStateException(ioe);
     }
   }
+  
+  private void printReport(CheckReport report) {
+    System.out.print("json".equals(format) ? report.toJson() + System.lineSeparator() : report.toText());
+    if (!report.isOk()) {
+      System.exit(1);
+    }
+  }
 
-  private void buildAndPrintResult(String inputPath, FileSystem fs) {
-    Path output = fs.getPath("output");
-    Stampo stampo = new Stampo(Paths.get(inputPath), output, getConfigurationOverride());
+  /**
+   * Build the site in memory and print, for each generated file, how it has been generated. If
+   * writeContent is true, the real content is written, so the links can be checked on the same
+   * build, else each file contains only its description.
+   */
+  private void buildAndPrintResult(Stampo stampo, boolean writeContent) {
+    Path output = stampo.getConfiguration().getBaseOutputDir();
+    Map<Path, String> descriptions = new ConcurrentHashMap<>();
     
-    stampo.build((file, layout) -> {
-      return String.format(
-          "  from file: %s\n" + //
-              "  selected rendering engine: %s\n" + //
-              "  locale for resource: %s\n" + //
-              "  selected layout path: %s\n" + //
-              "  selected layout engine: %s\n" + //
-              "  locale for layout: %s\n\n",//
-          file.getPath(),
-          file.getProcessorEngine(),//
-          file.getLocale(), layout.getPath().map(Object::toString).orElse("no layout"),
-          layout.getLayoutEngine(), layout.getLocale());
+    stampo.build(new ProcessedInputHandler() {
+      
+      @Override
+      public String apply(FileResourceProcessorOutput file, LayoutProcessorOutput layout) {
+        return describe(file, layout);
+      }
+      
+      @Override
+      public String apply(Path outputPath, FileResourceProcessorOutput file, LayoutProcessorOutput layout) {
+        String description = describe(file, layout);
+        descriptions.put(outputPath, description);
+        return writeContent ? layout.getContent() : description;
+      }
     }, (in, out) -> {
+      String description = "  from static input " + in + "\n\n";
+      descriptions.put(out, description);
       try {
-        Files.write(out, Arrays.asList("  from static input " + in, ""), StandardCharsets.UTF_8);
+        if (writeContent) {
+          Files.copy(in, out);
+        } else {
+          Files.write(out, description.getBytes(StandardCharsets.UTF_8));
+        }
       } catch (IOException ioe) {
         throw new IllegalStateException(ioe);
       }
@@ -75,7 +133,11 @@ public class Check extends Command {
         if (!Files.isDirectory(p)) {
           System.out.println("- " + output.relativize(p));
           try {
-            Files.readAllLines(p, StandardCharsets.UTF_8).forEach(System.out::println);
+            if (descriptions.containsKey(p)) {
+              System.out.print(descriptions.get(p));
+            } else {
+              Files.readAllLines(p, StandardCharsets.UTF_8).forEach(System.out::println);
+            }
           } catch (Exception e) {
             throw new IllegalStateException(e);
           }
@@ -88,5 +150,30 @@ public class Check extends Command {
       throw new IllegalStateException(ioe);
     }
   }
+
+  private static String describe(FileResourceProcessorOutput file, LayoutProcessorOutput layout) {
+    return String.format(
+        "  from file: %s\n" + //
+            "  selected rendering engine: %s\n" + //
+            "  locale for resource: %s\n" + //
+            "  selected layout path: %s\n" + //
+            "  selected layout engine: %s\n" + //
+            "  locale for layout: %s\n\n",//
+        file.getPath(),
+        file.getProcessorEngine(),//
+        file.getLocale(), layout.getPath().map(Object::toString).orElse("no layout"),
+        layout.getLayoutEngine(), layout.getLocale());
+  }
   
+  public boolean isFast() {
+    return fast;
+  }
+  
+  public String getFormat() {
+    return format;
+  }
+  
+  public boolean isCheckLinks() {
+    return checkLinks;
+  }
 }
\ No newline at end of file
@@ -33,6 +33,8 @@ public class Help implements Opts {
         System.out.println();
         System.out.println("Options");
         printCommonOptions();
+        System.out.println("  --check-links=true/false Check the internal links and anchors of the\n"
+                         + "                           generated html files, default false");
       }
     }, 
     SERVE {
@@ -49,6 +51,13 @@ public class Help implements Opts {
         System.out.println();
         System.out.println("  --disable-rebuild-on-change=true/false    Rebuild on change, default false");
         System.out.println("  --disable-auto-reload=true/false          Disable autoreload, default false");
+        System.out.println("  --in-memory=true/false                    Build in memory instead of the output\n"
+                         + "                                            directory, default false");
+        System.out.println("  --fast-render=true/false                  Render the pages in memory only when\n"
+                         + "                                            requested, default false");
+        System.out.println("  --fast-render-background=true/false       With --fast-render, render the\n"
+                         + "                                            remaining pages in background,\n"
+                         + "                                            default false");
       }
     }, 
     CHECK {
@@ -60,6 +69,12 @@ public class Help implements Opts {
         System.out.println();
         System.out.println("Options");
         printCommonOptions();
+        System.out.println("  --fast=true/false        Parse and compile the files in parallel without\n"
+                         + "                           rendering them, print only a report and exit\n"
+                         + "                           with 1 if a problem is found, default false");
+        System.out.println("  --format=text/json       Format of the report, default text");
+        System.out.println("  --check-links=true/false Check the internal links and anchors of the\n"
+                         + "                           generated html files, default false");
       }
     },
     NEW {
@@ -15,12 +15,29 @@
  */
 package ch.digitalfondue.stampo.command;
 
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
+
+import org.xnio.IoUtils;
+
+import ch.digitalfondue.stampo.OutputPlan;
+import ch.digitalfondue.stampo.Rebuild;
 import ch.digitalfondue.stampo.ServeAndWatch;
 import ch.digitalfondue.stampo.Stampo;
+import ch.digitalfondue.stampo.StampoGlobalConfiguration;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
 
 public class Serve extends Command {
   
@@ -31,6 +48,9 @@ public class Serve extends Command {
     disableRebuildOnChangeParam = optionParser.accepts("disable-rebuild-on-change").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
     disableAutoReloadParam = optionParser.accepts("disable-auto-reload").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
     blockingOnStartParam = optionParser.accepts("blocking-on-start").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
+    inMemoryParam = optionParser.accepts("in-memory").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
+    fastRenderParam = optionParser.accepts("fast-render").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
+    fastRenderBackgroundParam = optionParser.accepts("fast-render-background").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
   }
   
   private int port = 8080;
@@ -38,6 +58,9 @@ public class Serve extends Command {
   private boolean disableRebuildOnChange = false;
   private boolean disableAutoReload = false;
   private boolean blockingOnStart = false;
+  private boolean inMemory = false;
+  private boolean fastRender = false;
+  private boolean fastRenderBackground = false;
   
   //
   private final OptionSpec<Integer> portParam;
@@ -45,6 +68,9 @@ public class Serve extends Command {
   private final OptionSpec<Boolean> disableRebuildOnChangeParam;
   private final OptionSpec<Boolean> disableAutoReloadParam;
   private final OptionSpec<Boolean> blockingOnStartParam;
+  private final OptionSpec<Boolean> inMemoryParam;
+  private final OptionSpec<Boolean> fastRenderParam;
+  private final OptionSpec<Boolean> fastRenderBackgroundParam;
   //
   
   @Override
@@ -55,6 +81,9 @@ public class Serve extends Command {
     disableRebuildOnChange = optionSet.valueOf(disableRebuildOnChangeParam);
     disableAutoReload = optionSet.valueOf(disableAutoReloadParam);
     blockingOnStart = optionSet.valueOf(blockingOnStartParam);
+    inMemory = optionSet.valueOf(inMemoryParam);
+    fastRender = optionSet.valueOf(fastRenderParam);
+    fastRenderBackground = optionSet.valueOf(fastRenderBackgroundParam);
   }
   
   public void setPort(int port) {
@@ -77,11 +106,31 @@ public class Serve extends Command {
   public void setBlockingOnStart(boolean flag) {
 	  blockingOnStart = flag;
   }
+  
+  public void setInMemory(boolean flag) {
+    inMemory = flag;
+  }
+  
+  public void setFastRender(boolean flag) {
+    fastRender = flag;
+  }
+  
+  public void setFastRenderBackground(boolean flag) {
+    fastRenderBackground = flag;
+  }
 
   @Override
   void runWithPaths(String inputPath, String outputPath) {
-    Runnable triggerBuild = getBuildRunnable(inputPath, outputPath, getConfigurationOverride());
-    triggerBuild.run();
+    InMemoryOutput inMemoryOutput = new InMemoryOutput();
+    Consumer<Rebuild> triggerBuild;
+    if (fastRender) {
+      triggerBuild = getFastRenderBuild(inputPath, inMemoryOutput, fastRenderBackground, getConfigurationOverride());
+    } else if (inMemory) {
+      triggerBuild = getInMemoryBuild(inputPath, inMemoryOutput, getConfigurationOverride());
+    } else {
+      triggerBuild = getBuild(inputPath, outputPath, getConfigurationOverride());
+    }
+    triggerBuild.accept(Rebuild.full());
     System.out.println("stampo serving at " + hostname + ":" + port);
     if (disableAutoReload) {
       System.out.println("auto-reload is disabled");
@@ -89,11 +138,130 @@ public class Serve extends Command {
     if (disableRebuildOnChange) {
       System.out.println("rebuild on change is disabled");
     }
+    StampoGlobalConfiguration configuration = new Stampo(Paths.get(inputPath), Paths.get(outputPath), getConfigurationOverride()).getConfiguration();
+    Supplier<Path> servedOutputDir = inMemory || fastRender ? inMemoryOutput::getOutputDir : configuration::getBaseOutputDir;
     new ServeAndWatch(hostname, port, !disableRebuildOnChange, !disableAutoReload, 
-        new Stampo(Paths.get(inputPath), Paths.get(outputPath), getConfigurationOverride()).getConfiguration(), triggerBuild, blockingOnStart)
+        configuration, servedOutputDir, inMemoryOutput::render, triggerBuild, blockingOnStart)
         .start();
   }
 
+  /**
+   * As {@link #getBuildRunnable(String, String, Map)}, but the pages open in the browsers are
+   * rendered first, so they can be updated before the end of the build.
+   */
+  static Consumer<Rebuild> getBuild(String inputPath, String outputPath, Map<String, Object> configurationOverride) {
+    // the static files are copied again only when the changes may affect them
+    AtomicBoolean staticDirectoryCopied = new AtomicBoolean(false);
+    AtomicReference<Stampo> previous = new AtomicReference<>();
+    return rebuild -> {
+      long start = System.currentTimeMillis();
+      Stampo s = new Stampo(Paths.get(inputPath), Paths.get(outputPath), configurationOverride, previous.get());
+      previous.set(s);
+      OutputPlan plan = s.plan(rebuild.getChanges(), staticDirectoryCopied.getAndSet(false));
+      staticDirectoryCopied.set(true);
+      rebuild.getOpenPages().forEach(plan::render);
+      rebuild.openPagesWritten();
+      plan.renderAll();
+      long end = System.currentTimeMillis();
+      System.out.println("built in " + (end - start) + "ms, output in "
+          + s.getConfiguration().getBaseOutputDir());
+    };
+  }
+
+  /**
+   * Each build render in a new in memory file system. The pages open in the browsers are rendered
+   * first, then the new file system replace the served one: until the end of the build, the
+   * remaining pages are rendered when requested.
+   */
+  static Consumer<Rebuild> getInMemoryBuild(String inputPath, InMemoryOutput output, Map<String, Object> configurationOverride) {
+    AtomicReference<Stampo> previous = new AtomicReference<>();
+    return rebuild -> {
+      long start = System.currentTimeMillis();
+      OutputPlan plan = planInMemory(inputPath, output, rebuild, configurationOverride, previous);
+      plan.renderAll();
+      long end = System.currentTimeMillis();
+      System.out.println("built in " + (end - start) + "ms, output in memory");
+    };
+  }
+
+  /**
+   * As {@link #getInMemoryBuild(String, InMemoryOutput, Map)}, but only the output plan is
+   * computed: the pages are rendered when requested (and optionally in background).
+   */
+  static Consumer<Rebuild> getFastRenderBuild(String inputPath, InMemoryOutput output, boolean renderInBackground, Map<String, Object> configurationOverride) {
+    AtomicReference<Stampo> previous = new AtomicReference<>();
+    return rebuild -> {
+      long start = System.currentTimeMillis();
+      OutputPlan plan = planInMemory(inputPath, output, rebuild, configurationOverride, previous);
+      long end = System.currentTimeMillis();
+      System.out.println("planned " + plan.getOutputs().size() + " files in " + (end - start) + "ms, rendering on demand");
+      if (renderInBackground) {
+        Thread t = new Thread(() -> {
+          try {
+            plan.renderAll();
+          } catch (RuntimeException e) {
+            System.err.println("error while rendering in background: " + e.getMessage());
+          }
+        }, "stampo-background-render");
+        t.setDaemon(true);
+        t.start();
+      }
+    };
+  }
+
+  // previous: the last build, his caches are reused
+  private static OutputPlan planInMemory(String inputPath, InMemoryOutput output, Rebuild rebuild, Map<String, Object> configurationOverride,
+      AtomicReference<Stampo> previous) {
+    FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+    OutputPlan plan;
+    try {
+      Stampo s = new Stampo(Paths.get(inputPath), fs.getPath("/output"), configurationOverride, previous.get());
+      previous.set(s);
+      plan = s.plan();
+      rebuild.getOpenPages().forEach(plan::render);
+    } catch (RuntimeException e) {
+      IoUtils.safeClose(fs);
+      throw e;
+    }
+    output.swap(fs, plan.getOutputDir(), plan);
+    rebuild.openPagesWritten();
+    return plan;
+  }
+
+  static class InMemoryOutput {
+
+    private final AtomicReference<Path> outputDir = new AtomicReference<>();
+    private final AtomicReference<OutputPlan> plan = new AtomicReference<>();
+    // the file system replaced by the last build: it's closed only at the next one, as it may still
+    // be used by a running request
+    private FileSystem previous;
+    private FileSystem current;
+
+    synchronized void swap(FileSystem fs, Path dir, OutputPlan newPlan) {
+      IoUtils.safeClose(previous);
+      previous = current;
+      current = fs;
+      Optional.ofNullable(plan.getAndSet(newPlan)).ifPresent(OutputPlan::cancel);
+      outputDir.set(dir);
+    }
+
+    Path getOutputDir() {
+      return outputDir.get();
+    }
+
+    void render(String relativePath) {
+      OutputPlan p = plan.get();
+      if (p != null) {
+        try {
+          p.render(relativePath);
+        } catch (RuntimeException e) {
+          // the request will be answered with a 404
+          System.err.println("error while rendering " + relativePath + ": " + e.getMessage());
+        }
+      }
+    }
+  }
+
   public int getPort() {
     return port;
   }
@@ -109,4 +277,12 @@ public class Serve extends Command {
   public boolean isDisableAutoReload() {
     return disableAutoReload;
   }
+
+  public boolean isInMemory() {
+    return inMemory;
+  }
+
+  public boolean isFastRender() {
+    return fastRender;
+  }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo.i18n;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.ResourceBundle.Control;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import ch.digitalfondue.stampo.exception.YamlParserException;
+
+/**
+ * Resolve the messages defined in the yaml files of the locales directory.
+ *
+ * Each file is parsed only once, the fallback chain (e.g. messages_en-US, messages_en, messages)
+ * is merged the first time a bundle is requested for a given locale and the compiled
+ * {@link MessageFormat} are cached by key. A new instance is created with each
+ * {@link ch.digitalfondue.stampo.StampoGlobalConfiguration}, thus a rebuild triggered by the
+ * watcher will see the modified files.
+ */
+public class MessageSource {
+
+  private static final Control CONTROL = Control.getControl(Control.FORMAT_DEFAULT);
+
+  private final Path localesDir;
+  private final Map<Path, Map<String, Object>> files = new ConcurrentHashMap<>();
+  private final Map<String, Map<Locale, MessageBundle>> bundles = new ConcurrentHashMap<>();
+
+  public MessageSource(Path localesDir) {
+    this.localesDir = localesDir;
+  }
+
+  public ResourceBundle getBundle(String baseName, Locale locale) {
+    return bundle(baseName, locale);
+  }
+
+  /**
+   * Format the message with the given parameters.
+   *
+   * @throws java.util.MissingResourceException if the code is not present in the bundle and in
+   *         his parents.
+   */
+  public String getMessage(String baseName, Locale locale, String code, Object[] parameters) {
+    return bundle(baseName, locale).format(code, parameters);
+  }
+
+  private MessageBundle bundle(String baseName, Locale locale) {
+    return bundles.computeIfAbsent(baseName, b -> new ConcurrentHashMap<>())
+        .computeIfAbsent(locale, l -> newBundle(baseName, l));
+  }
+
+  private MessageBundle newBundle(String baseName, Locale locale) {
+    // from the most generic to the most specific one, so the latter override the former
+    List<Locale> candidates = CONTROL.getCandidateLocales(baseName, locale);
+    Map<String, Object> merged = new HashMap<>();
+    for (int i = candidates.size() - 1; i >= 0; i--) {
+      Path file = localesDir.resolve(toBundleNameWithLanguageTag(baseName, candidates.get(i)) + ".yaml");
+      merged.putAll(files.computeIfAbsent(file, MessageSource::extractProperties));
+    }
+    return new MessageBundle(locale, merged);
+  }
+
+  private static String toBundleNameWithLanguageTag(String baseName, Locale locale) {
+    if (locale == null || Locale.ROOT.equals(locale)) {
+      return baseName;
+    } else {
+      return baseName + "_" + locale.toLanguageTag();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> extractProperties(Path propFile) {
+    if (!Files.exists(propFile)) {
+      return Collections.emptyMap();
+    }
+    try (InputStream is = Files.newInputStream(propFile)) {
+      return Collections.unmodifiableMap(Optional.ofNullable(
+          (Map<String, Object>) new Yaml().loadAs(is, Map.class)).orElse(Collections.emptyMap()));
+    } catch (YAMLException pe) {
+      YamlParserException ype = new YamlParserException(propFile, pe);
+      System.err.println(ype.getMessage());
+      throw ype;
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  private static class MessageBundle extends ResourceBundle {
+
+    private final Locale locale;
+    private final Map<String, Object> properties;
+    private final Map<String, MessageFormat> formats = new ConcurrentHashMap<>();
+
+    MessageBundle(Locale locale, Map<String, Object> properties) {
+      this.locale = locale;
+      this.properties = properties;
+    }
+
+    String format(String code, Object[] parameters) {
+      MessageFormat format = formats.computeIfAbsent(code, c -> new MessageFormat(getString(c)));
+      // MessageFormat is not thread safe
+      synchronized (format) {
+        return format.format(parameters);
+      }
+    }
+
+    @Override
+    public Locale getLocale() {
+      return locale;
+    }
+
+    @Override
+    protected Object handleGetObject(String key) {
+      return properties.get(key);
+    }
+
+    @Override
+    public Enumeration<String> getKeys() {
+      return Collections.enumeration(properties.keySet());
+    }
+  }
+}
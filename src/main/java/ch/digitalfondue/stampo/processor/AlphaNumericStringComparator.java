@@ -27,54 +27,198 @@ import java.io.Serializable;
 import java.text.DecimalFormatSymbols;
 import java.util.Comparator;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Compares Strings by human values instead of traditional machine values.
+ * 
+ * The strings are split in chunks of digits (optionally with a decimal part) and non digits: the
+ * chunks are compared as numbers when both can be parsed as such, else as strings. The chunks are
+ * scanned in place, without allocations.
+ * 
  * @author elberry
  */
 public class AlphaNumericStringComparator implements Comparator<String>, Serializable {
 
   private static final long serialVersionUID = 3293163417312475920L;
   
-  private Pattern alphaNumChunkPattern;
+  // up to this length, a number chunk is compared exactly without losing any precision with respect to a double
+  private static final int MAX_EXACT_NUMBER_LENGTH = 15;
+  
+  private final char decimalSeparator;
 
 
    public AlphaNumericStringComparator(Locale locale) {
       DecimalFormatSymbols dfs = new DecimalFormatSymbols(locale);
-      char localeDecimalSeparator = dfs.getDecimalSeparator();
-      // alphaNumChunkPatter initialized here to get correct decimal separator for locale.
-      alphaNumChunkPattern = Pattern.compile("(\\d+\\" + localeDecimalSeparator + "\\d+)|(\\d+)|(\\D+)");
+      decimalSeparator = dfs.getDecimalSeparator();
    }
 
    public int compare(String s1, String s2) {
-      int compareValue = 0;
-      Matcher s1ChunkMatcher = alphaNumChunkPattern.matcher(s1);
-      Matcher s2ChunkMatcher = alphaNumChunkPattern.matcher(s2);
-      String s1ChunkValue = null;
-      String s2ChunkValue = null;
-      while (s1ChunkMatcher.find() && s2ChunkMatcher.find() && compareValue == 0) {
-         s1ChunkValue = s1ChunkMatcher.group();
-         s2ChunkValue = s2ChunkMatcher.group();
-         try {
-            // compare double values - ints get converted to doubles. Eg. 100 = 100.0
-            Double s1Double = Double.valueOf(s1ChunkValue);
-            Double s2Double = Double.valueOf(s2ChunkValue);
-            compareValue = s1Double.compareTo(s2Double);
-         } catch (NumberFormatException e) {
-            // not a number, use string comparison.
-            compareValue = s1ChunkValue.compareTo(s2ChunkValue);
+      int start1 = 0;
+      int start2 = 0;
+      int len1 = s1.length();
+      int len2 = s2.length();
+      while (start1 < len1 && start2 < len2) {
+         int end1 = chunkEnd(s1, start1);
+         int end2 = chunkEnd(s2, start2);
+         int compareValue = compareChunks(s1, start1, end1, s2, start2, end2);
+         if (compareValue != 0) {
+            return compareValue;
          }
          // if they are equal thus far, but one has more left, it should come after the one that doesn't.
-         if (compareValue == 0) {
-            if (s1ChunkMatcher.hitEnd() && !s2ChunkMatcher.hitEnd()) {
-               compareValue = -1;
-            } else if (!s1ChunkMatcher.hitEnd() && s2ChunkMatcher.hitEnd()) {
-               compareValue = 1;
-            }
+         boolean s1HitEnd = hitEnd(s1, start1, end1);
+         boolean s2HitEnd = hitEnd(s2, start2, end2);
+         if (s1HitEnd && !s2HitEnd) {
+            return -1;
+         } else if (!s1HitEnd && s2HitEnd) {
+            return 1;
+         }
+         start1 = end1;
+         start2 = end2;
+      }
+      return 0;
+   }
+   
+   private static boolean isDigit(char c) {
+      return c >= '0' && c <= '9';
+   }
+   
+   private static int digitsEnd(String s, int from) {
+      int i = from;
+      while (i < s.length() && isDigit(s.charAt(i))) {
+         i++;
+      }
+      return i;
+   }
+   
+   // a chunk is: digits, decimal separator, digits | digits | non digits
+   private int chunkEnd(String s, int start) {
+      int len = s.length();
+      if (isDigit(s.charAt(start))) {
+         int end = digitsEnd(s, start);
+         if (end + 1 < len && s.charAt(end) == decimalSeparator && isDigit(s.charAt(end + 1))) {
+            end = digitsEnd(s, end + 1);
+         }
+         return end;
+      }
+      int end = start + 1;
+      while (end < len && !isDigit(s.charAt(end))) {
+         end++;
+      }
+      return end;
+   }
+   
+   /*
+    * Mimic the hitEnd of the regex matcher used originally for splitting the chunks: it's true when
+    * the chunk end the string, but also when a integer chunk is followed only by the decimal
+    * separator, as the matcher has looked for the decimal part until the end.
+    */
+   private boolean hitEnd(String s, int start, int end) {
+      int len = s.length();
+      if (end == len) {
+         return true;
+      }
+      return end + 1 == len && s.charAt(end) == decimalSeparator && isDigit(s.charAt(start)) && !hasDecimalSeparator(s, start, end);
+   }
+   
+   private boolean hasDecimalSeparator(String s, int start, int end) {
+      for (int i = start; i < end; i++) {
+         if (s.charAt(i) == decimalSeparator) {
+            return true;
+         }
+      }
+      return false;
+   }
+   
+   private int compareChunks(String s1, int start1, int end1, String s2, int start2, int end2) {
+      boolean number1 = isNumber(s1, start1, end1);
+      boolean number2 = isNumber(s2, start2, end2);
+      
+      if (number1 && number2 && end1 - start1 <= MAX_EXACT_NUMBER_LENGTH && end2 - start2 <= MAX_EXACT_NUMBER_LENGTH) {
+         return compareNumbers(s1, start1, end1, s2, start2, end2);
+      }
+      
+      // compare double values - ints get converted to doubles. Eg. 100 = 100.0
+      // it's the rare case: very long numbers and the NaN/Infinity literals
+      if ((number1 || isDoubleLiteral(s1, start1, end1)) && (number2 || isDoubleLiteral(s2, start2, end2))) {
+         return Double.valueOf(s1.substring(start1, end1)).compareTo(Double.valueOf(s2.substring(start2, end2)));
+      }
+      
+      // not a number, use string comparison.
+      return compareStrings(s1, start1, end1, s2, start2, end2);
+   }
+   
+   // a number chunk that can be parsed by Double.valueOf
+   private boolean isNumber(String s, int start, int end) {
+      return isDigit(s.charAt(start)) && (decimalSeparator == '.' || !hasDecimalSeparator(s, start, end));
+   }
+   
+   // non digits strings that are accepted by Double.valueOf
+   private static boolean isDoubleLiteral(String s, int start, int end) {
+      while (start < end && s.charAt(start) <= ' ') {
+         start++;
+      }
+      while (end > start && s.charAt(end - 1) <= ' ') {
+         end--;
+      }
+      if (start < end && (s.charAt(start) == '+' || s.charAt(start) == '-')) {
+         start++;
+      }
+      return regionEquals(s, start, end, "NaN") || regionEquals(s, start, end, "Infinity");
+   }
+   
+   private static boolean regionEquals(String s, int start, int end, String toCompare) {
+      return end - start == toCompare.length() && s.regionMatches(start, toCompare, 0, toCompare.length());
+   }
+   
+   private int compareNumbers(String s1, int start1, int end1, String s2, int start2, int end2) {
+      int sep1 = integerPartEnd(s1, start1, end1);
+      int sep2 = integerPartEnd(s2, start2, end2);
+      int compareValue = Long.compare(parseLong(s1, start1, sep1), parseLong(s2, start2, sep2));
+      if (compareValue != 0) {
+         return compareValue;
+      }
+      // compare the decimal parts digit by digit, the missing digits are zeros
+      int frac1 = Math.min(sep1 + 1, end1);
+      int frac2 = Math.min(sep2 + 1, end2);
+      int fracLength = Math.max(end1 - frac1, end2 - frac2);
+      for (int i = 0; i < fracLength; i++) {
+         char c1 = frac1 + i < end1 ? s1.charAt(frac1 + i) : '0';
+         char c2 = frac2 + i < end2 ? s2.charAt(frac2 + i) : '0';
+         if (c1 != c2) {
+            return c1 < c2 ? -1 : 1;
+         }
+      }
+      return 0;
+   }
+   
+   private static int integerPartEnd(String s, int start, int end) {
+      int i = start;
+      while (i < end && isDigit(s.charAt(i))) {
+         i++;
+      }
+      return i;
+   }
+   
+   private static long parseLong(String s, int start, int end) {
+      long res = 0;
+      for (int i = start; i < end; i++) {
+         res = res * 10 + (s.charAt(i) - '0');
+      }
+      return res;
+   }
+   
+   // same as String.compareTo, on the given regions
+   private static int compareStrings(String s1, int start1, int end1, String s2, int start2, int end2) {
+      int len1 = end1 - start1;
+      int len2 = end2 - start2;
+      int lim = Math.min(len1, len2);
+      for (int i = 0; i < lim; i++) {
+         char c1 = s1.charAt(start1 + i);
+         char c2 = s2.charAt(start2 + i);
+         if (c1 != c2) {
+            return c1 - c2;
          }
       }
-      return compareValue;
+      return len1 - len2;
    }
 }
\ No newline at end of file
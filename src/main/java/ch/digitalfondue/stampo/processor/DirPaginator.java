@@ -34,8 +34,9 @@ import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
-import ch.digitalfondue.stampo.PathUtils;
+import ch.digitalfondue.stampo.KeyedComparator;
 import ch.digitalfondue.stampo.StampoGlobalConfiguration;
 import ch.digitalfondue.stampo.exception.ConfigurationException;
 import ch.digitalfondue.stampo.processor.paginator.PaginationConfiguration;
@@ -52,8 +53,8 @@ public class DirPaginator extends Paginator implements Directive {
   private static final String METADATA_PAGINATE_MATCH = "paginate-match";
   private static final String METADATA_PAGINATE_RECURSIVE = "paginate-recursive";
 
-  private static final Comparator<FileResource> NEW_FILE_FIRST = Comparator.comparingLong(
-      FileResource::getCreationTime).reversed();
+  private static final Comparator<FileResource> NEW_FILE_FIRST = KeyedComparator.comparing(
+      FileResource::getCreationTime, Comparator.<Long>reverseOrder());
 
 
   public DirPaginator(
@@ -173,7 +174,7 @@ public class DirPaginator extends Paginator implements Directive {
     if (dirPaginationConf.isRecursive()) {
       List<FileResource> fr = new ArrayList<>();
       recurAddFileResources(dir, fr);
-      fr.sort(NEW_FILE_FIRST);
+      KeyedComparator.sort(fr, NEW_FILE_FIRST);
       return fr;
     } else {
       return dir.getFiles().values();
@@ -201,7 +202,7 @@ public class DirPaginator extends Paginator implements Directive {
 
   private List<PathAndModelSupplier> handleStaticDir(FileResource resource, Path defaultOutputPath,
       DirPaginationConfiguration dirPaginationConf, Path targetDirPath) throws IOException {
-    Comparator<Path> comparator = Comparator.comparing((Path p) -> p.getFileName().toString(),//
+    Comparator<Path> comparator = KeyedComparator.comparing((Path p) -> p.getFileName().toString(),//
         new AlphaNumericStringComparator(Locale.ENGLISH)).reversed();
 
     int depth = dirPaginationConf.isRecursive() ? Integer.MAX_VALUE : 1;
@@ -211,13 +212,14 @@ public class DirPaginator extends Paginator implements Directive {
 
     Predicate<Path> patternFilter = matchPattern(dirPaginationConf);
 
-    List<Path> files =
-        Files.walk(targetDirPath, depth).filter(Files::isRegularFile).filter(patternFilter)
-            .sorted(comparator)
-            .map(file -> baseOutputDir.resolve(staticDir.relativize(file).toString()))
-            .collect(toList());
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(targetDirPath, depth)) {
+      files = paths.filter(Files::isRegularFile).filter(patternFilter).collect(toList());
+    }
+    KeyedComparator.sort(files, comparator);
+    files.replaceAll(file -> baseOutputDir.resolve(staticDir.relativize(file).toString()));
 
-    List<PathAndModelSupplier> toAdd = registerPaths(files, defaultOutputPath, dirPaginationConf, Collections.emptyMap(), resource, path -> (f -> PathUtils.relativePathTo(f, path)));
+    List<PathAndModelSupplier> toAdd = registerPaths(files, defaultOutputPath, dirPaginationConf, Collections.emptyMap(), resource, path -> (f -> configuration.getUrlResolver().relativeUrl(f, path)));
     return toAdd;
   }
 
@@ -16,26 +16,25 @@
 package ch.digitalfondue.stampo.processor;
 
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import ch.digitalfondue.stampo.StampoGlobalConfiguration;
 import ch.digitalfondue.stampo.resource.Directory;
-import ch.digitalfondue.stampo.resource.FileMetadata;
 import ch.digitalfondue.stampo.resource.FileResource;
-import ch.digitalfondue.stampo.resource.Resource;
 import ch.digitalfondue.stampo.resource.StructuredFileExtension;
 
 class FileResourceProcessor {
 
   private final Map<String, Function<FileResourceParameters, FileResourceProcessorOutput>> processors;
+  // processor related extensions -> compiled chain
+  private final Map<List<String>, ProcessorChain> chains = new ConcurrentHashMap<>();
 
   private final Path contentDir, outputDir;
   private final StampoGlobalConfiguration configuration;
@@ -53,72 +52,9 @@ class FileResourceProcessor {
     processors = Collections.unmodifiableMap(p);
   }
   
-  private static class ProcessedFileResource implements FileResource {
-    
-
-    private final FileResource fileResource;
-    private final Optional<String> content;
-    
-    ProcessedFileResource(FileResource fileResource, Optional<String> content) {
-      this.fileResource = fileResource;
-      this.content = content;
-    }
-
-    @Override
-    public Resource getParent() {
-      return fileResource.getParent();
-    }
-
-    @Override
-    public Path getPath() {
-      return fileResource.getPath();
-    }
-
-    @Override
-    public StampoGlobalConfiguration getConfiguration() {
-      return fileResource.getConfiguration();
-    }
-
-    @Override
-    public FileMetadata getMetadata() {
-      return fileResource.getMetadata();
-    }
-
-    @Override
-    public Optional<String> getContent() {
-      return content;
-    }
-
-    @Override
-    public StructuredFileExtension getStructuredFileExtension() {
-      return fileResource.getStructuredFileExtension();
-    }
-    
-  }
-
-
   FileResourceProcessorOutput applyProcessors(FileResource fileResource, Locale locale, Map<String, Object> model) {
-
-    StructuredFileExtension ext = fileResource.getStructuredFileExtension();
-    
-    List<String> processorsExt = new ArrayList<>(ext.getProcessorRelatedExts());
-    Collections.reverse(processorsExt);
-    
-    List<Function<FileResourceParameters, FileResourceProcessorOutput>> processorsToApply = processorsExt.stream().map(processors::get).collect(Collectors.toList());
-    if(processorsToApply.isEmpty()) {
-      processorsToApply = Collections.singletonList(x -> {
-        return new FileResourceProcessorOutput(fileResource.getContent().orElseThrow(IllegalArgumentException::new), fileResource.getPath(), "none", locale);
-      });
-    }
-    
-    //TODO can be converted in a reduce operation
-    FileResourceParameters param = new FileResourceParameters(fileResource, locale, model);
-    FileResourceProcessorOutput output = null;
-    for(Function<FileResourceParameters, FileResourceProcessorOutput> toApply : processorsToApply) {
-      output = toApply.apply(param);
-      param = new FileResourceParameters(new ProcessedFileResource(fileResource, Optional.ofNullable(output.getContent())), locale, model);
-    }
-    return output;
+    List<String> processorsExt = fileResource.getStructuredFileExtension().getProcessorRelatedExts();
+    return chains.computeIfAbsent(processorsExt, exts -> ProcessorChain.compile(exts, processors)).apply(fileResource, locale, model);
   }
 
   /**
@@ -0,0 +1,284 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.jsoup.parser.Parser;
+
+/**
+ * Extract the h1-h6 elements from a rendered html fragment in a single pass, without building a
+ * DOM.
+ *
+ * For each heading it record the level, the text, the name of the first contained anchor and the
+ * position where the content of the heading begin, so the toc numbers can be inserted later
+ * without scanning the html again.
+ */
+class HeadingScanner {
+
+  private final String html;
+  private final List<Heading> headings;
+
+  HeadingScanner(String html) {
+    this.html = html;
+    this.headings = Collections.unmodifiableList(scan(html));
+  }
+
+  List<Heading> getHeadings() {
+    return headings;
+  }
+
+  Optional<String> getTitle() {
+    return headings.stream().findFirst().map(h -> h.text);
+  }
+
+  /**
+   * Return the html with the given toc numbers inserted at the beginning of each heading.
+   */
+  String withNumbering(List<String> numbers) {
+    int count = Math.min(numbers.size(), headings.size());
+    StringBuilder sb = new StringBuilder(html.length() + count * 64);
+    int last = 0;
+    for (int i = 0; i < count; i++) {
+      int insertAt = headings.get(i).contentStart;
+      sb.append(html, last, insertAt)
+          .append("<span class=\"stampo-heading-toc-number\">")
+          .append(numbers.get(i))
+          .append("</span>");
+      last = insertAt;
+    }
+    return sb.append(html, last, html.length()).toString();
+  }
+
+  static class Heading {
+    final int level;
+    final String text;
+    final String id;
+    final int contentStart;
+
+    Heading(int level, String text, String id, int contentStart) {
+      this.level = level;
+      this.text = text;
+      this.id = id;
+      this.contentStart = contentStart;
+    }
+  }
+
+  private static List<Heading> scan(String s) {
+
+    List<Heading> res = new ArrayList<>();
+
+    int len = s.length();
+    int i = 0;
+
+    // state of the currently open heading
+    int level = 0;
+    int contentStart = -1;
+    String id = null;
+
+    while ((i = s.indexOf('<', i)) != -1) {
+
+      if (s.startsWith("<!--", i)) {
+        int end = s.indexOf("-->", i + 4);
+        i = end == -1 ? len : end + 3;
+        continue;
+      }
+
+      boolean closing = i + 1 < len && s.charAt(i + 1) == '/';
+      int nameStart = closing ? i + 2 : i + 1;
+      int nameEnd = nameStart;
+      while (nameEnd < len && Character.isLetterOrDigit(s.charAt(nameEnd))) {
+        nameEnd++;
+      }
+
+      if (nameEnd == nameStart) {
+        // not a tag, e.g. a "<" in the text
+        i++;
+        continue;
+      }
+
+      int tagEnd = endOfTag(s, nameEnd);
+      String name = s.substring(nameStart, nameEnd);
+      int headingLevel = headingLevel(name);
+
+      if (closing) {
+        if (headingLevel > 0 && level > 0) {
+          res.add(new Heading(level, text(s, contentStart, i), id == null ? "" : id, contentStart));
+          level = 0;
+        }
+      } else if (headingLevel > 0) {
+        // as in html5, a heading cannot contain another heading
+        if (level > 0) {
+          res.add(new Heading(level, text(s, contentStart, i), id == null ? "" : id, contentStart));
+        }
+        level = headingLevel;
+        contentStart = tagEnd;
+        id = null;
+      } else if (level > 0 && id == null && "a".equalsIgnoreCase(name)) {
+        id = attribute(s, nameEnd, tagEnd, "name");
+      } else if (isRawText(name)) {
+        int end = indexOfIgnoreCase(s, "</" + name, tagEnd);
+        i = end == -1 ? len : end;
+        continue;
+      }
+      i = tagEnd;
+    }
+
+    if (level > 0) {
+      res.add(new Heading(level, text(s, contentStart, len), id == null ? "" : id, contentStart));
+    }
+
+    return res;
+  }
+
+  private static int headingLevel(String name) {
+    if (name.length() == 2 && (name.charAt(0) == 'h' || name.charAt(0) == 'H')) {
+      char c = name.charAt(1);
+      return c >= '1' && c <= '6' ? c - '0' : 0;
+    }
+    return 0;
+  }
+
+  private static boolean isRawText(String name) {
+    return "script".equalsIgnoreCase(name) || "style".equalsIgnoreCase(name)
+        || "textarea".equalsIgnoreCase(name);
+  }
+
+  // position after the closing ">" of the tag, quoted attribute values are skipped
+  private static int endOfTag(String s, int from) {
+    char quote = 0;
+    for (int i = from; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        return i + 1;
+      }
+    }
+    return s.length();
+  }
+
+  private static String attribute(String s, int from, int to, String attributeName) {
+    int i = from;
+    while (i < to) {
+      while (i < to && !isAttributeNameChar(s.charAt(i))) {
+        i++;
+      }
+      int nameStart = i;
+      while (i < to && isAttributeNameChar(s.charAt(i))) {
+        i++;
+      }
+      if (nameStart == i) {
+        return null;
+      }
+      boolean match = s.regionMatches(true, nameStart, attributeName, 0, attributeName.length())
+          && i - nameStart == attributeName.length();
+
+      while (i < to && Character.isWhitespace(s.charAt(i))) {
+        i++;
+      }
+
+      String value = "";
+      if (i < to && s.charAt(i) == '=') {
+        i++;
+        while (i < to && Character.isWhitespace(s.charAt(i))) {
+          i++;
+        }
+        if (i < to && (s.charAt(i) == '"' || s.charAt(i) == '\'')) {
+          char quote = s.charAt(i);
+          int end = s.indexOf(quote, i + 1);
+          end = end == -1 || end > to ? to : end;
+          value = s.substring(i + 1, end);
+          i = end + 1;
+        } else {
+          int start = i;
+          while (i < to && !Character.isWhitespace(s.charAt(i)) && s.charAt(i) != '>') {
+            i++;
+          }
+          value = s.substring(start, i);
+        }
+      }
+      if (match) {
+        return Parser.unescapeEntities(value, true);
+      }
+    }
+    return null;
+  }
+
+  private static boolean isAttributeNameChar(char c) {
+    return !Character.isWhitespace(c) && c != '=' && c != '>' && c != '/' && c != '"'
+        && c != '\'';
+  }
+
+  // text content of the heading: tags are removed, entities decoded and whitespaces normalized
+  private static String text(String s, int from, int to) {
+    StringBuilder sb = new StringBuilder(to - from);
+    int i = from;
+    while (i < to) {
+      char c = s.charAt(i);
+      if (c == '<') {
+        int tagEnd = Math.min(endOfTag(s, i + 1), to);
+        if (s.regionMatches(true, i + 1, "br", 0, 2)) {
+          sb.append(' ');
+        }
+        i = tagEnd;
+      } else {
+        sb.append(c);
+        i++;
+      }
+    }
+    return normalizeWhitespace(Parser.unescapeEntities(sb.toString(), false));
+  }
+
+  private static String normalizeWhitespace(String s) {
+    StringBuilder sb = new StringBuilder(s.length());
+    boolean lastWasWhitespace = true;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      // as in jsoup, a non breaking space is normalized too
+      if (Character.isWhitespace(c) || c == '\u00a0') {
+        if (!lastWasWhitespace) {
+          sb.append(' ');
+        }
+        lastWasWhitespace = true;
+      } else {
+        sb.append(c);
+        lastWasWhitespace = false;
+      }
+    }
+    int end = sb.length();
+    if (end > 0 && sb.charAt(end - 1) == ' ') {
+      sb.setLength(end - 1);
+    }
+    return sb.toString();
+  }
+
+  private static int indexOfIgnoreCase(String s, String toFind, int from) {
+    for (int i = from; i <= s.length() - toFind.length(); i++) {
+      if (s.regionMatches(true, i, toFind, 0, toFind.length())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -21,6 +21,7 @@ import static java.util.Optional.ofNullable;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -32,17 +33,16 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
+import ch.digitalfondue.stampo.KeyedComparator;
 import ch.digitalfondue.stampo.PathUtils;
+import ch.digitalfondue.stampo.UrlResolver;
 import ch.digitalfondue.stampo.StampoGlobalConfiguration;
 import ch.digitalfondue.stampo.resource.Directory;
 import ch.digitalfondue.stampo.resource.DirectoryResource;
@@ -56,7 +56,7 @@ import ch.digitalfondue.stampo.taxonomy.Taxonomy;
 //TODO: refactor, cleanup...
 public class IncludeAllPaginator implements Directive {
   
-  private static Comparator<FileOrDir> FILE_OR_DIR_COMPARATOR = Comparator.comparing(FileOrDir::getName, new AlphaNumericStringComparator(Locale.ENGLISH));
+  private static final Comparator<FileOrDir> FILE_OR_DIR_COMPARATOR = KeyedComparator.comparing(FileOrDir::getName, new AlphaNumericStringComparator(Locale.ENGLISH));
 
   private final Directory root;
   private final StampoGlobalConfiguration configuration;
@@ -122,7 +122,7 @@ public class IncludeAllPaginator implements Directive {
             .map(Optional::get)
             .collect(Collectors.toList());
     
-    IncludeAllPageAndToc pagesAndToc = addPaginationInformation(pagesWithOutput, includeChildSummary);
+    IncludeAllPageAndToc pagesAndToc = addPaginationInformation(pagesWithOutput, includeChildSummary, addNumberingToTitles);
     
     return pagesAndToc.pages.stream().map(fl -> toPathAndModuleSupplier(fl, locale, pagesAndToc.toc, addNumberingToTitles)).collect(Collectors.toList());
   }
@@ -153,7 +153,7 @@ public class IncludeAllPaginator implements Directive {
         .filter(d -> !pairedDirectories.contains(d.getName()))
         .map(d -> new FileOrDir(empty(), of(d))).collect(Collectors.toList()));
 
-    fileOrDirs.sort(FILE_OR_DIR_COMPARATOR);
+    KeyedComparator.sort(fileOrDirs, FILE_OR_DIR_COMPARATOR);
 
 
     List<IncludeAllPage> frs = new ArrayList<>();
@@ -231,10 +231,10 @@ public class IncludeAllPaginator implements Directive {
   
   private static class IncludeAllPageAndToc {
     final List<IncludeAllPageWithPagination> pages;
-    final List<HeaderWithPosition> toc;
+    final GlobalToc toc;
     
     
-    IncludeAllPageAndToc(List<IncludeAllPageWithPagination> pages, List<HeaderWithPosition> toc) {
+    IncludeAllPageAndToc(List<IncludeAllPageWithPagination> pages, GlobalToc toc) {
       this.pages = pages;
       this.toc = toc;
     }
@@ -243,7 +243,7 @@ public class IncludeAllPaginator implements Directive {
   /*
    * Augment the objects with pagination information. It's done in a separate step as we need the previous and next page reference. 
    */
-  private IncludeAllPageAndToc addPaginationInformation(List<IncludeAllPageWithOutput> pages, boolean includeChildSummary) {
+  private IncludeAllPageAndToc addPaginationInformation(List<IncludeAllPageWithOutput> pages, boolean includeChildSummary, boolean addNumberingToTitles) {
 
     List<Header> globalToc = new ArrayList<>();
 
@@ -279,11 +279,11 @@ public class IncludeAllPaginator implements Directive {
         List<Link> breadcrumbs = extractBreadcrumbs(pages, i, current.outputPath);
         
         if (i > 0) {
-          previousPageUrl = PathUtils.relativePathTo(pages.get(i - 1).outputPath, current.outputPath);
+          previousPageUrl = configuration.getUrlResolver().relativeUrl(pages.get(i - 1).outputPath, current.outputPath);
           previousPageTitle = pages.get(i - 1).title.orElse(null);
         }
         if (i < pages.size() - 1) {
-          nextPageUrl = PathUtils.relativePathTo(pages.get(i + 1).outputPath, current.outputPath);
+          nextPageUrl = configuration.getUrlResolver().relativeUrl(pages.get(i + 1).outputPath, current.outputPath);
           nextPageTitle = pages.get(i + 1).title.orElse(null);
         }
 
@@ -292,35 +292,45 @@ public class IncludeAllPaginator implements Directive {
         processedResources.add(new IncludeAllPageWithPagination(current, pagination, summaryPositionBegin, summaryPositionEnd));
       }
     }
-    return new IncludeAllPageAndToc(processedResources, addPositionsToGlobalToc(globalToc));
+    return new IncludeAllPageAndToc(processedResources, new GlobalToc(addPositionsToGlobalToc(globalToc), addNumberingToTitles, configuration.getUrlResolver()));
   }
   
-  private List<HeaderWithPosition> addPositionsToGlobalToc(List<Header> globalToc) {
+  /*
+   * The position of a header is the position of the nearest preceding header with a lower level,
+   * followed by the count of the headers with the same level since that one. It's done in a single
+   * pass by keeping, for each level, the count and the index of the last header seen.
+   */
+  private static List<HeaderWithPosition> addPositionsToGlobalToc(List<Header> globalToc) {
+    
+    List<HeaderWithPosition> res = new ArrayList<>(globalToc.size());
     
-    List<HeaderWithPosition> res = new ArrayList<>();
+    int[] counts = new int[7];
+    int[] lastIndexAtLevel = new int[7];
+    Arrays.fill(lastIndexAtLevel, -1);
     
-    for(int i = 0; i < globalToc.size(); i++) {
+    for (int i = 0; i < globalToc.size(); i++) {
       
+      Header header = globalToc.get(i);
+      int level = Math.max(1, Math.min(6, header.level));
       
-      //get the relative position of the first header element
-      int startCnt = 1;
-      final int firstLevel = globalToc.get(i).level;
+      int parentIndex = -1;
+      for (int l = 1; l < level; l++) {
+        parentIndex = Math.max(parentIndex, lastIndexAtLevel[l]);
+      }
       
       List<Integer> positions = new ArrayList<Integer>();
-      
-      for (int j = i - 1; j >= 0; j--) {
-        Header current = globalToc.get(j);
-        if(current.level == firstLevel) {
-          startCnt++;
-        } else if(current.level < firstLevel) {
-          positions.addAll(res.get(j).positions);
-          break;
-        }
+      if (parentIndex >= 0) {
+        positions.addAll(res.get(parentIndex).positions);
       }
+      positions.add(++counts[level]);
       
-      positions.add(startCnt);
+      // a header close all the deeper levels
+      for (int l = level + 1; l < counts.length; l++) {
+        counts[l] = 0;
+      }
+      lastIndexAtLevel[level] = i;
       
-      res.add(new HeaderWithPosition(globalToc.get(i), positions));
+      res.add(new HeaderWithPosition(header, positions));
     }
     
     return res;
@@ -335,7 +345,7 @@ public class IncludeAllPaginator implements Directive {
       
       IncludeAllPageWithOutput curr = pages.get(i);
       if (curr.depth < currentDepth && curr.title.isPresent()) {
-        breadcrumbs.addFirst(new Link(PathUtils.relativePathTo(curr.outputPath, pages.get(currentPosition).outputPath), curr.title.get()));
+        breadcrumbs.addFirst(new Link(configuration.getUrlResolver().relativeUrl(curr.outputPath, pages.get(currentPosition).outputPath), curr.title.get()));
         currentDepth = curr.depth;
       }
     }
@@ -343,54 +353,120 @@ public class IncludeAllPaginator implements Directive {
     return breadcrumbs;
   }
   
-  //
-  private static String htmlSummary(List<HeaderWithPosition> globalToc, int positionStart, int positionEnd, Path path, boolean addNumberingToTitles) {
-    Stack<Integer> stack = new Stack<>();
-    StringBuilder sbStack = new StringBuilder();
-   
-    List<HeaderWithPosition> summary = globalToc.subList(positionStart, positionEnd);
+  /*
+   * The global toc is shared by all the pages generated by a include-all directive. The html is
+   * compiled once in static chunks separated by the links: rendering it for a given output path only
+   * need to resolve the relative url of each distinct target page.
+   */
+  private static class GlobalToc {
+    
+    final List<HeaderWithPosition> headers;
+    private final boolean addNumberingToTitles;
+    private final CompiledToc full;
+    private final UrlResolver urlResolver;
+    private final Map<Path, String> fullByDirectory = new ConcurrentHashMap<>();
+    // key: (start << 32) | end
+    private final Map<Long, CompiledToc> summaries = new ConcurrentHashMap<>();
     
-    for (HeaderWithPosition h : summary) {
-      if (stack.isEmpty() || stack.peek().intValue() < h.level) {
-        stack.push(h.level);
-        sbStack.append("<ol>");
-      } else if (!stack.isEmpty()) {
-        while (!stack.isEmpty() && stack.peek().intValue() > h.level) {
-          stack.pop();
-          sbStack.append("</ol>");
+    GlobalToc(List<HeaderWithPosition> headers, boolean addNumberingToTitles, UrlResolver urlResolver) {
+      this.headers = headers;
+      this.addNumberingToTitles = addNumberingToTitles;
+      this.urlResolver = urlResolver;
+      this.full = compile(0, headers.size());
+    }
+    
+    String summary(int positionStart, int positionEnd, Path path) {
+      CompiledToc summary = summaries.computeIfAbsent(((long) positionStart << 32) | positionEnd, k -> compile(positionStart, positionEnd));
+      return summary.render(urlResolver.baseDirectory(path), urlResolver);
+    }
+    
+    String globalToc(Path path) {
+      return fullByDirectory.computeIfAbsent(urlResolver.baseDirectory(path), dir -> full.render(dir, urlResolver));
+    }
+    
+    private CompiledToc compile(int positionStart, int positionEnd) {
+      Stack<Integer> stack = new Stack<>();
+      StringBuilder sbStack = new StringBuilder();
+      
+      List<String> chunks = new ArrayList<>();
+      List<Path> targets = new ArrayList<>();
+     
+      List<HeaderWithPosition> summary = headers.subList(positionStart, positionEnd);
+      
+      for (HeaderWithPosition h : summary) {
+        if (stack.isEmpty() || stack.peek().intValue() < h.level) {
+          stack.push(h.level);
+          sbStack.append("<ol>");
+        } else if (!stack.isEmpty()) {
+          while (!stack.isEmpty() && stack.peek().intValue() > h.level) {
+            stack.pop();
+            sbStack.append("</ol>");
+          }
+        }
+        sbStack.append("<li>");
+        if(addNumberingToTitles) {
+          sbStack.append("<span class=\"stampo-number-and-heading-container\"><span class=\"stampo-heading-li-number\">")
+              .append(h.number)
+              .append("</span>");
+        }
+        
+        sbStack.append("<a href=\"");
+        chunks.add(sbStack.toString());
+        targets.add(h.outputPath);
+        sbStack.setLength(0);
+        
+        sbStack.append("#").append(h.id)
+            .append("\">")
+            .append(h.name).append("</a>");
+        
+        if(addNumberingToTitles) {
+          sbStack.append("</span>");
         }
       }
-      sbStack.append("<li>");
-      if(addNumberingToTitles) {
-        sbStack.append("<span class=\"stampo-number-and-heading-container\"><span class=\"stampo-heading-li-number\">")
-            .append(h.positions.stream().map(Object::toString).collect(Collectors.joining(".")))
-            .append("</span>");
+      //
+      for (int i = 0; i < stack.size(); i++) {
+        sbStack.append("</ol>");
       }
+      chunks.add(sbStack.toString());
       
-      sbStack.append("<a href=\"")
-          .append(PathUtils.relativePathTo(h.outputPath, path)).append("#").append(h.id)
-          .append("\">")
-          .append(h.name).append("</a>");
-      
-      if(addNumberingToTitles) {
-        sbStack.append("</span>");
+      //add attribute start to first ol
+      String first = chunks.get(0);
+      if(first.length() >= 3) {
+        String start = " start=\"" + summary.stream().findFirst().filter(hwp -> !hwp.positions.isEmpty()).map(hwp -> hwp.positions.get(hwp.positions.size() -1)).orElse(1) + "\"";
+        chunks.set(0, first.substring(0, 3) + start + first.substring(3));
       }
+      
+      return new CompiledToc(chunks, targets);
     }
-    //
-    for (int i = 0; i < stack.size(); i++) {
-      sbStack.append("</ol>");
-    }
+  }
+  
+  private static class CompiledToc {
     
-    //add attribute start to first ol
-    if(sbStack.length() >= 3) {
-      sbStack.replace(3, 3, " start=\"" + summary.stream().findFirst().filter(hwp -> !hwp.positions.isEmpty()).map(hwp -> hwp.positions.get(hwp.positions.size() -1)).orElse(1) + "\"");
+    // chunks.size() == targets.size() + 1
+    final List<String> chunks;
+    final List<Path> targets;
+    final int length;
+    
+    CompiledToc(List<String> chunks, List<Path> targets) {
+      this.chunks = chunks;
+      this.targets = targets;
+      this.length = chunks.stream().mapToInt(String::length).sum();
     }
     
-    return sbStack.toString();
+    String render(Path baseDirectory, UrlResolver urlResolver) {
+      Map<Path, String> relativePaths = new HashMap<>();
+      StringBuilder sb = new StringBuilder(length + targets.size() * 16);
+      sb.append(chunks.get(0));
+      for (int i = 0; i < targets.size(); i++) {
+        sb.append(relativePaths.computeIfAbsent(targets.get(i), target -> urlResolver.relativeUrlFromDirectory(target, baseDirectory)))
+            .append(chunks.get(i + 1));
+      }
+      return sb.toString();
+    }
   }
 
 
-  private PathAndModelSupplier toPathAndModuleSupplier(IncludeAllPageWithPagination page, Locale locale, List<HeaderWithPosition> globalToc, boolean addNumberingToTitles) {
+  private PathAndModelSupplier toPathAndModuleSupplier(IncludeAllPageWithPagination page, Locale locale, GlobalToc globalToc, boolean addNumberingToTitles) {
 
     Supplier<Map<String, Object>> supplier = () -> {
           Map<String, Object> additionalModel = new HashMap<>();
@@ -398,8 +474,8 @@ public class IncludeAllPaginator implements Directive {
           additionalModel.put("pagination", page.pagination);
           
           if(PathUtils.isHtml(page.page.outputPath)) {
-            additionalModel.put("summary", htmlSummary(globalToc, page.summaryPositionStart, page.summaryPositionEnd, page.page.outputPath, addNumberingToTitles));
-            additionalModel.put("globalToc", htmlSummary(globalToc, 0, globalToc.size(), page.page.outputPath, addNumberingToTitles));
+            additionalModel.put("summary", globalToc.summary(page.summaryPositionStart, page.summaryPositionEnd, page.page.outputPath));
+            additionalModel.put("globalToc", globalToc.globalToc(page.page.outputPath));
           }
           
           
@@ -443,6 +519,8 @@ public class IncludeAllPaginator implements Directive {
     final Locale locale;
     final Optional<String> title;
     final List<Header> summary;
+    private String content;
+    private HeadingScanner headings;
 
 
     IncludeAllPageWithOutput(IncludeAllPage includeAllPage, FileResource virtualResource,
@@ -453,24 +531,31 @@ public class IncludeAllPaginator implements Directive {
       this.locale = locale;
 
       if(PathUtils.isHtml(outputPath)) {
-        Elements titles = Jsoup.parseBodyFragment(content()).select("h1,h2,h3,h4,h5,h6");
-        this.title = titles.stream().findFirst().map(Element::text);
-        this.summary = titles.stream().map(e -> new Header(headerLevel(e.tagName()), e.text(), e.getElementsByTag("a").attr("name"), outputPath)).collect(Collectors.toList());
+        HeadingScanner scanner = headings();
+        this.title = scanner.getTitle();
+        this.summary = scanner.getHeadings().stream().map(h -> new Header(h.level, h.text, h.id, outputPath)).collect(Collectors.toList());
       } else {
         this.title = Optional.empty();
         this.summary = new ArrayList<>();
       }
     }
 
-    int headerLevel(String name) {
-      return Integer.parseInt(name.substring(1));
+    // the content is rendered only once: it's used for extracting the headings and for the final output
+    String content() {
+      if (content == null) {
+        Map<String, Object> modelForIncludeAllPage = ModelPreparer.prepare(root, configuration, locale, virtualResource, outputPath, taxonomy);
+        content = files.stream()
+            .map(f -> resourceProcessor.apply(locale).apply(f, modelForIncludeAllPage))
+            .map(FileResourceProcessorOutput::getContent).collect(Collectors.joining());
+      }
+      return content;
     }
 
-    String content() {
-      Map<String, Object> modelForIncludeAllPage = ModelPreparer.prepare(root, configuration, locale, virtualResource, outputPath, taxonomy);
-      return files.stream()
-          .map(f -> resourceProcessor.apply(locale).apply(f, modelForIncludeAllPage))
-          .map(FileResourceProcessorOutput::getContent).collect(Collectors.joining());
+    HeadingScanner headings() {
+      if (headings == null) {
+        headings = new HeadingScanner(content());
+      }
+      return headings;
     }
   }
   
@@ -505,25 +590,14 @@ public class IncludeAllPaginator implements Directive {
       this.summaryPositionEnd = summaryPositionEnd;
     }
     
-    String contentWithTransformedHeading(List<HeaderWithPosition> globalToc, boolean addNumberingToTitles) {
+    String contentWithTransformedHeading(GlobalToc globalToc, boolean addNumberingToTitles) {
       
       if (addNumberingToTitles && PathUtils.isHtml(page.outputPath)) {
 
-        List<HeaderWithPosition> summary = globalToc.subList(summaryPositionStart, summaryPositionEnd);
-
-        Document doc = Jsoup.parse(page.content());
-        Elements titles = doc.select("h1,h2,h3,h4,h5,h6");
-        for (int i = 0; i < summary.size() && i < titles.size(); i++) {
-          Element h = titles.get(i);
-          String tocNumber = "<span class=\"stampo-heading-toc-number\">"+ summary.get(i).positions.stream().map(Object::toString).collect(Collectors.joining(".")) + "</span>";
-          if(h.childNodeSize() > 0) {
-            h.childNode(0).before(tocNumber);
-          } else {
-            h.append(tocNumber);
-          }
-        }
+        List<HeaderWithPosition> summary = globalToc.headers.subList(summaryPositionStart, summaryPositionEnd);
 
-        return doc.html();
+        List<String> numbers = summary.stream().map(h -> h.number).collect(Collectors.toList());
+        return page.headings().withNumbering(numbers);
       } else {
         return page.content();
       }
@@ -548,10 +622,12 @@ public class IncludeAllPaginator implements Directive {
   static class HeaderWithPosition extends Header {
     
     final List<Integer> positions;
+    final String number;
 
     HeaderWithPosition(Header header, List<Integer> positions) {
       super(header.level, header.name, header.id, header.outputPath);
       this.positions = positions;
+      this.number = positions.stream().map(Object::toString).collect(Collectors.joining("."));
     }
   }
 
@@ -24,7 +24,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 
-import ch.digitalfondue.stampo.PathUtils;
+import ch.digitalfondue.stampo.KeyedComparator;
 import ch.digitalfondue.stampo.StampoGlobalConfiguration;
 import ch.digitalfondue.stampo.resource.Directory;
 import ch.digitalfondue.stampo.resource.DirectoryResource;
@@ -47,19 +47,20 @@ public class ModelPreparer {
     model.put("locale", locale);
     model.put("resource", resource);
     model.put("metadata", resource.getMetadata());
-    model.put("relativeRootPath", PathUtils.relativePathTo(configuration.getBaseOutputDir(), outputPath));
+    model.put("relativeRootPath", configuration.getUrlResolver().relativeUrl(configuration.getBaseOutputDir(), outputPath));
     model.put("fileResourceOutputPath", outputPath);
     
     if(configuration.getLocales().size() > 1 && !configuration.getDefaultLocale().map(locale::equals).orElse(false)) {
-      model.put("relativeRootPathLocalized", PathUtils.relativePathTo(configuration.getBaseOutputDir().resolve(locale.toLanguageTag()), outputPath));
+      model.put("relativeRootPathLocalized", configuration.getUrlResolver().relativeUrl(configuration.getBaseOutputDir().resolve(locale.toLanguageTag()), outputPath));
     } else {
       model.put("relativeRootPathLocalized", model.get("relativeRootPath"));
     }
     
-    model.put("outputPath", PathUtils.relativePathTo(outputPath, configuration.getBaseOutputDir()));
+    model.put("outputPath", configuration.getUrlResolver().relativeUrlFromDirectory(outputPath, configuration.getBaseOutputDir()));
     model.put("taxonomy", taxonomy);
     
     model.put("data", configuration.getData());
+    model.put("images", configuration.getImages());
     
     model.putAll(additionalData);
     
@@ -71,7 +72,7 @@ public class ModelPreparer {
   
   static Optional<RootResource> staticResources(StampoGlobalConfiguration configuration) {
     if(Files.exists(configuration.getStaticDir())) {
-      Comparator<FileResource> comparator = Comparator.comparing(FileResource::getName, new AlphaNumericStringComparator(Locale.ENGLISH));
+      Comparator<FileResource> comparator = KeyedComparator.comparing(FileResource::getName, new AlphaNumericStringComparator(Locale.ENGLISH));
       ResourceFactory resourceFactory = new ResourceFactory(DirectoryResource::new, StaticFileResource::new, comparator, configuration);
       return Optional.of(new RootResource(resourceFactory, configuration.getStaticDir(), configuration));
     } else {
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo.processor;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.newBufferedWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A file of the output directory, rendered only when {@link #write()} is called.
+ */
+public class PlannedOutput {
+
+  private final Path outputPath;
+  private final Supplier<String> renderer;
+  private boolean written;
+  private Consumer<String> contentListener = content -> {};
+
+  PlannedOutput(Path outputPath, Supplier<String> renderer) {
+    this.outputPath = outputPath;
+    this.renderer = renderer;
+  }
+
+  public Path getOutputPath() {
+    return outputPath;
+  }
+
+  /**
+   * The listener receive the rendered content, before it's written.
+   */
+  public synchronized void setContentListener(Consumer<String> contentListener) {
+    this.contentListener = contentListener;
+  }
+
+  public synchronized boolean isWritten() {
+    return written;
+  }
+
+  /**
+   * Render and write the file. Nothing is done if the file has already been written.
+   */
+  public synchronized void write() {
+    if (written) {
+      return;
+    }
+
+    try {
+      // ensure presence of base directory, before rendering as the relative paths depend on it
+      createDirectories(outputPath.getParent());
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    String content = renderer.get();
+    contentListener.accept(content);
+
+    try (Writer writer =
+        newBufferedWriter(outputPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.WRITE)) {
+      writer.write(content);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    written = true;
+  }
+}
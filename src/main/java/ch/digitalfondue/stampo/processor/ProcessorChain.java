@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo.processor;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import ch.digitalfondue.stampo.StampoGlobalConfiguration;
+import ch.digitalfondue.stampo.resource.FileMetadata;
+import ch.digitalfondue.stampo.resource.FileResource;
+import ch.digitalfondue.stampo.resource.Resource;
+import ch.digitalfondue.stampo.resource.StructuredFileExtension;
+
+/**
+ * The processors applied to the files with the same processor related extensions (e.g. "md" or
+ * "md.peb"): compiled once and shared by all of them.
+ */
+public class ProcessorChain {
+
+  private final List<Function<FileResourceParameters, FileResourceProcessorOutput>> processors;
+
+  private ProcessorChain(List<Function<FileResourceParameters, FileResourceProcessorOutput>> processors) {
+    this.processors = processors;
+  }
+
+  /**
+   * @param processorRelatedExts as returned by {@link StructuredFileExtension#getProcessorRelatedExts()}:
+   *        the last extension first.
+   * @param processors extension -&gt; processor, as registered by the renderers.
+   */
+  public static ProcessorChain compile(List<String> processorRelatedExts,
+      Map<String, Function<FileResourceParameters, FileResourceProcessorOutput>> processors) {
+    List<Function<FileResourceParameters, FileResourceProcessorOutput>> chain = new ArrayList<>(processorRelatedExts.size());
+    for (int i = processorRelatedExts.size() - 1; i >= 0; i--) {
+      chain.add(processors.get(processorRelatedExts.get(i)));
+    }
+    return new ProcessorChain(Collections.unmodifiableList(chain));
+  }
+
+  public FileResourceProcessorOutput apply(FileResource fileResource, Locale locale, Map<String, Object> model) {
+    if (processors.isEmpty()) {
+      return new FileResourceProcessorOutput(fileResource.getContent().orElseThrow(IllegalArgumentException::new), fileResource.getPath(), "none", locale);
+    }
+
+    FileResourceProcessorOutput output = processors.get(0).apply(new FileResourceParameters(fileResource, locale, model));
+    // the next processors read the output of the previous one
+    for (int i = 1; i < processors.size(); i++) {
+      FileResource processed = new ProcessedFileResource(fileResource, Optional.ofNullable(output.getContent()));
+      output = processors.get(i).apply(new FileResourceParameters(processed, locale, model));
+    }
+    return output;
+  }
+
+  private static class ProcessedFileResource implements FileResource {
+    
+
+    private final FileResource fileResource;
+    private final Optional<String> content;
+    
+    ProcessedFileResource(FileResource fileResource, Optional<String> content) {
+      this.fileResource = fileResource;
+      this.content = content;
+    }
+
+    @Override
+    public Resource getParent() {
+      return fileResource.getParent();
+    }
+
+    @Override
+    public Path getPath() {
+      return fileResource.getPath();
+    }
+
+    @Override
+    public StampoGlobalConfiguration getConfiguration() {
+      return fileResource.getConfiguration();
+    }
+
+    @Override
+    public FileMetadata getMetadata() {
+      return fileResource.getMetadata();
+    }
+
+    @Override
+    public Optional<String> getContent() {
+      return content;
+    }
+
+    @Override
+    public StructuredFileExtension getStructuredFileExtension() {
+      return fileResource.getStructuredFileExtension();
+    }
+    
+    @Override
+    public long getFileCreationTime() {
+      return fileResource.getFileCreationTime();
+    }
+    
+  }
+}
@@ -15,14 +15,7 @@
  */
 package ch.digitalfondue.stampo.processor;
 
-import static java.nio.file.Files.createDirectories;
-import static java.nio.file.Files.newBufferedWriter;
-
-import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -76,9 +69,18 @@ public class ResourceProcessor {
             .collect(Collectors.toMap(Directive::name, Function.identity()));
   }
 
-
+  public Path getOutputDir() {
+    return outputDir;
+  }
 
   public void process(FileResource resource, Locale locale, ProcessedInputHandler outputHandler) {
+    plan(resource, locale, outputHandler).forEach(PlannedOutput::write);
+  }
+
+  /**
+   * Generate the output paths of the resource, without rendering it.
+   */
+  public List<PlannedOutput> plan(FileResource resource, Locale locale, ProcessedInputHandler outputHandler) {
 
     FileMetadata metadata = resource.getMetadata();
 
@@ -98,9 +100,12 @@ public class ResourceProcessor {
             defaultOutputPath);
 
     //
-    outputPaths.forEach(outputPathAndModel -> processToPath(resource, outputHandler, finalLocale,
-        outputPathAndModel.getOutputPath(), outputPathAndModel.getModelSupplier()));
-
+    return outputPaths.stream().map(outputPathAndModel -> {
+      Path outputPath = outputPathAndModel.getOutputPath();
+      checkOutputPath(outputPath);
+      return new PlannedOutput(outputPath, () -> render(resource, outputHandler, finalLocale,
+          outputPath, outputPathAndModel.getModelSupplier()));
+    }).collect(Collectors.toList());
   }
 
 
@@ -112,23 +117,16 @@ public class ResourceProcessor {
     return defaultOutputPath;
   }
 
-
-
-  private void processToPath(FileResource resource, ProcessedInputHandler outputHandler,
-      Locale finalLocale, Path outputPath, Supplier<Map<String, Object>> additionalData) {
-    
+  private void checkOutputPath(Path outputPath) {
     if (!outputPath.startsWith(outputDir)) {
       throw new IllegalStateException("output path " + outputPath
           + " must be a child of outputDir: " + outputDir
           + " (override-output-to-path must be a relative path: it must not begin with \"/\")");
     }
+  }
 
-    try {
-      // ensure presence of base directory
-      createDirectories(outputPath.getParent());
-    } catch (IOException e) {
-      throw new IllegalStateException(e);
-    }
+  private String render(FileResource resource, ProcessedInputHandler outputHandler,
+      Locale finalLocale, Path outputPath, Supplier<Map<String, Object>> additionalData) {
 
     Map<String, Object> model =
         ModelPreparer.prepare(root, configuration, finalLocale, resource, outputPath, taxonomy,
@@ -143,12 +141,6 @@ public class ResourceProcessor {
 
     LayoutProcessorOutput processedLayout = layoutProcessor.applyLayout(resource, finalLocale, layoutModel);
 
-    try (Writer writer =
-        newBufferedWriter(outputPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW,
-            StandardOpenOption.WRITE)) {
-      writer.write(outputHandler.apply(processed, processedLayout));
-    } catch (IOException e) {
-      throw new IllegalStateException(e);
-    }
+    return outputHandler.apply(outputPath, processed, processedLayout);
   }
 }
@@ -66,4 +66,9 @@ public class VirtualPathFileResource implements FileResource {
     return fileResource.getStructuredFileExtension();
   }
 
+  @Override
+  public long getFileCreationTime() {
+    return fileResource.getFileCreationTime();
+  }
+
 }
\ No newline at end of file
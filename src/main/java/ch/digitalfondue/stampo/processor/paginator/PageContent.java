@@ -15,11 +15,14 @@
  */
 package ch.digitalfondue.stampo.processor.paginator;
 
+import java.util.function.Supplier;
+
 import ch.digitalfondue.stampo.resource.FileResource;
 
 public class PageContent {
   private final FileResource resource;
-  private final String renderedResource;
+  private Supplier<String> renderer;
+  private String renderedResource;
   private final String relativeUrlToContent;
 
   public PageContent(FileResource resource, String renderedResource, String relativeUrlToContent) {
@@ -28,11 +31,24 @@ public class PageContent {
     this.relativeUrlToContent = relativeUrlToContent;
   }
 
+  /**
+   * The resource will be rendered on the first call of {@link #getRenderedResource()}.
+   */
+  public PageContent(FileResource resource, Supplier<String> renderer, String relativeUrlToContent) {
+    this.resource = resource;
+    this.renderer = renderer;
+    this.relativeUrlToContent = relativeUrlToContent;
+  }
+
   public FileResource getResource() {
     return resource;
   }
 
-  public String getRenderedResource() {
+  public synchronized String getRenderedResource() {
+    if (renderer != null) {
+      renderedResource = renderer.get();
+      renderer = null;
+    }
     return renderedResource;
   }
 
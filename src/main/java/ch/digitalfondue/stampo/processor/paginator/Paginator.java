@@ -23,11 +23,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
-import ch.digitalfondue.stampo.PathUtils;
 import ch.digitalfondue.stampo.StampoGlobalConfiguration;
 import ch.digitalfondue.stampo.processor.FileResourceProcessorOutput;
 import ch.digitalfondue.stampo.processor.ModelPreparer;
@@ -70,17 +70,20 @@ public class Paginator {
     Path basePageDir = defaultOutputPath.getParent().resolve(PAGE_DIRECTORY_NAME);
 
     List<PathAndModelSupplier> outpuPaths = new ArrayList<>();
-    long count = files.size();
+    
+    // each page take a slice of the list, it must be random access
+    List<T> content = files instanceof RandomAccess ? files : new ArrayList<>(files);
+    long count = content.size();
 
     // -1, as we don't count the base page
     long additionalPages = Math.max((count / pageSize + (count % pageSize > 0 ? 1 : 0)) - 1, 0);
 
-    Supplier<Map<String, Object>> indexPageModelSupplier = prepareModelSupplier(1, paginationConf, additionalModel, additionalPages, files, defaultOutputPath, resource, contentMapper.apply(defaultOutputPath));
+    Supplier<Map<String, Object>> indexPageModelSupplier = prepareModelSupplier(1, paginationConf, additionalModel, additionalPages, content, defaultOutputPath, resource, contentMapper.apply(defaultOutputPath));
     outpuPaths.add(new PathAndModelSupplier(defaultOutputPath, indexPageModelSupplier));
 
     for (int i = 0; i < additionalPages; i++) {
       Path pageOutputPath = basePageDir.resolve(pageName(i + 2, resource));
-      Supplier<Map<String, Object>> pageModelSupplier = prepareModelSupplier(i + 2, paginationConf, additionalModel, additionalPages, files, defaultOutputPath, resource, contentMapper.apply(pageOutputPath));
+      Supplier<Map<String, Object>> pageModelSupplier = prepareModelSupplier(i + 2, paginationConf, additionalModel, additionalPages, content, defaultOutputPath, resource, contentMapper.apply(pageOutputPath));
       outpuPaths.add(new PathAndModelSupplier(pageOutputPath, pageModelSupplier));
     }
 
@@ -94,7 +97,9 @@ public class Paginator {
       int pageSize = paginationConf.getPageSize();
       Map<String, Object> model = new HashMap<>();
       model.putAll(additionalModel);
-      List<T1> pageContent = content.stream().skip((currentPage - 1) * pageSize).limit(pageSize).map(contentMapper).collect(toList());
+      int from = (int) Math.min(content.size(), (currentPage - 1) * pageSize);
+      int to = Math.min(content.size(), from + pageSize);
+      List<T1> pageContent = content.subList(from, to).stream().map(contentMapper).collect(toList());
       
       BiFunction<Long, Long, String> paginationFunction = urlPaginationGenerator(defaultOutputPath, fileResource);
       model.put("pagination", new Page<>(currentPage, pageSize, additionalPagesCount + 1, content.size(), paginationFunction, pageContent));
@@ -139,25 +144,16 @@ public class Paginator {
 
   protected PageContent toPageContent(FileResource fileResource, Locale locale, Path pagePath) {
 
-    Map<String, Object> model =
-        ModelPreparer.prepare(root, configuration, locale, fileResource, pagePath, taxonomy);
-
-    FileResourceProcessorOutput processed =
-        resourceProcessor.apply(locale).apply(fileResource, model);
+    // the resource is rendered only if the template use it
+    Supplier<String> renderedResource = () -> {
+      Map<String, Object> model =
+          ModelPreparer.prepare(root, configuration, locale, fileResource, pagePath, taxonomy);
+      return resourceProcessor.apply(locale).apply(fileResource, model).getContent();
+    };
 
     Path outputPath = outputPathExtractor.apply(fileResource);
 
-    //
-    if ("index.html".equals(outputPath.getFileName().toString())) {
-      outputPath = outputPath.getParent();
-    }
-
-    if ("index.html".equals(pagePath.getFileName().toString())) {
-      pagePath = pagePath.getParent();
-    }
-    //
-
-    return new PageContent(fileResource, processed.getContent(), PathUtils.relativePathTo(
+    return new PageContent(fileResource, renderedResource, configuration.getUrlResolver().relativeUrl(
         outputPath, pagePath));
   }
 }
@@ -19,6 +19,7 @@ import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import ch.digitalfondue.stampo.StampoGlobalConfiguration;
@@ -38,6 +39,15 @@ public interface Renderer {
       Directory root,
       StampoGlobalConfiguration configuration,
       Map<String, Function<FileResourceParameters, FileResourceProcessorOutput>> extensionProcessor);
+
+  /**
+   * Register a function that parse a template (a resource or a layout) without rendering it, used
+   * by {@link ch.digitalfondue.stampo.Stampo#check()}. The function must throw a
+   * {@link ch.digitalfondue.stampo.exception.TemplateException} if the template is not valid.
+   */
+  default void registerTemplateValidator(Directory root, StampoGlobalConfiguration configuration,
+      Map<String, Consumer<Path>> extensionValidator) {
+  }
   
   
   List<String> resourceExtensions();
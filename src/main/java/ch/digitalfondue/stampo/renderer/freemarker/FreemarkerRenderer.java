@@ -15,15 +15,16 @@
  */
 package ch.digitalfondue.stampo.renderer.freemarker;
 
+import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.file.Path;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import ch.digitalfondue.stampo.PathUtils;
@@ -50,11 +51,12 @@ public class FreemarkerRenderer implements Renderer {
       Map<String, Function<LayoutParameters, LayoutProcessorOutput>> extensionProcessor) {
 
     Configuration c = getConfiguration(root, configuration);
+    Map<Locale, ResourceBundleModel> messageModels = new ConcurrentHashMap<>();
     extensionProcessor.put("ftl", params -> {
 
       try {
         
-        registerResourceBundleResolver(params.model, params.locale, configuration);
+        registerResourceBundleResolver(params.model, params.locale, configuration, messageModels);
         Template template = c.getTemplate(params.layoutTemplate.get().toString(), params.locale);
         StringWriter sw = new StringWriter();
         template.process(params.model, sw);
@@ -76,11 +78,12 @@ public class FreemarkerRenderer implements Renderer {
       Map<String, Function<FileResourceParameters, FileResourceProcessorOutput>> extensionProcessor) {
 
     Configuration c = getConfiguration(root, configuration);
+    Map<Locale, ResourceBundleModel> messageModels = new ConcurrentHashMap<>();
 
     extensionProcessor.put("ftl", params -> {
       try {
         
-        registerResourceBundleResolver(params.model, params.locale, configuration);
+        registerResourceBundleResolver(params.model, params.locale, configuration, messageModels);
         Template template = c.getTemplate(params.fileResource.getPath().toString(), params.locale);
         StringWriter sw = new StringWriter();
         template.process(params.model, sw);
@@ -93,8 +96,24 @@ public class FreemarkerRenderer implements Renderer {
     });
   }
   
-  private static void registerResourceBundleResolver(Map<String, Object> model, Locale locale, StampoGlobalConfiguration configuration) {
-    model.put("message", new ResourceBundleModel(ResourceBundle.getBundle("messages", locale, configuration.getResourceBundleControl()), new BeansWrapperBuilder(Configuration.VERSION_2_3_22).build()));
+  @Override
+  public void registerTemplateValidator(Directory root, StampoGlobalConfiguration configuration,
+      Map<String, Consumer<Path>> extensionValidator) {
+    Configuration c = getConfiguration(root, configuration);
+    extensionValidator.put("ftl", path -> {
+      try {
+        // the localized lookup is disabled, the locale is not relevant
+        c.getTemplate(path.toString(), Locale.ENGLISH);
+      } catch (IOException e) {
+        throw new TemplateException(path, e);
+      }
+    });
+  }
+
+  // the model keep his own cache of compiled MessageFormat, thus it's shared between the templates
+  private static void registerResourceBundleResolver(Map<String, Object> model, Locale locale, StampoGlobalConfiguration configuration,
+      Map<Locale, ResourceBundleModel> messageModels) {
+    model.put("message", messageModels.computeIfAbsent(locale, l -> new ResourceBundleModel(configuration.getMessageSource().getBundle("messages", l), new BeansWrapperBuilder(Configuration.VERSION_2_3_22).build())));
     
     TemplateMethodModelEx messageWithBundle = (arguments) -> {
       if (arguments.size() < 2) {
@@ -110,9 +129,7 @@ public class FreemarkerRenderer implements Renderer {
         parameters.add(arguments.get(i));
       }
       
-      return MessageFormat.format(
-          ResourceBundle.getBundle(bundleName, locale, configuration.getResourceBundleControl()).getString(code),
-          parameters.toArray());
+      return configuration.getMessageSource().getMessage(bundleName, locale, code, parameters.toArray());
     };
     
     model.put("messageWithBundle", messageWithBundle);
@@ -131,6 +148,13 @@ public class FreemarkerRenderer implements Renderer {
     };
     
     model.put("switchToLocale", switchToLocale);
+    
+    TemplateMethodModelEx asset = (arguments) -> {
+      Path fileResourceOutputPath = (Path) model.get("fileResourceOutputPath");
+      return PathUtils.asset(arguments.get(0).toString(), fileResourceOutputPath, configuration);
+    };
+    
+    model.put("asset", asset);
   }
 
   private static Configuration getConfiguration(Directory root,
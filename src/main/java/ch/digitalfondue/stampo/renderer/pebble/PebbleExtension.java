@@ -16,7 +16,6 @@
 package ch.digitalfondue.stampo.renderer.pebble;
 
 import java.nio.file.Path;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -24,11 +23,10 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.ResourceBundle;
-import java.util.ResourceBundle.Control;
 
 import ch.digitalfondue.stampo.PathUtils;
 import ch.digitalfondue.stampo.StampoGlobalConfiguration;
+import ch.digitalfondue.stampo.i18n.MessageSource;
 
 import com.mitchellbosecke.pebble.extension.AbstractExtension;
 import com.mitchellbosecke.pebble.extension.Function;
@@ -50,6 +48,7 @@ class PebbleExtension extends AbstractExtension {
     f.put("fromMap", new FromMapFunction());
     f.put("defaultOrLocale", new DefaultOrLocale());
     f.put("switchToLocale", new SwitchToLocale());
+    f.put("asset", new Asset());
     return f;
   }
   
@@ -71,6 +70,23 @@ class PebbleExtension extends AbstractExtension {
     }
   }
   
+  private static final class Asset implements Function {
+
+    @Override
+    public List<String> getArgumentNames() {
+      return Arrays.asList("path");
+    }
+
+    @Override
+    public Object execute(Map<String, Object> args) {
+      String path = (String) args.get("path");
+      EvaluationContext context = (EvaluationContext) args.get("_context");
+      StampoGlobalConfiguration conf = (StampoGlobalConfiguration) context.get("configuration");
+      Path fileResourceOutputPath = (Path) context.get("fileResourceOutputPath");
+      return PathUtils.asset(path, fileResourceOutputPath, conf);
+    }
+  }
+  
   private static final class DefaultOrLocale implements Function {
     @Override
     public List<String> getArgumentNames() {
@@ -106,11 +122,11 @@ class PebbleExtension extends AbstractExtension {
 
   private static final class MessageFunction implements Function {
 
-    private final Control control;
+    private final MessageSource messageSource;
     private final Optional<String> bundle;
 
     public MessageFunction(StampoGlobalConfiguration configuration, Optional<String> bundle) {
-      this.control = configuration.getResourceBundleControl();
+      this.messageSource = configuration.getMessageSource();
       this.bundle = bundle;
     }
 
@@ -135,9 +151,7 @@ class PebbleExtension extends AbstractExtension {
       EvaluationContext context = (EvaluationContext) args.get("_context");
       Locale locale = context.getLocale();
 
-      return MessageFormat.format(
-          ResourceBundle.getBundle(bundleName, locale, control).getString(code),
-          parameters.toArray());
+      return messageSource.getMessage(bundleName, locale, code, parameters.toArray());
     }
 
   }
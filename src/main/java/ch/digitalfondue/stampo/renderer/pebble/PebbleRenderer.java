@@ -18,9 +18,11 @@ package ch.digitalfondue.stampo.renderer.pebble;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import ch.digitalfondue.stampo.StampoGlobalConfiguration;
@@ -88,6 +90,21 @@ public class PebbleRenderer implements Renderer {
 
 
 
+  @Override
+  public void registerTemplateValidator(Directory root, StampoGlobalConfiguration configuration,
+      Map<String, Consumer<Path>> extensionValidator) {
+    PebbleEngine pebble = build(root, configuration);
+    extensionValidator.put("peb", path -> {
+      try {
+        pebble.getTemplate(path.toString());
+      } catch (PebbleException e) {
+        throw new TemplateException(path, e);
+      }
+    });
+  }
+
+
+
   @Override
   public List<String> resourceExtensions() {
     return Collections.singletonList("peb");
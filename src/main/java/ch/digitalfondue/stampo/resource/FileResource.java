@@ -58,6 +58,13 @@ public interface FileResource extends Resource {
   }
   
   default long getCreationTime() {
-    return getMetadata().getDate().map(Date::getTime).orElseGet(() -> Resource.super.getCreationTime());
+    return getMetadata().getDate().map(Date::getTime).orElseGet(this::getFileCreationTime);
+  }
+  
+  /**
+   * Creation time from the file attributes, ignoring the date defined in the metadata.
+   */
+  default long getFileCreationTime() {
+    return Resource.super.getCreationTime();
   }
 }
@@ -19,13 +19,11 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,13 +41,21 @@ public class FileResourceWithMetadataSection implements FileResource {
 
   // caching the metadata, as this section is small
   private final FileMetadata metadata;
+  
+  // from the attributes read when listing the directory, or lazily
+  private Long fileCreationTime;
 
   public FileResourceWithMetadataSection(StampoGlobalConfiguration configuration, Path path, Resource parent) {
+    this(configuration, path, parent, null);
+  }
+  
+  public FileResourceWithMetadataSection(StampoGlobalConfiguration configuration, Path path, Resource parent, BasicFileAttributes attributes) {
     this.configuration = configuration;
     this.path = path;
     this.parent = parent;
     this.metadata = new FileMetadata(readContent(ReadMode.ONLY_METADATA).metadata);
     this.structuredFileExtension = classifyFileExtension();
+    this.fileCreationTime = attributes != null ? attributes.creationTime().toMillis() : null;
   }
 
   public FileResourceWithMetadataSection(FileResource fileResource, Resource parent) {
@@ -58,6 +64,15 @@ public class FileResourceWithMetadataSection implements FileResource {
     this.parent = parent;
     this.metadata = fileResource.getMetadata();
     this.structuredFileExtension = fileResource.getStructuredFileExtension();
+    this.fileCreationTime = fileResource instanceof FileResourceWithMetadataSection ? ((FileResourceWithMetadataSection) fileResource).fileCreationTime : null;
+  }
+  
+  @Override
+  public long getFileCreationTime() {
+    if (fileCreationTime == null) {
+      fileCreationTime = FileResource.super.getFileCreationTime();
+    }
+    return fileCreationTime;
   }
 
   @Override
@@ -155,38 +170,8 @@ public class FileResourceWithMetadataSection implements FileResource {
  
   /* given a list of extensions, return a structured view */
   private StructuredFileExtension classifyFileExtension() {
-    List<String> exts = getFileExtensions();
-    Collections.reverse(exts);
-    //
-    
-    List<String> processorRelated = takeWhile(exts, configuration.getProcessorResourceExtensions()::contains);
-    
-    //e.g. : md -> html mapping is present 
-    Optional<String> processorFileExtensionOverride = processorRelated.stream().findFirst().map(configuration.getProcessorExtensionTransformMapping()::get);
-    
-    List<String> afterProcessorRelated = exts.subList(processorRelated.size(), exts.size());
-    
-    // if the next token does not match a locale, it's possibly a file extension
-    Optional<String> maybeFileExtension = afterProcessorRelated.stream().findFirst().filter(ext -> !configuration.getLocalesAsString().contains(ext));
-    
-    List<String> afterMaybeFileExtension = afterProcessorRelated.subList(maybeFileExtension.isPresent() ? 1 : 0, afterProcessorRelated.size());
-    List<String> locales = takeWhile(afterMaybeFileExtension, (ext -> configuration.getLocalesAsString().contains(ext)));
-    List<String> afterLocales = new ArrayList<>(afterMaybeFileExtension.subList(locales.size(), afterMaybeFileExtension.size()));
-    Collections.reverse(afterLocales);
-    
-    return new StructuredFileExtension(processorRelated, processorFileExtensionOverride, maybeFileExtension, new HashSet<>(locales), afterLocales);
-  }
-
-  private static <T> List<T> takeWhile(List<T> l, Predicate<T> pred) {
-    List<T> r = new ArrayList<>(l.size());
-    for (T i : l) {
-      if(pred.test(i)) {
-        r.add(i);
-      } else {
-        return r;
-      }
-    }
-    return r;
+    String fileName = path.getFileName().toString();
+    return configuration.getStructuredFileExtension(fileName.substring(getFileNameWithoutExtensions().length()));
   }
 
   @Override
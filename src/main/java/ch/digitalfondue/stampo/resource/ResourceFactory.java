@@ -16,6 +16,7 @@
 package ch.digitalfondue.stampo.resource;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Comparator;
 
 import ch.digitalfondue.stampo.StampoGlobalConfiguration;
@@ -41,9 +42,9 @@ public class ResourceFactory {
     return directorySupplier.get(this, path, parent, configuration);
   }
 
-  public FileResource fileResource(Path path, Resource parent) {
+  public FileResource fileResource(Path path, Resource parent, BasicFileAttributes attributes) {
     
-    return fileResourceSupplier.get(configuration, path, parent);
+    return fileResourceSupplier.get(configuration, path, parent, attributes);
   }
 
   @FunctionalInterface
@@ -51,9 +52,12 @@ public class ResourceFactory {
     Directory get(ResourceFactory factory, Path path, Resource parent, StampoGlobalConfiguration configuration);
   }
 
+  /**
+   * The attributes are the ones read while listing the directory: they are passed for avoiding to read them again.
+   */
   @FunctionalInterface
   public interface FileResourceSupplier {
-    FileResource get(StampoGlobalConfiguration configuration, Path path, Resource parent);
+    FileResource get(StampoGlobalConfiguration configuration, Path path, Resource parent, BasicFileAttributes attributes);
   }
 
   public Comparator<FileResource> getFileResourceComparator() {
@@ -17,20 +17,23 @@ package ch.digitalfondue.stampo.resource;
 
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
-import java.nio.file.DirectoryStream.Filter;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
+import ch.digitalfondue.stampo.KeyedComparator;
 import ch.digitalfondue.stampo.StampoGlobalConfiguration;
 
 public class RootResource implements Resource, Directory {
@@ -51,23 +54,40 @@ public class RootResource implements Resource, Directory {
     return pathMatchers.stream().anyMatch(m -> fs.getPathMatcher(m).matches(p.getFileName()));
   }
 
-  private <T extends Resource> Map<String, T> fromDirectoryStream(Filter<Path> filter, Function<Path, T> mapper, Comparator<T> comparator) {
+  /*
+   * The attributes of each entry are read only once: they are used for filtering and then passed to
+   * the resource, so the sorting by creation time will not need to access the file system again.
+   */
+  private <T extends Resource> Map<String, T> fromDirectoryStream(BiPredicate<Path, BasicFileAttributes> filter, BiFunction<Path, BasicFileAttributes, T> mapper, Comparator<T> comparator) {
     
-    //linkedhashmap as we want to preserve the insertion order
-    try (DirectoryStream<Path> dirs = Files.newDirectoryStream(path, filter)) {
-      return StreamSupport.stream(dirs.spliterator(), false)
-            .map(mapper)
-            .sorted(comparator)
-            .collect(Collectors.toMap(Resource::getName, Function.identity(), (k, v) -> {throw new IllegalStateException("duplicate key " + k);}, LinkedHashMap::new));
+    List<T> resources = new ArrayList<>();
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+      for (Path p : entries) {
+        readAttributes(p).filter(attributes -> filter.test(p, attributes)).ifPresent(attributes -> resources.add(mapper.apply(p, attributes)));
+      }
     } catch (IOException e) {
       throw new IllegalStateException(e);
     }
+    
+    KeyedComparator.sort(resources, comparator);
+    //linkedhashmap as we want to preserve the insertion order
+    return resources.stream()
+          .collect(Collectors.toMap(Resource::getName, Function.identity(), (k, v) -> {throw new IllegalStateException("duplicate key " + k);}, LinkedHashMap::new));
+  }
+  
+  // as Files.isRegularFile/isDirectory: the links are followed and a unreadable entry is neither a file or a directory
+  private static Optional<BasicFileAttributes> readAttributes(Path p) {
+    try {
+      return Optional.of(Files.readAttributes(p, BasicFileAttributes.class));
+    } catch (IOException e) {
+      return Optional.empty();
+    }
   }
 
   public Map<String, FileResource> getFiles() {
     Map<String, FileResource> files = fromDirectoryStream(
-        p -> Files.isRegularFile(p) && !mustBeIgnored(p, resourceFactory.getConfiguration().getIgnorePatterns()), 
-        p -> resourceFactory.fileResource(p, this), 
+        (p, attributes) -> attributes.isRegularFile() && !mustBeIgnored(p, resourceFactory.getConfiguration().getIgnorePatterns()), 
+        (p, attributes) -> resourceFactory.fileResource(p, this, attributes), 
         resourceFactory.getFileResourceComparator());
     
     if(configuration.hideDraft()) {
@@ -86,7 +106,7 @@ public class RootResource implements Resource, Directory {
 
   public Map<String, Directory> getDirectories() {
     
-    return fromDirectoryStream(Files::isDirectory, p -> resourceFactory.directory(p, this), Comparator.comparing(Directory::getName));
+    return fromDirectoryStream((p, attributes) -> attributes.isDirectory(), (p, attributes) -> resourceFactory.directory(p, this), KeyedComparator.comparing(Directory::getName, Comparator.naturalOrder()));
     
   }
 
@@ -16,6 +16,7 @@
 package ch.digitalfondue.stampo.resource;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collections;
 import java.util.Optional;
 
@@ -27,12 +28,28 @@ public class StaticFileResource implements FileResource {
   private final Path path;
   private final Resource parent;
   private final StructuredFileExtension structuredFileExtension;
+  
+  // from the attributes read when listing the directory, or lazily
+  private Long fileCreationTime;
 
   public StaticFileResource(StampoGlobalConfiguration configuration, Path path, Resource parent) {
+    this(configuration, path, parent, null);
+  }
+  
+  public StaticFileResource(StampoGlobalConfiguration configuration, Path path, Resource parent, BasicFileAttributes attributes) {
     this.configuration = configuration;
     this.path = path;
     this.parent = parent;
     this.structuredFileExtension = new StructuredFileExtension(Collections.emptyList(), Optional.empty(), Optional.empty(), Collections.emptySet(), getFileExtensions());
+    this.fileCreationTime = attributes != null ? attributes.creationTime().toMillis() : null;
+  }
+  
+  @Override
+  public long getFileCreationTime() {
+    if (fileCreationTime == null) {
+      fileCreationTime = FileResource.super.getFileCreationTime();
+    }
+    return fileCreationTime;
   }
 
   @Override
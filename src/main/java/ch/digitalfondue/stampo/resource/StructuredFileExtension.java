@@ -15,11 +15,21 @@
  */
 package ch.digitalfondue.stampo.resource;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import ch.digitalfondue.stampo.StampoGlobalConfiguration;
+
+/**
+ * The extensions of a file, classified as described in FileResourceProcessor.finalOutputName.
+ * Immutable: the instances are shared by the files with the same extensions, see
+ * {@link StampoGlobalConfiguration#getStructuredFileExtension(String)}.
+ */
 public class StructuredFileExtension {
   
   private final List<String> processorRelatedExts;
@@ -32,12 +42,48 @@ public class StructuredFileExtension {
   public StructuredFileExtension(List<String> processorRelatedExts,
       Optional<String> processorFileExtensionOverride,
       Optional<String> maybeFileExtension, Set<String> locales, List<String> rest) {
-    this.processorRelatedExts = processorRelatedExts;
+    this.processorRelatedExts = Collections.unmodifiableList(new ArrayList<>(processorRelatedExts));
     this.processorFileExtensionOverride = processorFileExtensionOverride;
     this.maybeFileExtension = maybeFileExtension;
-    this.locales = locales;
+    this.locales = Collections.unmodifiableSet(new HashSet<>(locales));
     this.rest = rest.stream().collect(Collectors.joining("."));
   }
+
+  /**
+   * Classify the extensions of a file name (e.g. ".en.html.peb" for "index.en.html.peb"), reading
+   * them from the back to the front.
+   */
+  public static StructuredFileExtension classify(String extensions, StampoGlobalConfiguration configuration) {
+    List<String> exts = new ArrayList<>();
+    for (String ext : extensions.split("\\.")) {
+      if (ext.length() > 0) {
+        exts.add(ext);
+      }
+    }
+
+    int i = exts.size() - 1;
+
+    List<String> processorRelated = new ArrayList<>();
+    for (; i >= 0 && configuration.getProcessorResourceExtensions().contains(exts.get(i)); i--) {
+      processorRelated.add(exts.get(i));
+    }
+
+    //e.g. : md -> html mapping is present 
+    Optional<String> processorFileExtensionOverride = processorRelated.stream().findFirst().map(configuration.getProcessorExtensionTransformMapping()::get);
+
+    // if the next token does not match a locale, it's possibly a file extension
+    Optional<String> maybeFileExtension = Optional.empty();
+    if (i >= 0 && !configuration.getLocalesAsString().contains(exts.get(i))) {
+      maybeFileExtension = Optional.of(exts.get(i--));
+    }
+
+    Set<String> locales = new HashSet<>();
+    for (; i >= 0 && configuration.getLocalesAsString().contains(exts.get(i)); i--) {
+      locales.add(exts.get(i));
+    }
+
+    return new StructuredFileExtension(processorRelated, processorFileExtensionOverride, maybeFileExtension, locales, exts.subList(0, i + 1));
+  }
   
   public String getFinalFileExtension() {
     String finalExt = processorFileExtensionOverride.orElseGet(() -> maybeFileExtension.orElse(""));
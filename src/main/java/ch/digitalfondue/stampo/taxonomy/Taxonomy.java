@@ -15,65 +15,98 @@
  */
 package ch.digitalfondue.stampo.taxonomy;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.TreeMap;
 
+import ch.digitalfondue.stampo.KeyedComparator;
 import ch.digitalfondue.stampo.resource.Directory;
 import ch.digitalfondue.stampo.resource.FileResource;
 
+/**
+ * Index of the files grouped by the configured taxonomies.
+ *
+ * All the files are kept in a single table sorted with the file sorter, so a file is identified by
+ * its position in the table. For each taxonomy value, the postings are the sorted array of the ids
+ * of the files that have it: the order of the ids is the order of the files, and the queries can
+ * be done by merging the arrays.
+ */
 public class Taxonomy {
 
-  private final Map<String, Map<String, List<FileResource>>> groups;
+  private static final int[] EMPTY = new int[0];
+
   private final Set<String> groupingProperties;
   private final Comparator<FileResource> fileSorter;
 
-  public Taxonomy(Set<String> groupingProperties, Comparator<FileResource> fileSorter) {
-    this.groups = new HashMap<>();
+  private FileResource[] table = new FileResource[0];
+  private final Map<String, Map<String, int[]>> postings = new HashMap<>();
+  private final Map<String, Map<String, List<FileResource>>> groups = new HashMap<>();
+  private final Map<String, Map<String, Integer>> counts = new HashMap<>();
+
+  /**
+   * Index the files of all the given directories and their sub directories. The roots are passed
+   * all together, so the files are sorted and indexed once.
+   */
+  public Taxonomy(Set<String> groupingProperties, Comparator<FileResource> fileSorter, List<Directory> roots) {
     this.groupingProperties = groupingProperties;
     this.fileSorter = fileSorter;
-    
-    groupingProperties.forEach(group -> groups.put(group, new TreeMap<>()));
-  }
-
-  public void add(Directory directory) {
-    generateGroups(directory);
-    groups.forEach((k, m) -> m.forEach((ignore, l) ->  Collections.sort(l, fileSorter)));
+    List<FileResource> files = new ArrayList<>();
+    roots.forEach(root -> collectFiles(root, files));
+    index(files);
   }
 
-  private void generateGroups(Directory dir) {
-    dir.getFiles().values().forEach(this::addToGroups);
-    dir.getDirectories().values().forEach(this::generateGroups);
+  private static void collectFiles(Directory dir, List<FileResource> files) {
+    files.addAll(dir.getFiles().values());
+    dir.getDirectories().values().forEach(d -> collectFiles(d, files));
   }
 
-  @SuppressWarnings("unchecked")
-  private void addToGroups(FileResource file) {
+  private void index(List<FileResource> files) {
+    
+    // stable sort: the files that are equals for the sorter keep the order in which they have been found
+    KeyedComparator.sort(files, fileSorter);
+    table = files.toArray(new FileResource[files.size()]);
 
-    Map<String, Object> m = file.getMetadata().getRawMap();
     for (String prop : groupingProperties) {
-      if (m.containsKey(prop) && m.get(prop) != null) {
-        Object val = m.get(prop);
-        Collection<Object> vals;
-        if (val instanceof Collection) {
-          vals = (Collection<Object>) val;
-        } else {
-          vals = Collections.singleton(val);
-        }
-
-        for (Object v : vals) {
-          String key = v.toString();
-          if(!groups.get(prop).containsKey(key)) {
-            groups.get(prop).put(key, new ArrayList<>());
-          }
-          groups.get(prop).get(key).add(file);
+      Map<String, IntList> ids = new TreeMap<>();
+      for (int id = 0; id < table.length; id++) {
+        for (Object v : values(table[id], prop)) {
+          ids.computeIfAbsent(v.toString(), k -> new IntList()).add(id);
         }
       }
+
+      Map<String, int[]> propPostings = new TreeMap<>();
+      Map<String, List<FileResource>> propGroups = new TreeMap<>();
+      Map<String, Integer> propCounts = new TreeMap<>();
+      ids.forEach((value, l) -> {
+        int[] p = l.toArray();
+        propPostings.put(value, p);
+        propGroups.put(value, new Files(table, p, p.length));
+        propCounts.put(value, p.length);
+      });
+      postings.put(prop, propPostings);
+      groups.put(prop, Collections.unmodifiableMap(propGroups));
+      counts.put(prop, Collections.unmodifiableMap(propCounts));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Collection<Object> values(FileResource file, String prop) {
+    Object val = file.getMetadata().getRawMap().get(prop);
+    if (val == null) {
+      return Collections.emptyList();
+    } else if (val instanceof Collection) {
+      return (Collection<Object>) val;
+    } else {
+      return Collections.singleton(val);
     }
   }
 
@@ -84,4 +117,174 @@ public class Taxonomy {
   public Comparator<FileResource> getFileSorter() {
     return fileSorter;
   }
+
+  /**
+   * The number of files for each value of the given taxonomy.
+   */
+  public Map<String, Integer> getCounts(String taxonomy) {
+    return counts.getOrDefault(taxonomy, Collections.emptyMap());
+  }
+
+  public int count(String taxonomy, Object value) {
+    return postings(taxonomy, value).length;
+  }
+
+  /**
+   * The first files, in the order defined by the file sorter, that have the given value.
+   */
+  public List<FileResource> top(String taxonomy, Object value, Number limit) {
+    int[] p = postings(taxonomy, value);
+    return new Files(table, p, Math.min(p.length, limit(limit)));
+  }
+
+  /**
+   * The files that have all the given values.
+   */
+  public List<FileResource> intersection(String taxonomy, Collection<?> values) {
+    return intersection(taxonomy, values, Integer.MAX_VALUE);
+  }
+
+  /**
+   * The first files that have all the given values. The shortest postings are iterated and the
+   * search in the others is done with a galloping search, so the cost is mostly bound to the size
+   * of the result.
+   */
+  public List<FileResource> intersection(String taxonomy, Collection<?> values, Number limit) {
+    int max = limit(limit);
+    if (values.isEmpty() || max == 0) {
+      return Collections.emptyList();
+    }
+
+    int[][] lists = values.stream().map(v -> postings(taxonomy, v)).toArray(int[][]::new);
+    Arrays.sort(lists, Comparator.comparingInt(l -> l.length));
+
+    int[] shortest = lists[0];
+    int[] positions = new int[lists.length];
+    int[] res = new int[Math.min(shortest.length, max)];
+    int size = 0;
+
+    candidates:
+    for (int i = 0; i < shortest.length && size < max; i++) {
+      int id = shortest[i];
+      for (int j = 1; j < lists.length; j++) {
+        int pos = gallop(lists[j], positions[j], id);
+        positions[j] = pos;
+        if (pos == lists[j].length) {
+          break candidates;
+        } else if (lists[j][pos] != id) {
+          continue candidates;
+        }
+      }
+      res[size++] = id;
+    }
+    return new Files(table, res, size);
+  }
+
+  /**
+   * The files that have at least one of the given values.
+   */
+  public List<FileResource> union(String taxonomy, Collection<?> values) {
+    return union(taxonomy, values, Integer.MAX_VALUE);
+  }
+
+  /**
+   * The first files that have at least one of the given values: the postings are merged until the
+   * limit is reached.
+   */
+  public List<FileResource> union(String taxonomy, Collection<?> values, Number limit) {
+    int max = limit(limit);
+    int[][] lists = values.stream().map(v -> postings(taxonomy, v)).filter(l -> l.length > 0).toArray(int[][]::new);
+    int[] positions = new int[lists.length];
+    IntList res = new IntList();
+
+    while (res.size < max) {
+      int min = Integer.MAX_VALUE;
+      for (int j = 0; j < lists.length; j++) {
+        if (positions[j] < lists[j].length) {
+          min = Math.min(min, lists[j][positions[j]]);
+        }
+      }
+      if (min == Integer.MAX_VALUE) {
+        break;
+      }
+      res.add(min);
+      for (int j = 0; j < lists.length; j++) {
+        if (positions[j] < lists[j].length && lists[j][positions[j]] == min) {
+          positions[j]++;
+        }
+      }
+    }
+    return new Files(table, res.values, res.size);
+  }
+
+  private int[] postings(String taxonomy, Object value) {
+    if (value == null) {
+      return EMPTY;
+    }
+    return postings.getOrDefault(taxonomy, Collections.emptyMap()).getOrDefault(value.toString(), EMPTY);
+  }
+
+  private static int limit(Number limit) {
+    return limit == null ? Integer.MAX_VALUE : (int) Math.max(0, Math.min(Integer.MAX_VALUE, limit.longValue()));
+  }
+
+  // first position >= from where the value is >= id
+  private static int gallop(int[] l, int from, int id) {
+    int step = 1;
+    int low = from;
+    int high = from;
+    while (high < l.length && l[high] < id) {
+      low = high + 1;
+      high += step;
+      step <<= 1;
+    }
+    high = Math.min(high, l.length - 1);
+    if (low > high) {
+      return low;
+    }
+    int pos = Arrays.binarySearch(l, low, high + 1, id);
+    return pos >= 0 ? pos : -pos - 1;
+  }
+
+  private static class IntList {
+    int[] values = new int[4];
+    int size;
+
+    void add(int v) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = v;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+
+  // view over a list of ids
+  private static class Files extends AbstractList<FileResource> implements RandomAccess {
+    private final FileResource[] table;
+    private final int[] ids;
+    private final int size;
+
+    Files(FileResource[] table, int[] ids, int size) {
+      this.table = table;
+      this.ids = ids;
+      this.size = size;
+    }
+
+    @Override
+    public FileResource get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException(Integer.toString(index));
+      }
+      return table[ids[index]];
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
 }
@@ -16,13 +16,131 @@
 (function() {
 	'use strict';
 
-    if (window.WebSocket) {
-        var socket = new WebSocket("ws://" + window.location.host + "/stampo-reload");
-        socket.onmessage = function (event) {
-        	if (event.data === 'change') {
-        		window.location.reload();
-        	}
-        };
-    }
-	
+	// the server send {"changed": [paths], "body": "..."}: the paths of the files loaded from the
+	// server that have been modified by the last build. If only the body of the current page
+	// changed, his new content is sent too.
+
+	function pathOf(url) {
+		var a = document.createElement('a');
+		a.href = url;
+		return a.pathname;
+	}
+
+	function isCurrentPage(path) {
+		var current = window.location.pathname;
+		return path === current || path === current + 'index.html' || path + 'index.html' === current;
+	}
+
+	function withCacheBuster(url) {
+		var u = url.replace(/[?&]stampo-reload=\d+$/, '');
+		return u + (u.indexOf('?') === -1 ? '?' : '&') + 'stampo-reload=' + new Date().getTime();
+	}
+
+	function elementsWithPath(selector, attribute, path) {
+		return Array.prototype.filter.call(document.querySelectorAll(selector), function(e) {
+			return pathOf(e.getAttribute(attribute)) === path;
+		});
+	}
+
+	function reloadStylesheets(links) {
+		links.forEach(function(link) {
+			link.setAttribute('href', withCacheBuster(link.getAttribute('href')));
+		});
+	}
+
+	function isSameNode(a, b) {
+		return a.nodeType === b.nodeType && a.nodeName === b.nodeName
+			&& (a.nodeType !== 1 || a.getAttribute('id') === b.getAttribute('id'));
+	}
+
+	function morphAttributes(from, to) {
+		var i, attr;
+		for (i = from.attributes.length - 1; i >= 0; i--) {
+			attr = from.attributes[i];
+			if (!to.hasAttribute(attr.name)) {
+				from.removeAttribute(attr.name);
+			}
+		}
+		for (i = 0; i < to.attributes.length; i++) {
+			attr = to.attributes[i];
+			if (from.getAttribute(attr.name) !== attr.value) {
+				from.setAttribute(attr.name, attr.value);
+			}
+		}
+	}
+
+	// update the children of "from" in place, so the scroll position and the unchanged elements
+	// are kept
+	function morphChildren(from, to) {
+		var toChildren = Array.prototype.slice.call(to.childNodes);
+		toChildren.forEach(function(t, idx) {
+			var f = from.childNodes[idx];
+			if (!f) {
+				from.appendChild(document.importNode(t, true));
+			} else if (!isSameNode(f, t)) {
+				from.replaceChild(document.importNode(t, true), f);
+			} else if (t.nodeType === 1) {
+				morphAttributes(f, t);
+				morphChildren(f, t);
+			} else if (f.nodeValue !== t.nodeValue) {
+				f.nodeValue = t.nodeValue;
+			}
+		});
+		while (from.childNodes.length > toChildren.length) {
+			from.removeChild(from.lastChild);
+		}
+	}
+
+	// return false if the page must be reloaded
+	function updateBody(body) {
+		if (typeof body !== 'string') {
+			return false;
+		}
+		var container = document.createElement('div');
+		container.innerHTML = body;
+		morphChildren(document.body, container);
+		return true;
+	}
+
+	function applyChanges(changed, body) {
+		var needsReload = changed.some(function(path) {
+			return (isCurrentPage(path) && !updateBody(body)) || elementsWithPath('script[src]', 'src', path).length > 0;
+		});
+		if (needsReload) {
+			window.location.reload();
+			return;
+		}
+
+		var unknownAsset = false;
+		changed.forEach(function(path) {
+			var links = elementsWithPath('link[rel="stylesheet"][href]', 'href', path);
+			var images = elementsWithPath('img[src]', 'src', path);
+			reloadStylesheets(links);
+			images.forEach(function(img) {
+				img.setAttribute('src', withCacheBuster(img.getAttribute('src')));
+			});
+			// other pages are ignored
+			if (links.length === 0 && images.length === 0 && !/(\/|\.html?)$/.test(path)) {
+				unknownAsset = true;
+			}
+		});
+
+		// may be referenced by a stylesheet (font, background image, @import...)
+		if (unknownAsset) {
+			reloadStylesheets(Array.prototype.slice.call(document.querySelectorAll('link[rel="stylesheet"][href]')));
+		}
+	}
+
+	if (window.WebSocket) {
+		var socket = new WebSocket("ws://" + window.location.host + "/stampo-reload");
+		socket.onopen = function() {
+			// the server will send the new content of this page
+			socket.send(window.location.pathname);
+		};
+		socket.onmessage = function (event) {
+			var message = JSON.parse(event.data);
+			applyChanges(message.changed, message.body);
+		};
+	}
+
 })();
\ No newline at end of file
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.write;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.digitalfondue.stampo.TestUtils.InputOutputDirs;
+
+public class AssetFingerprintsTest {
+
+  private static void createFiles(InputOutputDirs iod, String configuration) throws IOException {
+    Path staticDir = iod.inputDir.resolve("static");
+    createDirectories(staticDir.resolve("css"));
+    write(staticDir.resolve("css/site.css"), "body{}".getBytes(StandardCharsets.UTF_8));
+    write(staticDir.resolve("robots.txt"), "".getBytes(StandardCharsets.UTF_8));
+    write(iod.inputDir.resolve("content/index.html.peb"), "{{asset('css/site.css')}}|{{asset('robots.txt')}}".getBytes(StandardCharsets.UTF_8));
+    write(iod.inputDir.resolve("content/post.html.ftl"), "${asset('css/site.css')}".getBytes(StandardCharsets.UTF_8));
+    write(iod.inputDir.resolve("configuration.yaml"), configuration.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void fingerprintedAssets() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod, "fingerprint-assets: true");
+      String hash = PathUtils.sha256(iod.inputDir.resolve("static/css/site.css")).substring(0, 10);
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      Assert.assertEquals("css/site." + hash + ".css|robots.txt", TestUtils.fileOutputAsString(iod, "index.html"));
+      Assert.assertEquals("../css/site." + hash + ".css", TestUtils.fileOutputAsString(iod, "post/index.html"));
+      Assert.assertEquals("body{}", TestUtils.fileOutputAsString(iod, "css/site." + hash + ".css"));
+      Assert.assertEquals("body{}", TestUtils.fileOutputAsString(iod, "css/site.css"));
+      Assert.assertEquals("{\n\"css/site.css\":\"css/site." + hash + ".css\"\n}\n", TestUtils.fileOutputAsString(iod, AssetFingerprints.MANIFEST));
+    }
+  }
+
+  @Test
+  public void disabledByDefault() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod, "use-ugly-url: false");
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      Assert.assertEquals("css/site.css|robots.txt", TestUtils.fileOutputAsString(iod, "index.html"));
+      Assert.assertEquals("../css/site.css", TestUtils.fileOutputAsString(iod, "post/index.html"));
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve(AssetFingerprints.MANIFEST)));
+    }
+  }
+
+  @Test
+  public void hashesAreCachedByModificationTime() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod, "fingerprint-assets: true");
+      Path cacheFile = iod.inputDir.resolve(".stampo-cache/fingerprints");
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      String cache = new String(Files.readAllBytes(cacheFile), StandardCharsets.UTF_8);
+      Assert.assertTrue(cache.startsWith("css/site.css\t"));
+
+      // the file is not hashed again
+      String[] fields = cache.trim().split("\t");
+      write(cacheFile, (fields[0] + "\t" + fields[1] + "\t" + fields[2] + "\tcached\n").getBytes(StandardCharsets.UTF_8));
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      Assert.assertEquals("css/site.cached.css|robots.txt", TestUtils.fileOutputAsString(iod, "index.html"));
+
+      write(iod.inputDir.resolve("static/css/site.css"), "body{margin:0}".getBytes(StandardCharsets.UTF_8));
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      String hash = PathUtils.sha256(iod.inputDir.resolve("static/css/site.css")).substring(0, 10);
+      Assert.assertEquals("css/site." + hash + ".css|robots.txt", TestUtils.fileOutputAsString(iod, "index.html"));
+    }
+  }
+
+  @Test
+  public void fingerprintedImageVariants() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      TestUtils.writeImage(iod.inputDir.resolve("static/beach.png"), 100, 50, "png");
+      write(iod.inputDir.resolve("content/index.html.peb"), "{{asset('beach-40w.png')}}".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("configuration.yaml"), "fingerprint-assets: true\nimage-widths: [40]".getBytes(StandardCharsets.UTF_8));
+      String imageHash = PathUtils.sha256(iod.inputDir.resolve("static/beach.png")).substring(0, 10);
+      String hash = PathUtils.sha256((imageHash + ":40x20").getBytes(StandardCharsets.UTF_8)).substring(0, 10);
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      Assert.assertEquals("beach-40w." + hash + ".png", TestUtils.fileOutputAsString(iod, "index.html"));
+      Assert.assertArrayEquals(Files.readAllBytes(iod.outputDir.resolve("beach-40w.png")), Files.readAllBytes(iod.outputDir.resolve("beach-40w." + hash + ".png")));
+      Assert.assertTrue(TestUtils.fileOutputAsString(iod, AssetFingerprints.MANIFEST).contains("\"beach-40w.png\":\"beach-40w." + hash + ".png\""));
+    }
+  }
+
+  @Test
+  public void imageVariantsAreAssetsWhenNotFingerprinted() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      TestUtils.writeImage(iod.inputDir.resolve("static/beach.png"), 100, 50, "png");
+      write(iod.inputDir.resolve("content/index.html.peb"), "{{asset('beach-40w.png')}}".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("configuration.yaml"), "image-widths: [40]".getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      Assert.assertEquals("beach-40w.png", TestUtils.fileOutputAsString(iod, "index.html"));
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.write;
+import static java.util.Arrays.asList;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.digitalfondue.stampo.CheckReport.Problem;
+import ch.digitalfondue.stampo.TestUtils.InputOutputDirs;
+
+public class CheckTest {
+
+  private static List<String> problems(CheckReport report) {
+    return report.getProblems().stream().map(p -> p.getPhase() + " " + p.getPath())
+        .collect(Collectors.toList());
+  }
+
+  private static List<String> phases(CheckReport report) {
+    return report.getPhases().stream().map(CheckReport.Phase::getName).collect(Collectors.toList());
+  }
+
+  @Test
+  public void checkValidSite() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createDirectories(iod.inputDir.resolve("layout"));
+      createDirectories(iod.inputDir.resolve("data"));
+      write(iod.inputDir.resolve("layout/index.html.peb"), asList("{{content | raw}}"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("layout/other.html.ftl"), asList("${content}"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("data/products.yaml"), asList("- shoes", "- socks"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("content/index.md"), asList("---", "title: Index", "---", "*content*"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("content/other.html.peb"), asList("{{metadata.rawMap.title}}"), StandardCharsets.UTF_8);
+
+      CheckReport report = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).check();
+
+      Assert.assertTrue(report.toText(), report.isOk());
+      Assert.assertEquals(asList("data", "front-matter", "templates", "directives"), phases(report));
+      Assert.assertEquals(asList(1, 2, 3, 2), report.getPhases().stream().map(CheckReport.Phase::getChecked).collect(Collectors.toList()));
+      Assert.assertTrue(report.toJson().startsWith("{\"ok\":true,"));
+      // nothing has been rendered
+      Assert.assertFalse(exists(iod.outputDir));
+    }
+  }
+
+  @Test
+  public void checkReportAllTheProblems() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createDirectories(iod.inputDir.resolve("layout"));
+      createDirectories(iod.inputDir.resolve("data"));
+      write(iod.inputDir.resolve("layout/index.html.peb"), asList("{{content | raw"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("layout/other.html.ftl"), asList("${content"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("data/products.yaml"), asList("wrong: [yaml"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("content/index.md"), asList("---", "title: [Index", "---", "*content*"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("content/other.md"), asList("---", "title: Other", "---", "*content*"), StandardCharsets.UTF_8);
+
+      CheckReport report = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).check();
+
+      Assert.assertFalse(report.isOk());
+      Assert.assertEquals(asList(
+          "data input/data/products.yaml",
+          "front-matter input/content/index.md",
+          "templates input/layout/index.html.peb",
+          "templates input/layout/other.html.ftl"), problems(report));
+      // the directives are not checked without valid front matters
+      Assert.assertEquals(asList("data", "front-matter", "templates"), phases(report));
+      Assert.assertTrue(report.toText().contains("4 problems found"));
+      Assert.assertTrue(report.toJson().startsWith("{\"ok\":false,"));
+    }
+  }
+
+  @Test
+  public void checkDirectivesAndContentTemplates() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      write(iod.inputDir.resolve("content/index.html.peb"),
+          asList("---", "directive: dir-pagination", "paginate-over-directory: content/posts", "---", "{{pagination"),
+          StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("content/doc.html.peb"),
+          asList("---", "directive: include-all", "include-all: doc", "---", "{{includeAllResult | raw}}"),
+          StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("content/unknown.md"), asList("---", "directive: unknown", "---", "*content*"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("content/other.html.ftl"), asList("${metadata"), StandardCharsets.UTF_8);
+
+      CheckReport report = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).check();
+
+      Assert.assertEquals(asList(
+          "templates input/content/index.html.peb",
+          "templates input/content/other.html.ftl",
+          "directives input/content/doc.html.peb",
+          "directives input/content/index.html.peb",
+          "directives input/content/unknown.md"), problems(report));
+
+      Problem pagination = report.getProblems().get(3);
+      Assert.assertTrue(pagination.getMessage(), pagination.getMessage().contains("target directory content/posts must exists"));
+    }
+  }
+
+  @Test
+  public void checkLinksAndAnchors() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createDirectories(iod.inputDir.resolve("static/img"));
+      write(iod.inputDir.resolve("static/img/logo.png"), new byte[] {0});
+      write(iod.inputDir.resolve("content/index.html"), asList(
+          "<div id=\"top\"><img src=\"/img/logo.png\"></div>",
+          "<a href=\"other/\">other</a> <a href=\"other/#section\">section</a>",
+          "<a href=\"missing/\">missing</a>",
+          "<a href=\"other/#nope\">nope</a> <a href='http://example.com/missing'>external</a>",
+          "<a href=\"#top\">top</a> <a href=\"img/logo.png?v=1\">logo</a> <a href=\"#bottom\">bottom</a>"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("content/other.html"), asList(
+          "<h2 id=\"section\">Section</h2>",
+          "<a href=\"../\">index</a> <a href=\"../index.html#top\">top</a> <a href=\"../../outside.html\">outside</a>"), StandardCharsets.UTF_8);
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+      CheckReport report = stampo.checkLinks();
+
+      Assert.assertEquals(asList("links"), phases(report));
+      Assert.assertEquals(2, report.getPhases().get(0).getChecked());
+      Assert.assertEquals(asList(
+          "output/index.html:3 broken link 'missing/'",
+          "output/index.html:4 missing anchor 'other/#nope'",
+          "output/index.html:5 missing anchor '#bottom'",
+          "output/other/index.html:2 broken link '../../outside.html'"),
+          report.getProblems().stream().map(p -> p.getPath() + ":" + p.getLine() + " " + p.getMessage()).collect(Collectors.toList()));
+      Assert.assertTrue(report.toText().contains("ERROR [links] output/index.html:3: broken link 'missing/'"));
+
+      // the links are checked by check(true) only if there are no other problems
+      CheckReport full = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).check(true);
+      Assert.assertEquals(asList("data", "front-matter", "templates", "directives", "build", "links"), phases(full));
+      Assert.assertEquals(4, full.getProblems().size());
+    }
+  }
+
+  @Test
+  public void checkLinksSpanningLinesAndUnquoted() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      write(iod.inputDir.resolve("content/index.html"), asList(
+          "<a class=\"link\" href=",
+          "   \"missing-multi/\">multi</a>",
+          "<a href=missing-unquoted/>unquoted</a> <a href=other/#section>section</a> <a href=other/#nope>nope</a>",
+          "<script>var s = '<a href=\"missing-in-script/\">';</script>",
+          "<!-- <a href=\"missing-in-comment/\"> -->",
+          "<h2 id=bottom title=\"a > b\">Bottom</h2> <a href=#bottom>bottom</a>"), StandardCharsets.UTF_8);
+      write(iod.inputDir.resolve("content/other.html"), asList("<h2 id='section'>Section</h2>"), StandardCharsets.UTF_8);
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+
+      Assert.assertEquals(asList(
+          "output/index.html:1 broken link 'missing-multi/'",
+          "output/index.html:3 broken link 'missing-unquoted/'",
+          "output/index.html:3 missing anchor 'other/#nope'"),
+          stampo.checkLinks().getProblems().stream().map(p -> p.getPath() + ":" + p.getLine() + " " + p.getMessage()).collect(Collectors.toList()));
+    }
+  }
+}
@@ -22,14 +22,17 @@ import static ch.digitalfondue.stampo.TestUtils.get;
 import static java.nio.file.Files.write;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import ch.digitalfondue.stampo.TestUtils.InputOutputDirs;
 import ch.digitalfondue.stampo.exception.ConfigurationException;
+import ch.digitalfondue.stampo.processor.paginator.PageContent;
 
 public class ContentPaginationTest {
 
@@ -52,6 +55,35 @@ public class ContentPaginationTest {
     }
   }
 
+  @Test
+  public void paginationRenderedOnDemandTest() throws IOException {
+    try (InputOutputDirs iod = get()) {
+      write(iod.inputDir.resolve("content/index.html.peb"),
+          fromTestResource("pagination/index.html.peb"));
+
+      writePosts(iod);
+
+
+      OutputPlan plan = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).plan();
+
+      Assert.assertTrue(plan.getOutputs().containsKey(iod.outputDir.resolve("page/2/index.html")));
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("page/2/index.html")));
+
+      Assert.assertTrue(plan.render("page/2/"));
+      Assert.assertFalse(plan.render("page/42/"));
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("index.html")));
+      Assert.assertEquals(fromTestResourceAsString("pagination/result/pagination/page2.html"),
+          fileOutputAsString(iod, "page/2/index.html"));
+
+      plan.renderAll();
+
+      Assert.assertEquals(fromTestResourceAsString("pagination/result/pagination/index.html"),
+          fileOutputAsString(iod, "index.html"));
+      Assert.assertEquals(fromTestResourceAsString("pagination/result/pagination/page2.html"),
+          fileOutputAsString(iod, "page/2/index.html"));
+    }
+  }
+
   private void writePosts(InputOutputDirs iod) throws IOException {
     Files.createDirectories(iod.inputDir.resolve("content/post"));
     Files.createDirectories(iod.inputDir.resolve("content/post/durpdurp"));
@@ -89,6 +121,38 @@ public class ContentPaginationTest {
   }
 
 
+  @Test
+  public void itemsNotRenderedIfNotUsed() throws IOException {
+    try (InputOutputDirs iod = get()) {
+      write(iod.inputDir.resolve("content/index.html.peb"), ("---\n"
+          + "directive: dir-pagination\n"
+          + "paginate-over-directory: content/post\n"
+          + "paginate-page-size: 5\n"
+          + "---\n"
+          + "{% for post in pagination.pageContent %}{{post.resource.fileNameWithoutExtensions}}:{{post.relativeUrlToContent}} {% endfor %}").getBytes(StandardCharsets.UTF_8));
+      writePosts(iod);
+      // fails if rendered
+      write(iod.inputDir.resolve("content/post/broken.html.peb"), ("---\n"
+          + "date: 2016-01-01\n"
+          + "---\n"
+          + "{% include 'missing' %}").getBytes(StandardCharsets.UTF_8));
+
+      OutputPlan plan = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).plan();
+      Assert.assertTrue(plan.render(""));
+      Assert.assertTrue(fileOutputAsString(iod, "index.html").startsWith("broken:post/broken post20:post/post20 "));
+    }
+  }
+
+  @Test
+  public void itemRenderedOnce() {
+    AtomicInteger calls = new AtomicInteger();
+    PageContent content = new PageContent(null, () -> "rendered " + calls.incrementAndGet(), "post/");
+    Assert.assertEquals(0, calls.get());
+    Assert.assertEquals("rendered 1", content.getRenderedResource());
+    Assert.assertEquals("rendered 1", content.getRenderedResource());
+    Assert.assertEquals(1, calls.get());
+  }
+
   @Test
   public void emptyDirTest() throws IOException {
     try (InputOutputDirs iod = get()) {
@@ -22,7 +22,12 @@ import static java.nio.file.Files.write;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -59,4 +64,108 @@ public class DataDirectoryTest {
           fileOutputAsString(iod, "index.html"));
     }
   }
+
+  @Test
+  public void testJsonCsvAndLazyLoading() throws IOException {
+    try (InputOutputDirs iod = get()) {
+
+      write(iod.inputDir.resolve("content/index.html.peb"), "{{data['catalog.info'].name}} {{data['catalog.products'].size()}}:{% for p in data['catalog.products'] %} {{p.id}}={{p.name}}{% endfor %}".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("content/index2.html.ftl"), "${data['catalog.info'].name}:<#list data['catalog.products'] as p> ${p.id}=${p.name}</#list>".getBytes(StandardCharsets.UTF_8));
+
+      Files.createDirectories(iod.inputDir.resolve("data/catalog"));
+
+      write(iod.inputDir.resolve("data/catalog/info.json"), "{\"name\": \"shop\"}".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("data/catalog/products.csv"), "id,name\r\n1,plain\r\n2,\"with, comma\"\r\n\r\n3,\"say \"\"hi\"\"\"\r\n".getBytes(StandardCharsets.UTF_8));
+
+      // never accessed, thus never parsed
+      write(iod.inputDir.resolve("data/broken.yaml"), "key: [".getBytes(StandardCharsets.UTF_8));
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+
+      Assert.assertEquals("shop 3: 1=plain 2=with, comma 3=say &quot;hi&quot;",
+          fileOutputAsString(iod, "index.html"));
+      Assert.assertEquals("shop: 1=plain 2=with, comma 3=say \"hi\"",
+          fileOutputAsString(iod, "index2/index.html"));
+    }
+  }
+
+  @Test
+  public void testCacheHandedOverToTheNextBuild() throws IOException {
+    try (InputOutputDirs iod = get()) {
+      Files.createDirectories(iod.inputDir.resolve("data"));
+      write(iod.inputDir.resolve("data/a.yaml"), "key: a".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("data/b.yaml"), "key: b".getBytes(StandardCharsets.UTF_8));
+
+      Stampo first = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      Object a = first.getConfiguration().getData().get("a");
+      first.getConfiguration().getData().get("b");
+      Assert.assertEquals(2, first.getConfiguration().getDataCache().size());
+
+      Files.delete(iod.inputDir.resolve("data/b.yaml"));
+      Stampo second = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap(), first);
+      Assert.assertSame(a, second.getConfiguration().getData().get("a"));
+      Assert.assertEquals(1, second.getConfiguration().getDataCache().size());
+
+      // not shared with an unrelated build
+      Stampo other = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      Assert.assertNotSame(a, other.getConfiguration().getData().get("a"));
+    }
+  }
+
+  @Test
+  public void testCsvRowsStoppedEarly() throws IOException {
+    try (InputOutputDirs iod = get()) {
+      Files.createDirectories(iod.inputDir.resolve("data"));
+      write(iod.inputDir.resolve("data/rows.csv"), "id\n1\n2\n3\n".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("content/index.html.ftl"), "<#list data.rows as r>${r.id}<#break></#list> ${data.rows?size}".getBytes(StandardCharsets.UTF_8));
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+      Assert.assertEquals("1 3", fileOutputAsString(iod, "index.html"));
+
+      // the size is counted once
+      Collection<?> rows = (Collection<?>) stampo.getConfiguration().getData().get("rows");
+      Assert.assertEquals(3, rows.size());
+      Files.delete(iod.inputDir.resolve("data/rows.csv"));
+      Assert.assertEquals(3, rows.size());
+    }
+  }
+
+  @Test
+  public void testCsvRowsAreStreamedInBatches() throws IOException {
+    try (InputOutputDirs iod = get()) {
+      Files.createDirectories(iod.inputDir.resolve("data"));
+      Path csv = iod.inputDir.resolve("data/big.csv");
+      int rows = 3 * DataDirectory.CsvRows.BATCH_SIZE + 10;
+      StringBuilder sb = new StringBuilder("id,name\r\n");
+      for (int i = 0; i < rows; i++) {
+        // multi byte characters and quoted line breaks, so the batches must resume at the right byte
+        sb.append(i).append(",\"caf\u00e9\r\n\u00fcber ").append(i).append("\"\r\n");
+      }
+      write(csv, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      @SuppressWarnings("unchecked")
+      Collection<Map<String, String>> data = (Collection<Map<String, String>>) stampo.getConfiguration().getData().get("big");
+      Iterator<Map<String, String>> it = data.iterator();
+      Assert.assertEquals("0", it.next().get("id"));
+
+      // the rows are read while iterating: a row appended now is still seen
+      Files.write(csv, "extra,last\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+      int count = 1;
+      Map<String, String> row = null;
+      while (it.hasNext()) {
+        row = it.next();
+        if (count < rows) {
+          Assert.assertEquals(Integer.toString(count), row.get("id"));
+          Assert.assertEquals("caf\u00e9\r\n\u00fcber " + count, row.get("name"));
+        }
+        count++;
+      }
+      Assert.assertEquals(rows + 1, count);
+      Assert.assertEquals("last", row.get("name"));
+    }
+  }
 }
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.write;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.digitalfondue.stampo.TestUtils.InputOutputDirs;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+
+public class GzipSidecarsTest {
+
+  private static final String CSS = Strings.repeat("body { margin: 0; }\n", 20);
+
+  private static void createFiles(InputOutputDirs iod) throws IOException {
+    createDirectories(iod.inputDir.resolve("static/css"));
+    write(iod.inputDir.resolve("static/css/site.css"), CSS.getBytes(StandardCharsets.UTF_8));
+    write(iod.inputDir.resolve("static/tiny.js"), "x".getBytes(StandardCharsets.UTF_8));
+    write(iod.inputDir.resolve("static/notes.txt"), CSS.getBytes(StandardCharsets.UTF_8));
+    write(iod.inputDir.resolve("content/index.html"), Strings.repeat("<p>hello world</p>", 20).getBytes(StandardCharsets.UTF_8));
+    write(iod.inputDir.resolve("configuration.yaml"), "gzip: true".getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String gunzip(Path file) throws IOException {
+    try (InputStream is = new GZIPInputStream(Files.newInputStream(file))) {
+      return new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  public void sidecars() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod);
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      Assert.assertEquals(TestUtils.fileOutputAsString(iod, "index.html"), gunzip(iod.outputDir.resolve("index.html.gz")));
+      Assert.assertEquals(CSS, gunzip(iod.outputDir.resolve("css/site.css.gz")));
+      // not smaller
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("tiny.js.gz")));
+      // not compressible
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("notes.txt.gz")));
+    }
+  }
+
+  @Test
+  public void unchangedFilesAreNotCompressedAgain() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod);
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      Path cachedCss = iod.inputDir.resolve(".stampo-cache/gzip/" + PathUtils.sha256(CSS.getBytes(StandardCharsets.UTF_8)) + ".gz");
+      // index.html, site.css and tiny.js
+      Assert.assertEquals(3, TestUtils.cachedFiles(iod, "gzip").size());
+
+      // the sidecar is copied from the cache
+      write(cachedCss, GzipSidecars.gzip("cached".getBytes(StandardCharsets.UTF_8)));
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      Assert.assertEquals("cached", gunzip(iod.outputDir.resolve("css/site.css.gz")));
+
+      // the unused entries are removed
+      write(iod.inputDir.resolve("static/css/site.css"), (CSS + CSS).getBytes(StandardCharsets.UTF_8));
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      Assert.assertEquals(CSS + CSS, gunzip(iod.outputDir.resolve("css/site.css.gz")));
+      Assert.assertFalse(Files.exists(cachedCss));
+      Assert.assertEquals(3, TestUtils.cachedFiles(iod, "gzip").size());
+    }
+  }
+}
@@ -95,4 +95,40 @@ public class I18nTest {
 
     }
   }
+
+  @Test
+  public void testFallbackAndRebuild() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      Files.createDirectories(iod.inputDir.resolve("locales"));
+      write(iod.inputDir.resolve("locales/messages.yaml"),
+          "a: root\nb: root\nc: root {0}".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("locales/messages_en.yaml"),
+          "a: en\nb: en".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("locales/messages_en-US.yaml"),
+          "a: en-US".getBytes(StandardCharsets.UTF_8));
+
+      write(iod.inputDir.resolve("configuration.yaml"),
+          "locales: ['en-US']".getBytes(StandardCharsets.UTF_8));
+
+      write(iod.inputDir.resolve("content/index.html.peb"),
+          "{{message('a')}} {{message('b')}} {{message('c', 1)}} {{message('c', 2)}}"
+              .getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("content/index2.html.ftl"),
+          "${message('a')} ${message('b')} ${message('c', 1)} ${message('c', 2)}".getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      Assert.assertEquals("en-US en root 1 root 2", fileOutputAsString(iod, "index.html"));
+      Assert.assertEquals("en-US en root 1 root 2", fileOutputAsString(iod, "index2/index.html"));
+
+      // as done by the watcher: a rebuild see the modified files
+      write(iod.inputDir.resolve("locales/messages_en.yaml"),
+          "a: en\nb: en modified".getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      Assert.assertEquals("en-US en modified root 1 root 2", fileOutputAsString(iod, "index.html"));
+      Assert.assertEquals("en-US en modified root 1 root 2", fileOutputAsString(iod, "index2/index.html"));
+    }
+  }
 }
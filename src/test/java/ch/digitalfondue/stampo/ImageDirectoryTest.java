@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.nio.file.Files.write;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.digitalfondue.stampo.TestUtils.InputOutputDirs;
+import ch.digitalfondue.stampo.exception.ConfigurationException;
+
+public class ImageDirectoryTest {
+
+  private static BufferedImage readImage(InputOutputDirs iod, String path) throws IOException {
+    try (InputStream is = Files.newInputStream(iod.outputDir.resolve(path))) {
+      return ImageIO.read(is);
+    }
+  }
+
+  @Test
+  public void variantsAndThumbnails() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      TestUtils.writeImage(iod.inputDir.resolve("static/gallery/beach.png"), 100, 50, "png");
+      TestUtils.writeImage(iod.inputDir.resolve("static/gallery/tree.jpg"), 80, 120, "jpeg");
+      TestUtils.writeImage(iod.inputDir.resolve("static/ignored.gif"), 80, 80, "gif");
+      write(iod.inputDir.resolve("configuration.yaml"), "image-widths: [40, 20, 200]\nimage-thumbnail: 16".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("content/index.html.peb"), ("{% set image = images['gallery/beach.png'] %}"
+          + "{{image.srcset(relativeRootPath)}}|{{image.variants[0].height}}|{{image.thumbnail.path}}|{{images.size}}")
+          .getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      Assert.assertEquals("./gallery/beach-20w.png 20w, ./gallery/beach-40w.png 40w, ./gallery/beach.png 100w|10|gallery/beach-thumb.png|2",
+          TestUtils.fileOutputAsString(iod, "index.html"));
+
+      BufferedImage variant = readImage(iod, "gallery/beach-40w.png");
+      Assert.assertEquals(40, variant.getWidth());
+      Assert.assertEquals(20, variant.getHeight());
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("gallery/beach-200w.png")));
+
+      BufferedImage thumbnail = readImage(iod, "gallery/tree-thumb.jpg");
+      Assert.assertEquals(16, thumbnail.getWidth());
+      Assert.assertEquals(16, thumbnail.getHeight());
+      Assert.assertEquals(30, readImage(iod, "gallery/tree-20w.jpg").getHeight());
+
+      Assert.assertTrue(Files.exists(iod.outputDir.resolve("ignored.gif")));
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("ignored-thumb.gif")));
+      Assert.assertEquals(6, TestUtils.cachedFiles(iod, "images").size());
+    }
+  }
+
+  @Test
+  public void unchangedImagesAreNotEncodedAgain() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      Path source = iod.inputDir.resolve("static/beach.png");
+      TestUtils.writeImage(source, 100, 50, "png");
+      write(iod.inputDir.resolve("configuration.yaml"), "image-widths: [40]".getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      List<Path> cached = TestUtils.cachedFiles(iod, "images");
+      Assert.assertEquals(1, cached.size());
+
+      // the output is copied from the cache
+      write(cached.get(0), "cached".getBytes(StandardCharsets.UTF_8));
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      Assert.assertEquals("cached", TestUtils.fileOutputAsString(iod, "beach-40w.png"));
+
+      TestUtils.writeImage(source, 100, 60, "png");
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      Assert.assertEquals(24, readImage(iod, "beach-40w.png").getHeight());
+      // the unused entry is removed
+      Assert.assertEquals(1, TestUtils.cachedFiles(iod, "images").size());
+      Assert.assertFalse(Files.exists(cached.get(0)));
+    }
+  }
+
+  @Test(expected = ConfigurationException.class)
+  public void staticFileWithTheNameOfAVariant() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      TestUtils.writeImage(iod.inputDir.resolve("static/beach.png"), 100, 50, "png");
+      TestUtils.writeImage(iod.inputDir.resolve("static/beach-40w.png"), 40, 20, "png");
+      write(iod.inputDir.resolve("configuration.yaml"), "image-widths: [40]".getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+    }
+  }
+}
@@ -97,4 +97,21 @@ public class IncludeAllDirectiveTest {
       check(base, "index.html", iod);
     }
   }
-}
+
+  @Test
+  public void numberingTest() throws IOException {
+    try (InputOutputDirs iod = get()) {
+
+      Files.createDirectories(iod.inputDir.resolve("content"));
+      write(iod.inputDir.resolve("content/index.html.peb"),
+          fromTestResource("includeall/content/numbering/index.html.peb"));
+      addAllFiles(iod);
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+
+      String base = "includeall/result/numbering/";
+      check(base, "index.html", iod);
+    }
+  }
+}
\ No newline at end of file
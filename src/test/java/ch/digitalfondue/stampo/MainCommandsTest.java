@@ -63,6 +63,10 @@ public class MainCommandsTest {
     Assert.assertTrue(r3 instanceof Build);
     Assert.assertEquals("/my/path", ((Build) r3).getSrcPath().get());
     Assert.assertEquals(true, ((Build) r3).isHideDraft());
+    Assert.assertFalse(((Build) r3).isCheckLinks());
+    
+    Runnable r4 = StampoMain.fromParameters(of("build", "--check-links=true"));
+    Assert.assertTrue(((Build) r4).isCheckLinks());
   }
   
   
@@ -81,6 +85,13 @@ public class MainCommandsTest {
     Runnable r2 = StampoMain.fromParameters(of("check", "--src=/my/path"));
     Assert.assertTrue(r2 instanceof Check);
     Assert.assertEquals("/my/path", ((Check) r2).getSrcPath().get());
+    Assert.assertFalse(((Check) r2).isFast());
+    
+    Runnable r3 = StampoMain.fromParameters(of("check", "--fast=true", "--format=json"));
+    Assert.assertTrue(((Check) r3).isFast());
+    Assert.assertEquals("json", ((Check) r3).getFormat());
+    Assert.assertFalse(((Check) r3).isCheckLinks());
+    Assert.assertTrue(((Check) StampoMain.fromParameters(of("check", "--check-links=true"))).isCheckLinks());
   }
   
   
@@ -101,6 +112,9 @@ public class MainCommandsTest {
     
     checkServeParams(((Serve) StampoMain.fromParameters(of("serve", "--disable-rebuild-on-change=true", "--disable-auto-reload=true"))), Optional.empty(), 8080, "localhost", true, true);
     
+    Assert.assertFalse(((Serve) StampoMain.fromParameters(of("serve"))).isInMemory());
+    Assert.assertTrue(((Serve) StampoMain.fromParameters(of("serve", "--in-memory=true"))).isInMemory());
+    
   }
   
   private static void checkServeParams(Serve s, Optional<String> path, int port, String hostname, boolean disableRebuildOnChange, boolean disableAutoReload) {
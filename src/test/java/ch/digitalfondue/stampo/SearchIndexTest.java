@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.write;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.digitalfondue.stampo.TestUtils.InputOutputDirs;
+
+public class SearchIndexTest {
+
+  private static void createFiles(InputOutputDirs iod, String configuration) throws IOException {
+    Path content = iod.inputDir.resolve("content");
+    createDirectories(content.resolve("post"));
+    createDirectories(iod.inputDir.resolve("layout"));
+    write(iod.inputDir.resolve("layout/index.html.peb"),
+        "<nav>menu</nav><main>{{content|raw}}</main><script>var ignored;</script>".getBytes(StandardCharsets.UTF_8));
+    write(content.resolve("index.md"), "# Home\n\nWelcome to the jungle".getBytes(StandardCharsets.UTF_8));
+    write(content.resolve("post/first.md"), "# First post\n\n## Java\n\nJava &amp; Café, java in the jungle".getBytes(StandardCharsets.UTF_8));
+    write(iod.inputDir.resolve("configuration.yaml"), configuration.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void searchIndex() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod, "search-index: true");
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      Assert.assertEquals("{\"documents\":2,\"prefixLength\":2,\"shards\":{\"ca\":\"ca.json\",\"fi\":\"fi.json\",\"ho\":\"ho.json\","
+          + "\"in\":\"in.json\",\"ja\":\"ja.json\",\"ju\":\"ju.json\",\"po\":\"po.json\",\"th\":\"th.json\",\"to\":\"to.json\",\"we\":\"we.json\"}}\n",
+          TestUtils.fileOutputAsString(iod, "search/index.json"));
+      Assert.assertEquals("[[\"\",\"Home\"],\n[\"post/first/\",\"First post\"]]\n", TestUtils.fileOutputAsString(iod, "search/docs.json"));
+      // heading + 2 times in the text
+      Assert.assertEquals("{\"java\":[1,5]}\n", TestUtils.fileOutputAsString(iod, "search/ja.json"));
+      // title + heading
+      Assert.assertEquals("{\"first\":[1,13]}\n", TestUtils.fileOutputAsString(iod, "search/fi.json"));
+      Assert.assertEquals("{\"cafe\":[1,1]}\n", TestUtils.fileOutputAsString(iod, "search/ca.json"));
+      // document 0, then document 0 + 1
+      Assert.assertEquals("{\"jungle\":[0,1,1,1]}\n", TestUtils.fileOutputAsString(iod, "search/ju.json"));
+      // outside of the main element
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("search/me.json")));
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("search/va.json")));
+    }
+  }
+
+  @Test
+  public void searchIndexForEachLocaleWhenAllRendered() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod, "search-index: true\nlocales: [en, de]\ndefault-locale: en");
+
+      OutputPlan plan = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).plan();
+      plan.render("post/first/");
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("search/index.json")));
+
+      plan.renderAll();
+
+      Assert.assertTrue(TestUtils.fileOutputAsString(iod, "search/docs.json").contains("[\"post/first/\",\"First post\"]"));
+      Assert.assertTrue(TestUtils.fileOutputAsString(iod, "de/search/docs.json").contains("[\"de/post/first/\",\"First post\"]"));
+      Assert.assertTrue(Files.exists(iod.outputDir.resolve("de/search/ja.json")));
+    }
+  }
+
+  @Test
+  public void tokenize() {
+    Map<String, Integer> terms = new HashMap<>();
+    SearchIndexWriter.tokenize("Über-Größe a 42 x2, ÜBER", 1, terms);
+    Assert.assertEquals(Integer.valueOf(2), terms.get("uber"));
+    Assert.assertEquals(Integer.valueOf(1), terms.get("große"));
+    Assert.assertEquals(Integer.valueOf(1), terms.get("42"));
+    Assert.assertEquals(Integer.valueOf(1), terms.get("x2"));
+    Assert.assertNull(terms.get("a"));
+    Assert.assertEquals("_65e5_672c.json", SearchIndexWriter.shardFileName("日本"));
+  }
+}
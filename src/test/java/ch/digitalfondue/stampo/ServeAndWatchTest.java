@@ -19,13 +19,26 @@ import static ch.digitalfondue.stampo.TestUtils.fromTestResource;
 import static ch.digitalfondue.stampo.TestUtils.fromTestResourceAsString;
 import static ch.digitalfondue.stampo.TestUtils.get;
 import static java.nio.file.Files.write;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.Socket;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -36,6 +49,10 @@ import ch.digitalfondue.stampo.TestUtils.InputOutputDirs;
 import com.gargoylesoftware.htmlunit.FailingHttpStatusCodeException;
 import com.gargoylesoftware.htmlunit.Page;
 import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
 
 public class ServeAndWatchTest {
   
@@ -66,6 +83,8 @@ public class ServeAndWatchTest {
   @Test
   public void checkOutput() throws IOException, InterruptedException {
     try (InputOutputDirs iod = get(); WebClient webClient = new WebClient()) {
+      // the auto reload script is tested separately
+      webClient.getOptions().setJavaScriptEnabled(false);
 
       //
       createContentPagination(iod);
@@ -75,10 +94,13 @@ public class ServeAndWatchTest {
       Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
       
       CountDownLatch cdl = new CountDownLatch(1);
+      AtomicReference<ChangeSet> lastChanges = new AtomicReference<>();
 
       ServeAndWatch sw =
-          new ServeAndWatch(address, port, true, true, stampo.getConfiguration(), () -> {
+          new ServeAndWatch(address, port, true, true, stampo.getConfiguration(),
+              stampo.getConfiguration()::getBaseOutputDir, req -> {}, rebuild -> {
             new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+            lastChanges.set(rebuild.getChanges());
             cdl.countDown();
           }, false);
       sw.start();
@@ -108,6 +130,19 @@ public class ServeAndWatchTest {
       Assert.assertEquals("text/plain", page.getWebResponse().getContentType());
       Assert.assertEquals("hello world", page.getWebResponse().getContentAsString(StandardCharsets.UTF_8));
       
+      // conditional get
+      String indexETag = webClient.getPage(url).getWebResponse().getResponseHeaderValue("ETag");
+      Assert.assertNotNull(indexETag);
+      Assert.assertEquals(304, statusCodeIfNoneMatch(url, indexETag));
+      Assert.assertEquals(304, statusCodeIfNoneMatch(url.concat("/texts/1.txt"), page.getWebResponse().getResponseHeaderValue("ETag")));
+      Assert.assertEquals(200, statusCodeIfNoneMatch(url.concat("/texts/1.txt"), "\"other\""));
+      
+      // range requests
+      checkRange(url.concat("/texts/1.txt"), "bytes=6-", 206, "bytes 6-10/11", "world");
+      checkRange(url.concat("/texts/1.txt"), "bytes=0-4", 206, "bytes 0-4/11", "hello");
+      checkRange(url.concat("/texts/1.txt"), "bytes=-5", 206, "bytes 6-10/11", "world");
+      checkRange(url.concat("/texts/1.txt"), "bytes=20-", 416, "bytes */11", null);
+      
       
       try {
         webClient.getPage(url.concat("/texts/2.txt"));
@@ -118,17 +153,267 @@ public class ServeAndWatchTest {
       // add new file
       write(iod.inputDir.resolve("static/texts/2.txt"), "hello world 2".getBytes(StandardCharsets.UTF_8));
       cdl.await();
+      Assert.assertEquals(ENTRY_CREATE, lastChanges.get().getChanges().get(iod.inputDir.resolve("static/texts/2.txt")));
       // newly created static content
       Page page2 = webClient.getPage(url.concat("/texts/2.txt"));
       Assert.assertEquals("text/plain", page2.getWebResponse().getContentType());
       Assert.assertEquals("hello world 2", page2.getWebResponse().getContentAsString(StandardCharsets.UTF_8));
       //
       
+      // the index has been rewritten with the same content
+      Assert.assertEquals(304, statusCodeIfNoneMatch(url, indexETag));
+      
       
       sw.stop();
     }
   }
 
+  @Test
+  public void reloadOnlyTheChangedStylesheet() throws IOException, InterruptedException {
+    try (InputOutputDirs iod = get(); WebClient webClient = new WebClient()) {
+      Files.createDirectories(iod.inputDir.resolve("static/css"));
+      write(iod.inputDir.resolve("content/index.html"), ("<!DOCTYPE html><html><head><link rel=\"stylesheet\" href=\"/css/style.css\">"
+          + "</head><body>hello</body></html>").getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("static/css/style.css"), "body {color: red}".getBytes(StandardCharsets.UTF_8));
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+      ServeAndWatch sw = new ServeAndWatch(address, port, true, true, stampo.getConfiguration(), () -> {
+        new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      }, false);
+      sw.start();
+
+      HtmlPage page = webClient.getPage(url);
+      DomElement link = page.getElementsByTagName("link").get(0);
+      Assert.assertEquals("/css/style.css", link.getAttribute("href"));
+
+      write(iod.inputDir.resolve("static/css/style.css"), "body {color: blue}".getBytes(StandardCharsets.UTF_8));
+      waitUntil(() -> !"/css/style.css".equals(link.getAttribute("href")));
+
+      Assert.assertTrue(link.getAttribute("href").startsWith("/css/style.css?stampo-reload="));
+      // not reloaded
+      Assert.assertSame(page, webClient.getCurrentWindow().getEnclosedPage());
+
+      sw.stop();
+    }
+  }
+
+  @Test
+  public void updateTheOpenPageInPlace() throws IOException, InterruptedException {
+    try (InputOutputDirs iod = get(); WebClient webClient = new WebClient()) {
+      write(iod.inputDir.resolve("content/index.html"), "<!DOCTYPE html><html><head></head><body><p id=\"text\">hello</p></body></html>".getBytes(StandardCharsets.UTF_8));
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+      ServeAndWatch sw = new ServeAndWatch(address, port, true, true, stampo.getConfiguration(), () -> {
+        new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+      }, false);
+      sw.start();
+
+      HtmlPage page = webClient.getPage(url);
+      DomElement p = page.getElementById("text");
+
+      // only the body changed: the page is patched
+      write(iod.inputDir.resolve("content/index.html"), "<!DOCTYPE html><html><head></head><body><p id=\"text\">hello world</p><p>new</p></body></html>".getBytes(StandardCharsets.UTF_8));
+      waitUntil(() -> !"hello".equals(p.getTextContent()) || webClient.getCurrentWindow().getEnclosedPage() != page);
+      Assert.assertSame(page, webClient.getCurrentWindow().getEnclosedPage());
+      Assert.assertEquals("hello world", p.getTextContent());
+      Assert.assertSame(p, page.getElementById("text"));
+      Assert.assertEquals(2, page.getElementsByTagName("p").size());
+
+      // the head changed: the page is reloaded
+      write(iod.inputDir.resolve("content/index.html"), "<!DOCTYPE html><html><head><title>title</title></head><body><p id=\"text\">hello world</p></body></html>".getBytes(StandardCharsets.UTF_8));
+      waitUntil(() -> webClient.getCurrentWindow().getEnclosedPage() != page);
+      Assert.assertTrue(webClient.getCurrentWindow().getEnclosedPage().getWebResponse().getContentAsString().contains("<title>title</title>"));
+
+      sw.stop();
+    }
+  }
+
+  @Test
+  public void updateTheOpenPagesBeforeTheEndOfTheBuild() throws IOException, InterruptedException {
+    try (InputOutputDirs iod = get(); WebClient webClient = new WebClient()) {
+      Path index = iod.inputDir.resolve("content/index.html");
+      write(index, "<!DOCTYPE html><html><head></head><body><p id=\"text\">hello</p></body></html>".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("content/other.html"), "<!DOCTYPE html><html><head></head><body>other</body></html>".getBytes(StandardCharsets.UTF_8));
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+      CountDownLatch endOfBuild = new CountDownLatch(1);
+      ServeAndWatch sw = new ServeAndWatch(address, port, true, true, stampo.getConfiguration(),
+          stampo.getConfiguration()::getBaseOutputDir, req -> {}, rebuild -> {
+            OutputPlan plan = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).plan();
+            rebuild.getOpenPages().forEach(plan::render);
+            rebuild.openPagesWritten();
+            try {
+              if (rebuild.getChanges().getPaths().contains(index)) {
+                endOfBuild.await(30, TimeUnit.SECONDS);
+              }
+            } catch (InterruptedException e) {
+              throw new IllegalStateException(e);
+            }
+            plan.renderAll();
+          }, false);
+      sw.start();
+
+      HtmlPage page = webClient.getPage(url);
+      DomElement p = page.getElementById("text");
+
+      write(index, "<!DOCTYPE html><html><head></head><body><p id=\"text\">hello world</p></body></html>".getBytes(StandardCharsets.UTF_8));
+      waitUntil(() -> !"hello".equals(p.getTextContent()));
+      Assert.assertEquals("hello world", p.getTextContent());
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("other/index.html")));
+
+      endOfBuild.countDown();
+      waitUntil(() -> Files.exists(iod.outputDir.resolve("other/index.html")));
+      Assert.assertTrue(Files.exists(iod.outputDir.resolve("other/index.html")));
+
+      sw.stop();
+    }
+  }
+
+  // the in memory file system is polled each 5 seconds by the watcher
+  private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(100);
+    }
+  }
+
+  @Test
+  public void changeSetMergeEvents() {
+    ChangeSet.Builder builder = new ChangeSet.Builder();
+    Path base = Paths.get("base");
+    builder.add(base.resolve("created"), ENTRY_CREATE);
+    builder.add(base.resolve("created"), ENTRY_MODIFY);
+    builder.add(base.resolve("temporary"), ENTRY_CREATE);
+    builder.add(base.resolve("temporary"), ENTRY_DELETE);
+    builder.add(base.resolve("replaced"), ENTRY_DELETE);
+    builder.add(base.resolve("replaced"), ENTRY_CREATE);
+    builder.add(base.resolve("modified"), ENTRY_MODIFY);
+    builder.add(base.resolve("modified"), ENTRY_MODIFY);
+
+    ChangeSet changes = builder.drain();
+    Assert.assertFalse(changes.isFullRescan());
+    Assert.assertEquals(3, changes.getChanges().size());
+    Assert.assertEquals(ENTRY_CREATE, changes.getChanges().get(base.resolve("created")));
+    Assert.assertEquals(ENTRY_MODIFY, changes.getChanges().get(base.resolve("replaced")));
+    Assert.assertEquals(ENTRY_MODIFY, changes.getChanges().get(base.resolve("modified")));
+
+    builder.add(base, OVERFLOW);
+    Assert.assertTrue(builder.drain().isFullRescan());
+    Assert.assertTrue(builder.drain().getPaths().isEmpty());
+  }
+
+  @Test
+  public void serveGzipSidecars() throws IOException, InterruptedException {
+    try (InputOutputDirs iod = get()) {
+      String html = "<!DOCTYPE html><html><head></head><body>" + Strings.repeat("<p>hello</p>", 20) + "</body></html>";
+      write(iod.inputDir.resolve("content/index.html"), html.getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("configuration.yaml"), "gzip: true".getBytes(StandardCharsets.UTF_8));
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+      ServeAndWatch sw = new ServeAndWatch(address, port, false, false, stampo.getConfiguration(), () -> {}, false);
+      sw.start();
+
+      HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+      try {
+        conn.setRequestProperty("Accept-Encoding", "deflate, gzip;q=0.8");
+        Assert.assertEquals(200, conn.getResponseCode());
+        Assert.assertEquals("gzip", conn.getHeaderField("Content-Encoding"));
+        Assert.assertEquals("Accept-Encoding", conn.getHeaderField("Vary"));
+        try (InputStream is = new GZIPInputStream(conn.getInputStream())) {
+          Assert.assertEquals(html, new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8));
+        }
+        String gzipETag = conn.getHeaderField("ETag");
+        Assert.assertNotEquals(gzipETag, identityETag(url));
+      } finally {
+        conn.disconnect();
+      }
+
+      conn = (HttpURLConnection) new URL(url).openConnection();
+      try {
+        conn.setRequestProperty("Accept-Encoding", "gzip;q=0");
+        Assert.assertNull(conn.getHeaderField("Content-Encoding"));
+        try (InputStream is = conn.getInputStream()) {
+          Assert.assertEquals(html, new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8));
+        }
+      } finally {
+        conn.disconnect();
+      }
+
+      sw.stop();
+    }
+  }
+
+  @Test
+  public void bigFilesKeepTheirETagWhenCopiedAgain() throws IOException, InterruptedException {
+    try (InputOutputDirs iod = get()) {
+      Files.createDirectories(iod.inputDir.resolve("static"));
+      write(iod.inputDir.resolve("static/video.bin"), new byte[2 * 1024 * 1024]);
+
+      String[] etags = new String[2];
+      for (int i = 0; i < etags.length; i++) {
+        Thread.sleep(20);
+        Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+        stampo.build();
+        ServeAndWatch sw = new ServeAndWatch(address, port, false, false, stampo.getConfiguration(), () -> {}, false);
+        sw.start();
+        etags[i] = identityETag(url.concat("/video.bin"));
+        sw.stop();
+      }
+      Assert.assertNotNull(etags[0]);
+      Assert.assertEquals(etags[0], etags[1]);
+    }
+  }
+
+  @Test
+  public void acceptsGzip() {
+    Assert.assertTrue(ServeAndWatch.acceptsGzip("gzip, deflate, br"));
+    Assert.assertTrue(ServeAndWatch.acceptsGzip("br;q=1.0, gzip;q=0.8, *;q=0.1"));
+    Assert.assertTrue(ServeAndWatch.acceptsGzip("*"));
+    Assert.assertFalse(ServeAndWatch.acceptsGzip(null));
+    Assert.assertFalse(ServeAndWatch.acceptsGzip("identity"));
+    Assert.assertFalse(ServeAndWatch.acceptsGzip("gzip;q=0, *"));
+    Assert.assertFalse(ServeAndWatch.acceptsGzip("deflate, *;q=0"));
+  }
+
+  private static String identityETag(String url) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      Assert.assertNull(conn.getHeaderField("Content-Encoding"));
+      return conn.getHeaderField("ETag");
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  private static int statusCodeIfNoneMatch(String url, String etag) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      conn.setRequestProperty("If-None-Match", etag);
+      return conn.getResponseCode();
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  private static void checkRange(String url, String range, int expectedStatus, String expectedContentRange, String expectedContent) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      conn.setRequestProperty("Range", range);
+      Assert.assertEquals(expectedStatus, conn.getResponseCode());
+      Assert.assertEquals(expectedContentRange, conn.getHeaderField("Content-Range"));
+      if (expectedContent != null) {
+        try (InputStream is = conn.getInputStream()) {
+          Assert.assertEquals(expectedContent, new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8));
+        }
+      }
+    } finally {
+      conn.disconnect();
+    }
+  }
+
   private void createContentPagination(InputOutputDirs iod) throws IOException {
     write(iod.inputDir.resolve("content/index.html.peb"),
         fromTestResource("pagination/index-recursive.html.peb"));
@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.write;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.digitalfondue.stampo.TestUtils.InputOutputDirs;
+import ch.digitalfondue.stampo.exception.ConfigurationException;
+import ch.digitalfondue.stampo.resource.FileResourceWithMetadataSection;
+
+public class SitemapAndFeedTest {
+
+  private static void createFiles(InputOutputDirs iod) throws IOException {
+    Path content = iod.inputDir.resolve("content");
+    createDirectories(content.resolve("post"));
+    write(content.resolve("index.md"), "# Home".getBytes(StandardCharsets.UTF_8));
+    write(content.resolve("post/first.md"), ("---\ntitle: First & best\ndate: 2015-01-01\ntags: [java]\n---\n# First").getBytes(StandardCharsets.UTF_8));
+    write(content.resolve("post/second.md"), ("---\ntitle: Second\ndate: 2015-02-01\ntags: [java, web]\nsummary: the second post\n---\n# Second").getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void sitemapAndFeeds() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod);
+      write(iod.inputDir.resolve("configuration.yaml"), ("base-url: https://example.com/\n"
+          + "sitemap: true\n"
+          + "taxonomies: [tags]\n"
+          + "feeds: [post, tags]").getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      String sitemap = TestUtils.fileOutputAsString(iod, "sitemap.xml");
+      Assert.assertTrue(sitemap.contains("<urlset"));
+      Assert.assertTrue(sitemap.contains("<loc>https://example.com/</loc>"));
+      Assert.assertTrue(sitemap.contains("<loc>https://example.com/post/first/</loc>\n    <lastmod>2015-01-01T00:00:00Z</lastmod>"));
+      Assert.assertTrue(sitemap.contains("<loc>https://example.com/post/second/</loc>"));
+      Assert.assertFalse(sitemap.contains("hreflang"));
+
+      // newest first
+      String feed = TestUtils.fileOutputAsString(iod, "post/feed.xml");
+      Assert.assertTrue(feed.contains("<id>https://example.com/post/feed.xml</id>"));
+      Assert.assertTrue(feed.contains("<updated>2015-02-01T00:00:00Z</updated>"));
+      Assert.assertTrue(feed.indexOf("<title>Second</title>") < feed.indexOf("<title>First &amp; best</title>"));
+      Assert.assertTrue(feed.contains("<summary>the second post</summary>"));
+      Assert.assertTrue(feed.contains("<author><name>example.com</name></author>"));
+      // there is no post/index.html
+      Assert.assertFalse(feed.contains("<link href=\"https://example.com/post/\"/>"));
+
+      String java = TestUtils.fileOutputAsString(iod, "tags/java/feed.xml");
+      Assert.assertTrue(java.contains("https://example.com/post/first/") && java.contains("https://example.com/post/second/"));
+      String web = TestUtils.fileOutputAsString(iod, "tags/web/feed.xml");
+      Assert.assertTrue(web.contains("https://example.com/post/second/") && !web.contains("https://example.com/post/first/"));
+    }
+  }
+
+  @Test
+  public void sitemapForEachLocale() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod);
+      write(iod.inputDir.resolve("configuration.yaml"), ("base-url: https://example.com\n"
+          + "sitemap: true\n"
+          + "locales: [en, de]\n"
+          + "default-locale: en").getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      String index = TestUtils.fileOutputAsString(iod, "sitemap.xml");
+      Assert.assertTrue(index.contains("<sitemapindex"));
+      Assert.assertTrue(index.contains("<loc>https://example.com/sitemap-de.xml</loc>"));
+      Assert.assertTrue(index.contains("<loc>https://example.com/sitemap-en.xml</loc>"));
+
+      String de = TestUtils.fileOutputAsString(iod, "sitemap-de.xml");
+      Assert.assertTrue(de.contains("<loc>https://example.com/de/post/first/</loc>"));
+      Assert.assertFalse(de.contains("<loc>https://example.com/post/first/</loc>"));
+      Assert.assertTrue(de.contains("<xhtml:link rel=\"alternate\" hreflang=\"en\" href=\"https://example.com/post/first/\"/>"));
+      Assert.assertTrue(de.contains("<xhtml:link rel=\"alternate\" hreflang=\"de\" href=\"https://example.com/de/post/first/\"/>"));
+    }
+  }
+
+  @Test
+  public void sitemapAlternatesOfTranslatedFiles() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createDirectories(iod.inputDir.resolve("content/post"));
+      write(iod.inputDir.resolve("content/post/translated.en.html"), "<p>english</p>".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("content/post/translated.de.html"), "<p>deutsch</p>".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("content/post/only.en.html"), "<p>english only</p>".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("configuration.yaml"), ("base-url: https://example.com\n"
+          + "sitemap: true\n"
+          + "locales: [en, de]\n"
+          + "default-locale: en").getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      String de = TestUtils.fileOutputAsString(iod, "sitemap-de.xml");
+      Assert.assertTrue(de.contains("<loc>https://example.com/de/post/translated/</loc>"));
+      Assert.assertTrue(de.contains("<xhtml:link rel=\"alternate\" hreflang=\"en\" href=\"https://example.com/post/translated/\"/>"));
+      Assert.assertTrue(de.contains("<xhtml:link rel=\"alternate\" hreflang=\"de\" href=\"https://example.com/de/post/translated/\"/>"));
+
+      String en = TestUtils.fileOutputAsString(iod, "sitemap-en.xml");
+      Assert.assertTrue(en.contains("<xhtml:link rel=\"alternate\" hreflang=\"de\" href=\"https://example.com/de/post/translated/\"/>"));
+      // no translation, no alternates
+      Assert.assertTrue(en.contains("<loc>https://example.com/post/only/</loc>"));
+      Assert.assertFalse(en.contains("href=\"https://example.com/post/only/\""));
+    }
+  }
+
+  @Test
+  public void sitemapIndexWhenTooManyUrls() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod);
+      write(iod.inputDir.resolve("configuration.yaml"), ("base-url: https://example.com\n"
+          + "sitemap: true").getBytes(StandardCharsets.UTF_8));
+      StampoGlobalConfiguration conf = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).getConfiguration();
+
+      SitemapAndFeedWriter writer = new SitemapAndFeedWriter(conf, 2);
+      for (String page : new String[] {"index.md", "post/first.md", "post/second.md"}) {
+        Path path = conf.getContentDir().resolve(page);
+        Path output = iod.outputDir.resolve(page.replace(".md", "/index.html"));
+        writer.add(new FileResourceWithMetadataSection(conf, path, null), Locale.ENGLISH, iod.outputDir, output);
+      }
+      writer.write();
+
+      Assert.assertTrue(TestUtils.fileOutputAsString(iod, "sitemap.xml").contains("<loc>https://example.com/sitemap-2.xml</loc>"));
+      String first = TestUtils.fileOutputAsString(iod, "sitemap-1.xml");
+      Assert.assertTrue(first.contains("https://example.com/index/") && first.contains("https://example.com/post/first/"));
+      Assert.assertTrue(TestUtils.fileOutputAsString(iod, "sitemap-2.xml").contains("https://example.com/post/second/"));
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("sitemap-3.xml")));
+    }
+  }
+
+  @Test
+  public void feedAuthorAndLinkToTheDirectoryPage() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod);
+      write(iod.inputDir.resolve("content/post/index.md"), "# Posts".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("configuration.yaml"), ("base-url: https://example.com\n"
+          + "feeds: [post]\n"
+          + "feed-author: Jane & John").getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+
+      String feed = TestUtils.fileOutputAsString(iod, "post/feed.xml");
+      Assert.assertTrue(feed.contains("<link href=\"https://example.com/post/\"/>"));
+      Assert.assertTrue(feed.contains("<author><name>Jane &amp; John</name></author>"));
+    }
+  }
+
+  @Test(expected = ConfigurationException.class)
+  public void taxonomyValueMustBeADirectoryName() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod);
+      write(iod.inputDir.resolve("content/post/third.md"), "---\ntags: [\"../../../etc\"]\n---\n# Third".getBytes(StandardCharsets.UTF_8));
+      write(iod.inputDir.resolve("configuration.yaml"), ("base-url: https://example.com\n"
+          + "taxonomies: [tags]\n"
+          + "feeds: [tags]").getBytes(StandardCharsets.UTF_8));
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+    }
+  }
+
+  @Test(expected = ConfigurationException.class)
+  public void baseUrlIsRequired() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      createFiles(iod);
+      write(iod.inputDir.resolve("configuration.yaml"), "sitemap: true".getBytes(StandardCharsets.UTF_8));
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).build();
+    }
+  }
+}
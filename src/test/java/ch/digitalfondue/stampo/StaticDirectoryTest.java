@@ -15,7 +15,11 @@
  */
 package ch.digitalfondue.stampo;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
@@ -48,4 +52,45 @@ public class StaticDirectoryTest {
       Assert.assertTrue(Files.exists(iod.outputDir.resolve("css/test.css")));
     }
   }
+
+  @Test
+  public void testStaticDirectoryIsNotCopiedAgainWhenOnlyTheContentChanged() throws IOException {
+    try (InputOutputDirs iod = TestUtils.get()) {
+      Path staticDir = iod.inputDir.resolve("static");
+      Files.createDirectories(staticDir.resolve("css"));
+      Files.write(staticDir.resolve("css/test.css"), "body {}".getBytes(StandardCharsets.UTF_8));
+      Path content = iod.inputDir.resolve("content");
+      Files.createDirectories(content);
+      Files.write(content.resolve("index.html"), "first".getBytes(StandardCharsets.UTF_8));
+      Files.write(content.resolve("old.html"), "old".getBytes(StandardCharsets.UTF_8));
+
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).plan().renderAll();
+
+      // mark the copy: it is overwritten only if the static directory is copied again
+      Path css = iod.outputDir.resolve("css/test.css");
+      Files.write(css, "marker".getBytes(StandardCharsets.UTF_8));
+      Files.write(content.resolve("index.html"), "second".getBytes(StandardCharsets.UTF_8));
+      Files.delete(content.resolve("old.html"));
+
+      ChangeSet.Builder changes = new ChangeSet.Builder();
+      changes.add(content.resolve("index.html"), ENTRY_MODIFY);
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).plan(changes.drain(), true).renderAll();
+
+      Assert.assertEquals("marker", TestUtils.fileOutputAsString(iod, "css/test.css"));
+      Assert.assertEquals("second", TestUtils.fileOutputAsString(iod, "index.html"));
+      Assert.assertFalse(Files.exists(iod.outputDir.resolve("old/index.html")));
+
+      // a change in the static directory copies it again
+      changes.add(staticDir.resolve("css/test.css"), ENTRY_MODIFY);
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).plan(changes.drain(), true).renderAll();
+      Assert.assertEquals("body {}", TestUtils.fileOutputAsString(iod, "css/test.css"));
+
+      // as lost events
+      Files.write(css, "marker".getBytes(StandardCharsets.UTF_8));
+      changes.add(content.resolve("index.html"), ENTRY_MODIFY);
+      changes.add(null, OVERFLOW);
+      new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap()).plan(changes.drain(), true).renderAll();
+      Assert.assertEquals("body {}", TestUtils.fileOutputAsString(iod, "css/test.css"));
+    }
+  }
 }
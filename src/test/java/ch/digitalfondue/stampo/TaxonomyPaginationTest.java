@@ -33,6 +33,20 @@ import ch.digitalfondue.stampo.TestUtils.InputOutputDirs;
 
 public class TaxonomyPaginationTest {
 
+  private static void addPosts(InputOutputDirs iod) throws IOException {
+    Files.createDirectories(iod.inputDir.resolve("content/post"));
+    Files.createDirectories(iod.inputDir.resolve("content/post/durpdurp"));
+
+    for (int i = 1; i <= 20; i++) {
+      write(iod.inputDir.resolve("content/post/post" + i + ".md"),
+          fromTestResource("pagination/post/post" + i + ".md"));
+    }
+
+    for (int i = 21; i <= 31; i++) {
+      write(iod.inputDir.resolve("content/post/durpdurp/post" + i + ".md"),
+          fromTestResource("pagination/post/durpdurp/post" + i + ".md"));
+    }
+  }
 
   @Test
   public void testTaxonomyTags() throws IOException {
@@ -43,19 +57,7 @@ public class TaxonomyPaginationTest {
 
       write(iod.inputDir.resolve("configuration.yaml"), "taxonomies: [tags, authors]".getBytes(StandardCharsets.UTF_8));
 
-      Files.createDirectories(iod.inputDir.resolve("content/post"));
-      Files.createDirectories(iod.inputDir.resolve("content/post/durpdurp"));
-
-      for (int i = 1; i <= 20; i++) {
-        write(iod.inputDir.resolve("content/post/post" + i + ".md"),
-            fromTestResource("pagination/post/post" + i + ".md"));
-      }
-
-      for (int i = 21; i <= 31; i++) {
-        write(iod.inputDir.resolve("content/post/durpdurp/post" + i + ".md"),
-            fromTestResource("pagination/post/durpdurp/post" + i + ".md"));
-      }
-
+      addPosts(iod);
 
       Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
       stampo.build();
@@ -68,4 +70,41 @@ public class TaxonomyPaginationTest {
           fileOutputAsString(iod, "tags/hack/index.html"));
     }
   }
+
+  @Test
+  public void testTaxonomyQueries() throws IOException {
+
+    try (InputOutputDirs iod = get()) {
+      write(iod.inputDir.resolve("content/query.html.peb"),
+          fromTestResource("pagination/taxonomy-query.html.peb"));
+
+      write(iod.inputDir.resolve("configuration.yaml"), "taxonomies: [tags, authors]".getBytes(StandardCharsets.UTF_8));
+
+      addPosts(iod);
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+
+      Assert.assertEquals("post19 post8 post19 post19 post16 post11 6 2", fileOutputAsString(iod, "query/index.html"));
+    }
+  }
+
+  // freemarker does not see the default methods of FileResource, so the template uses path.fileName
+  @Test
+  public void testTaxonomyQueriesWithFreemarker() throws IOException {
+
+    try (InputOutputDirs iod = get()) {
+      write(iod.inputDir.resolve("content/query.html.ftl"),
+          fromTestResource("pagination/taxonomy-query.html.ftl"));
+
+      write(iod.inputDir.resolve("configuration.yaml"), "taxonomies: [tags, authors]".getBytes(StandardCharsets.UTF_8));
+
+      addPosts(iod);
+
+      Stampo stampo = new Stampo(iod.inputDir, iod.outputDir, Collections.emptyMap());
+      stampo.build();
+
+      Assert.assertEquals("post19.md post8.md \npost19.md \npost19.md post16.md post11.md \n6 2\n", fileOutputAsString(iod, "query/index.html"));
+    }
+  }
 }
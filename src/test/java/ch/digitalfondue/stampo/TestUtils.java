@@ -15,12 +15,19 @@
  */
 package ch.digitalfondue.stampo;
 
+import java.awt.image.BufferedImage;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
 
 import com.google.common.io.Resources;
 import com.google.common.jimfs.Configuration;
@@ -55,6 +62,28 @@ public class TestUtils {
     return new InputOutputDirs(fs, baseInputDir, outputDir);
   }
 
+  /**
+   * @param cache the name of the cache, e.g. "images" for ".stampo-cache/images".
+   */
+  public static List<Path> cachedFiles(InputOutputDirs iod, String cache) throws IOException {
+    try (Stream<Path> files = Files.list(iod.inputDir.resolve(".stampo-cache").resolve(cache))) {
+      return files.sorted().collect(Collectors.toList());
+    }
+  }
+
+  public static void writeImage(Path path, int width, int height, String format) throws IOException {
+    Files.createDirectories(path.getParent());
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < width; x++) {
+      for (int y = 0; y < height; y++) {
+        image.setRGB(x, y, x < width / 2 ? 0xff0000 : 0x0000ff);
+      }
+    }
+    try (OutputStream os = Files.newOutputStream(path)) {
+      ImageIO.write(image, format, os);
+    }
+  }
+
   public static String fileOutputAsString(InputOutputDirs iod, String path) throws IOException {
     return new String(Files.readAllBytes(iod.outputDir.resolve(path)), StandardCharsets.UTF_8);
   }
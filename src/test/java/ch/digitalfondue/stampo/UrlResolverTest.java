@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+public class UrlResolverTest {
+
+  @Test
+  public void relativeUrls() throws Exception {
+    // nothing exists in the file system
+    try (FileSystem fs = Jimfs.newFileSystem(Configuration.unix())) {
+      UrlResolver resolver = new UrlResolver();
+      Path output = fs.getPath("/output");
+
+      Assert.assertEquals(".", resolver.relativeUrl(output, output.resolve("index.html")));
+      Assert.assertEquals("..", resolver.relativeUrl(output, output.resolve("post/index.html")));
+      Assert.assertEquals("../../..", resolver.relativeUrl(output, output.resolve("post/page/2/index.html")));
+      Assert.assertEquals(".", resolver.relativeUrl(output, output.resolve("post.html")));
+
+      Assert.assertEquals("post", resolver.relativeUrl(output.resolve("post/index.html"), output.resolve("index.html")));
+      Assert.assertEquals(".", resolver.relativeUrl(output.resolve("post/index.html"), output.resolve("post/index.html")));
+      Assert.assertEquals("../other", resolver.relativeUrl(output.resolve("other/index.html"), output.resolve("post/index.html")));
+      Assert.assertEquals("../a/b.html", resolver.relativeUrl(output.resolve("a/b.html"), output.resolve("c/d.html")));
+      Assert.assertEquals("../../post.html", resolver.relativeUrl(output.resolve("post.html"), output.resolve("post/page/2.html")));
+
+      Assert.assertEquals("post/index.xml", resolver.relativeUrlFromDirectory(output.resolve("post/index.xml"), output));
+      Assert.assertEquals("post", resolver.relativeUrlFromDirectory(output.resolve("post/./index.html"), output));
+      Assert.assertEquals(".", resolver.relativeUrlFromDirectory(output.resolve("index.html"), output));
+
+      // relative paths
+      Assert.assertEquals("../b", resolver.relativeUrl(fs.getPath("output/b/index.html"), fs.getPath("output/a/index.html")));
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo.command;
+
+import static java.nio.file.Files.write;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.digitalfondue.stampo.ChangeSet;
+import ch.digitalfondue.stampo.Rebuild;
+import ch.digitalfondue.stampo.ServeAndWatch;
+import ch.digitalfondue.stampo.Stampo;
+import ch.digitalfondue.stampo.command.Serve.InMemoryOutput;
+
+import com.google.common.io.ByteStreams;
+
+public class ServeInMemoryTest {
+
+  private static final String ADDRESS = "localhost";
+
+  private static int availablePort() {
+    for (int port = 45000; port <= 63000; port++) {
+      try (Socket ignored = new Socket(ADDRESS, port)) {
+      } catch (IOException ignored) {
+        return port;
+      }
+    }
+    throw new IllegalStateException("no port available");
+  }
+
+  private static String get(String url) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    try (InputStream is = conn.getInputStream()) {
+      return new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8);
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  private static String read(Path file) {
+    try {
+      return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void cleanUp(Path dir) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(p);
+      }
+    }
+  }
+
+  @Test
+  public void servedFromMemoryAndSwappedOnlyWhenThePlanIsComplete() throws IOException {
+    // the serve command take the input directory as a string, so it must be on the default file system
+    Path input = Files.createTempDirectory("stampo-serve-in-memory");
+    try {
+      Path content = Files.createDirectories(input.resolve("content"));
+      write(content.resolve("index.html"), "first".getBytes(StandardCharsets.UTF_8));
+      write(content.resolve("other.html"), "other".getBytes(StandardCharsets.UTF_8));
+
+      InMemoryOutput output = new InMemoryOutput();
+      Consumer<Rebuild> build = Serve.getFastRenderBuild(input.toString(), output, false, Collections.emptyMap());
+      build.accept(Rebuild.full());
+
+      Path first = output.getOutputDir();
+      Assert.assertNotEquals(FileSystems.getDefault(), first.getFileSystem());
+      Assert.assertFalse(Files.exists(first.resolve("other/index.html")));
+
+      int port = availablePort();
+      String url = "http://" + ADDRESS + ":" + port;
+      ServeAndWatch sw = new ServeAndWatch(ADDRESS, port, false, false,
+          new Stampo(input, input.resolve("output"), Collections.emptyMap()).getConfiguration(),
+          output::getOutputDir, output::render, build, false);
+      sw.start();
+      try {
+        // the pages are rendered in memory when requested
+        Assert.assertEquals("first", get(url));
+        Assert.assertEquals("other", get(url + "/other/"));
+        Assert.assertEquals("other", read(first.resolve("other/index.html")));
+
+        // a failed build does not replace the served output
+        write(content.resolve("index.html"), "second".getBytes(StandardCharsets.UTF_8));
+        write(content.resolve("broken.html"), "---\nfoo: [\n---\nbroken".getBytes(StandardCharsets.UTF_8));
+        try {
+          build.accept(Rebuild.full());
+          Assert.fail("the build should fail");
+        } catch (RuntimeException e) {
+          // expected
+        }
+        Assert.assertSame(first, output.getOutputDir());
+        Assert.assertEquals("first", read(first.resolve("index.html")));
+
+        // the open pages are already written in the new output when it is swapped
+        Files.delete(content.resolve("broken.html"));
+        AtomicReference<String> servedWhenNotified = new AtomicReference<>();
+        build.accept(new Rebuild(ChangeSet.fullRescan(), Collections.singleton(""),
+            () -> servedWhenNotified.set(read(output.getOutputDir().resolve("index.html")))));
+        Assert.assertEquals("second", servedWhenNotified.get());
+        Assert.assertNotEquals(first.getFileSystem(), output.getOutputDir().getFileSystem());
+
+        // the replaced file system is closed at the following build, as a request may still use it
+        Assert.assertTrue(first.getFileSystem().isOpen());
+        build.accept(Rebuild.full());
+        Assert.assertFalse(first.getFileSystem().isOpen());
+
+        // nothing has been written on disk
+        try (Stream<Path> files = Files.list(input)) {
+          Assert.assertEquals(Collections.singletonList(content), files.collect(Collectors.toList()));
+        }
+      } finally {
+        sw.stop();
+      }
+    } finally {
+      cleanUp(input);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.digitalfondue.stampo.KeyedComparator;
+
+public class AlphaNumericStringComparatorTest {
+
+  private final AlphaNumericStringComparator comparator = new AlphaNumericStringComparator(Locale.ENGLISH);
+
+  @Test
+  public void checkNaturalOrder() {
+    List<String> expected = Arrays.asList("a", "a1", "a1.5", "a2", "a10", "a10b", "a010c", "b", "file-1.txt", "file-2.txt", "file-10.txt");
+    List<String> toSort = new ArrayList<>(expected);
+    Collections.shuffle(toSort, new Random(42));
+    toSort.sort(comparator);
+    Assert.assertEquals(expected, toSort);
+  }
+
+  @Test
+  public void checkEquivalentNumbers() {
+    Assert.assertEquals(0, comparator.compare("1.50", "1.5"));
+    Assert.assertEquals(0, comparator.compare("007", "7"));
+    Assert.assertTrue(comparator.compare("1.", "1-") < 0);
+    Assert.assertTrue(comparator.compare("Infinity", "99999") > 0);
+  }
+
+  @Test
+  public void checkSameOrderAsTheLegacyComparator() {
+    Comparator<String> legacy = new LegacyAlphaNumericStringComparator(Locale.ENGLISH);
+    String[] chunks = {"a", "B", "img", "-", ".", "_", "0", "1", "7", "007", "10", "1.5", "1.50", "3.", "12345678901234567890", "NaN", "Infinity", " "};
+    Random random = new Random(42);
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder sb = new StringBuilder();
+      int length = random.nextInt(5);
+      for (int j = 0; j < length; j++) {
+        sb.append(chunks[random.nextInt(chunks.length)]);
+      }
+      values.add(sb.toString());
+    }
+
+    for (int i = 0; i < values.size(); i++) {
+      String s1 = values.get(i);
+      String s2 = values.get(random.nextInt(values.size()));
+      Assert.assertEquals(s1 + " <> " + s2, Integer.signum(legacy.compare(s1, s2)), Integer.signum(comparator.compare(s1, s2)));
+    }
+
+    // the legacy comparator is not transitive for every input (e.g. "" is equal to everything),
+    // so the sorting is compared with file names only
+    String[] prefixes = {"img", "IMG_", "photo-", "post", "chapter-", "v", "release-1."};
+    String[] exts = {".jpg", ".png", ".md", ".html", ".tar.gz"};
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      names.add(prefixes[random.nextInt(prefixes.length)] + random.nextInt(5000) + (random.nextBoolean() ? "-" + random.nextInt(100) : "") + exts[random.nextInt(exts.length)]);
+    }
+    List<String> expected = new ArrayList<>(names);
+    expected.sort(legacy);
+    List<String> sorted = new ArrayList<>(names);
+    KeyedComparator.sort(sorted, KeyedComparator.comparing(String::toString, comparator));
+    Assert.assertEquals(expected, sorted);
+  }
+}
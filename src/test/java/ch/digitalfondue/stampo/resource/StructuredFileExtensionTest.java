@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.stampo.resource;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.digitalfondue.stampo.StampoGlobalConfiguration;
+import ch.digitalfondue.stampo.renderer.freemarker.FreemarkerRenderer;
+import ch.digitalfondue.stampo.renderer.markdown.MarkdownRenderer;
+import ch.digitalfondue.stampo.renderer.pebble.PebbleRenderer;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+public class StructuredFileExtensionTest {
+
+  @Test
+  public void classifyAndShare() throws Exception {
+    try (FileSystem fs = Jimfs.newFileSystem(Configuration.unix())) {
+      Map<String, Object> conf = new HashMap<>();
+      conf.put("locales", Arrays.asList("en", "de"));
+      Path base = fs.getPath("/input");
+      StampoGlobalConfiguration configuration = new StampoGlobalConfiguration(conf, base, fs.getPath("/output"),
+          Arrays.asList(new PebbleRenderer(), new MarkdownRenderer(), new FreemarkerRenderer()));
+
+      StructuredFileExtension ext = configuration.getStructuredFileExtension(".en.html.peb");
+      Assert.assertEquals(Arrays.asList("peb"), ext.getProcessorRelatedExts());
+      Assert.assertEquals("html", ext.getMaybeFileExtension().get());
+      Assert.assertEquals(Collections.singleton("en"), ext.getLocales());
+      Assert.assertEquals(".html", ext.getFinalFileExtension());
+
+      // last extension first
+      StructuredFileExtension md = configuration.getStructuredFileExtension(".de.md.peb");
+      Assert.assertEquals(Arrays.asList("peb", "md"), md.getProcessorRelatedExts());
+      Assert.assertFalse(md.getMaybeFileExtension().isPresent());
+      Assert.assertEquals(Collections.singleton("de"), md.getLocales());
+
+      StructuredFileExtension tar = configuration.getStructuredFileExtension(".tar.gz");
+      Assert.assertTrue(tar.getProcessorRelatedExts().isEmpty());
+      Assert.assertEquals("tar", tar.getRest());
+      Assert.assertEquals(".tar.gz", tar.getFinalFileExtension());
+
+      Assert.assertEquals("", configuration.getStructuredFileExtension("").getFinalFileExtension());
+
+      Assert.assertSame(ext, configuration.getStructuredFileExtension(".en.html.peb"));
+    }
+  }
+}
@@ -0,0 +1,4 @@
+<#list taxonomy.intersection('tags', ['test', 'hack']) as post>${post.path.fileName} </#list>
+<#list taxonomy.union('tags', ['hack', 'missing'], 1) as post>${post.path.fileName} </#list>
+<#list taxonomy.top('tags', 'test', 3) as post>${post.path.fileName} </#list>
+${taxonomy.count('tags', 'test')} ${taxonomy.getCounts('tags')['hack']}